@@ -3,11 +3,13 @@ package ru.mitrakov.self.rush;
 import android.os.*;
 import android.view.View;
 import android.graphics.Rect;
+import android.content.pm.ApplicationInfo;
 
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.backends.android.*;
 
 import ru.mitrakov.self.rush.stat.Stat;
+import ru.mitrakov.self.rush.utils.SimpleLogger;
 
 /**
  * Winesaps Launcher for Android platform
@@ -19,6 +21,10 @@ public class AndroidLauncher extends AndroidApplication {
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        // debug builds log to logcat (stdout); use SimpleLogger.configure() to change the level, e.g. to TRACE
+        if ((getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0)
+            SimpleLogger.configure(SimpleLogger.DEBUG, true, false);
+        else SimpleLogger.configureFromProperty();
 
         final Winesaps game = new Winesaps(obj = new AndroidPsObject(this));
         // for Stat application: uncomment line below, change token in network.reset() in Stat.java, change
@@ -88,23 +88,58 @@ class AndroidPsObject extends PsObject {
     }
 
     @Override
-    public void runDaemon(int delayMsec, final int periodMsec, final Runnable f) {
-        handler.postDelayed(new Runnable() { // @mitrakov 2017-07-17: https://stackoverflow.com/questions/20330355
-            @Override
-            public void run() {
-                f.run();
-                handler.postDelayed(this, periodMsec);
-            }
-        }, delayMsec);
+    public ITask runDaemon(int delayMsec, int periodMsec, Runnable f) {
+        HandlerTask task = new HandlerTask(f, periodMsec); // @mitrakov 2017-07-17: stackoverflow.com/questions/20330355
+        handler.postDelayed(task, delayMsec);
+        return task;
     }
 
     @Override
-    public void runTask(int delayMsec, Runnable f) {
-        handler.postDelayed(f, delayMsec); // @mitrakov 2017-07-17: https://stackoverflow.com/questions/20330355
+    public ITask runTask(int delayMsec, Runnable f) {
+        HandlerTask task = new HandlerTask(f, 0);          // @mitrakov 2017-07-17: stackoverflow.com/questions/20330355
+        handler.postDelayed(task, delayMsec);
+        return task;
     }
 
     @SuppressWarnings("unused")
     void stop() {
         thread.quit();
     }
+
+    /**
+     * Task for the Android {@link Handler} (single or periodic) that may be cancelled
+     */
+    private final class HandlerTask implements Runnable, ITask {
+        /** Function to run */
+        private final Runnable f;
+        /** Period delay in msec (0 for a single task) */
+        private final int periodMsec;
+        /** Cancelled flag (the task may be cancelled from any thread) */
+        private volatile boolean cancelled = false;
+
+        /**
+         * Creates a new task
+         * @param f function to run
+         * @param periodMsec period delay in msec (0 for a single task)
+         */
+        HandlerTask(Runnable f, int periodMsec) {
+            this.f = f;
+            this.periodMsec = periodMsec;
+        }
+
+        @Override
+        public void run() {
+            if (!cancelled) {
+                f.run();
+                if (periodMsec > 0 && !cancelled)
+                    handler.postDelayed(this, periodMsec);
+            }
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            handler.removeCallbacks(this);
+        }
+    }
 }
@@ -0,0 +1,88 @@
+package ru.mitrakov.self.rush;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import ru.mitrakov.self.rush.net.Network;
+import ru.mitrakov.self.rush.utils.collections.*;
+
+/**
+ * Benchmarks for the operations of the network buffers: prepending of the headers (sending), removing of the headers
+ * (receiving) and copying; {@link GcResistantIntArray} is compared with {@link ByteIntArray}
+ * @author mitrakov
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IntArrayBenchmark {
+    /** SwUDP header size plus 2 bytes of message length (see Network) */
+    private static final int HEADER_SIZ = 9;
+
+    /** Implementation: "gc" for {@link GcResistantIntArray}, "byte" for {@link ByteIntArray} */
+    @Param({"gc", "byte"})
+    public String impl;
+    /** Message size, in bytes (a typical command and a whole battlefield) */
+    @Param({"8", "255"})
+    public int size;
+
+    /** Array under test */
+    private IIntArray array;
+    /** Source array for copying (a datagram: header and message) */
+    private IIntArray source;
+
+    @Setup
+    public void setUp() {
+        array = newArray();
+        source = newArray();
+        for (int i = 0; i < HEADER_SIZ + size; i++) {
+            source.add(i & 0xFF);
+        }
+    }
+
+    /**
+     * Fills the message and prepends the header to it, just like Network does on sending
+     * @return array
+     */
+    @Benchmark
+    public IIntArray prepend() {
+        array.copyFrom(source, size);
+        for (int i = 0; i < HEADER_SIZ; i++) {
+            array.prepend(i);
+        }
+        return array;
+    }
+
+    /**
+     * Fills the datagram and removes the header from it, just like Network does on receiving
+     * @return array
+     */
+    @Benchmark
+    public IIntArray remove() {
+        array.copyFrom(source, HEADER_SIZ + size);
+        return array.remove(0, HEADER_SIZ);
+    }
+
+    /**
+     * Copies the message
+     * @return array
+     */
+    @Benchmark
+    public IIntArray copyFrom() {
+        return array.copyFrom(source, size);
+    }
+
+    /**
+     * @return new empty array of the implementation under test
+     */
+    private IIntArray newArray() {
+        if ("gc".equals(impl))
+            return new GcResistantIntArray(Network.BUF_SIZ_SEND);
+        if ("byte".equals(impl))
+            return new ByteIntArray(Network.BUF_SIZ_SEND);
+        throw new IllegalArgumentException("Unknown implementation: " + impl);
+    }
+}
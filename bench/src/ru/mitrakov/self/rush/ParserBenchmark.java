@@ -0,0 +1,72 @@
+package ru.mitrakov.self.rush;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import ru.mitrakov.self.rush.model.Model;
+import ru.mitrakov.self.rush.model.emulator.*;
+import ru.mitrakov.self.rush.utils.collections.IIntArray;
+
+/**
+ * Benchmarks for {@link Parser#onReceived(IIntArray)} on the datagrams recorded from a battle on the Server Emulator:
+ * FULL_STATE (a new battlefield) and STATE_CHANGED (moves of actors and wolves, eaten food and so on)
+ * @author mitrakov
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+    /** Level names (a simple level and a level full of ladders, ropes, wolves and water) */
+    @Param({"pack_01/level_01", "pack_02/level_15"})
+    public String level;
+
+    /** Parser */
+    private Parser parser;
+    /** Recorded FULL_STATE datagram */
+    private IIntArray fullState;
+    /** Recorded STATE_CHANGED datagrams */
+    private IIntArray[] stateChanges;
+    /** Index of the next STATE_CHANGED datagram */
+    private int i = 0;
+
+    @Setup
+    public void setUp() {
+        BattleFixture fixture = new BattleFixture(level, 1, true);
+        fixture.walk(10, 4);
+        fixture.close();
+        IIntArray[] fullStates = fixture.getDatagrams(Model.Cmd.FULL_STATE);
+        stateChanges = fixture.getDatagrams(Model.Cmd.STATE_CHANGED);
+        if (fullStates.length == 0 || stateChanges.length == 0)
+            throw new IllegalStateException("Nothing recorded on level " + level);
+        fullState = fullStates[0];
+
+        parser = new Parser(new Model(new LogicalClock()));
+        parser.onReceived(fullState); // STATE_CHANGED messages need a battlefield
+    }
+
+    /**
+     * Parses FULL_STATE datagram (it builds a new battlefield)
+     * @return parser
+     */
+    @Benchmark
+    public Parser fullState() {
+        parser.onReceived(fullState);
+        return parser;
+    }
+
+    /**
+     * Parses the next STATE_CHANGED datagram (the recorded datagrams are replayed cyclically)
+     * @return parser
+     */
+    @Benchmark
+    public Parser stateChanged() {
+        parser.onReceived(stateChanges[i]);
+        if (++i == stateChanges.length)
+            i = 0;
+        return parser;
+    }
+}
@@ -0,0 +1,103 @@
+package ru.mitrakov.self.rush.model;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import ru.mitrakov.self.rush.GcResistantIntArray;
+import ru.mitrakov.self.rush.model.emulator.HeadlessDriver;
+import ru.mitrakov.self.rush.utils.collections.IIntArray;
+
+import static ru.mitrakov.self.rush.model.Field.*;
+
+/**
+ * Benchmarks for the client battlefield: construction of a {@link Field} from the level binary data, and scans over
+ * all the cells with {@link Cell#objectExists(Class)} (by a concrete class and by an abstract class),
+ * {@link Cell#objectExists(long)} (by a kind bitmask) and {@link FieldStore#has(int, int)}, just like the renderer
+ * does on each frame
+ * @author mitrakov
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FieldBenchmark {
+    /** Level names (a simple level and a level full of ladders, ropes, wolves and water) */
+    @Param({"pack_01/level_01", "pack_02/level_15"})
+    public String level;
+
+    /** Level binary data (just 255 bytes, without additional sections) */
+    private final IIntArray data = new GcResistantIntArray(WIDTH * HEIGHT);
+    /** Battlefield to scan */
+    private Field field;
+
+    @Setup
+    public void setUp() {
+        byte[] bytes = HeadlessDriver.readLevel(level);
+        data.fromByteArray(bytes, WIDTH * HEIGHT);
+        field = new Field(data);
+    }
+
+    /**
+     * Creates a new battlefield (cells, objects, store and snapshots)
+     * @return new battlefield
+     */
+    @Benchmark
+    public Field construct() {
+        return new Field(data);
+    }
+
+    /**
+     * @return count of cells with wolves (lookup by a concrete class)
+     */
+    @Benchmark
+    public int objectExistsByClass() {
+        int result = 0;
+        for (int i = 0; i < WIDTH * HEIGHT; i++) {
+            if (field.cells[i].objectExists(Cells.Wolf.class))
+                result++;
+        }
+        return result;
+    }
+
+    /**
+     * @return count of cells with food (lookup by an abstract class)
+     */
+    @Benchmark
+    public int objectExistsByAbstractClass() {
+        int result = 0;
+        for (int i = 0; i < WIDTH * HEIGHT; i++) {
+            if (field.cells[i].objectExists(Cells.CellObjectFood.class))
+                result++;
+        }
+        return result;
+    }
+
+    /**
+     * @return count of cells with food (lookup by a kind bitmask)
+     */
+    @Benchmark
+    public int objectExistsByKind() {
+        int result = 0;
+        for (int i = 0; i < WIDTH * HEIGHT; i++) {
+            if (field.cells[i].objectExists(Cells.KIND_FOOD))
+                result++;
+        }
+        return result;
+    }
+
+    /**
+     * @return count of cells with wolves (lookup in the primitive store)
+     */
+    @Benchmark
+    public int storeHas() {
+        int result = 0;
+        for (int i = 0; i < WIDTH * HEIGHT; i++) {
+            if (field.store.has(i, Cells.Wolf.ID))
+                result++;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,122 @@
+package ru.mitrakov.self.rush.model.emulator;
+
+import java.util.*;
+
+import ru.mitrakov.self.rush.GcResistantIntArray;
+import ru.mitrakov.self.rush.model.*;
+import ru.mitrakov.self.rush.net.IHandler;
+import ru.mitrakov.self.rush.utils.collections.IIntArray;
+
+/**
+ * Fixture for the benchmarks: a single battle on the Server Emulator, stepped by a {@link LogicalClock} (so that the
+ * battle is the same for the same level and seed), that may record all the datagrams "received" from the Emulator
+ * (e.g. to replay FULL_STATE and STATE_CHANGED messages through the Parser).
+ * <br>The battle is driven by {@link HeadlessDriver}, so the working directory must be android/assets (see "jmh" task
+ * in build.gradle)
+ * @author mitrakov
+ */
+public final class BattleFixture implements IHandler {
+    /** Logical clock (timers run only when the clock is advanced) */
+    private final LogicalClock clock = new LogicalClock();
+    /** Environment of the battle (0 workers: everything runs on the caller thread) */
+    private final Environment environment = new Environment(clock, 0);
+    /** Driver of the session */
+    private final HeadlessDriver driver;
+    /** Recorded datagrams (copies) */
+    private final List<IIntArray> datagrams = new ArrayList<IIntArray>();
+    /** Flag that the incoming datagrams are to be recorded */
+    private boolean recording;
+
+    /**
+     * Creates a new fixture and starts a battle on the given level
+     * @param level level name (e.g. "pack_01/level_01")
+     * @param seed seed of the battle
+     * @param recording TRUE to record the incoming datagrams (see {@link #getDatagrams()})
+     */
+    public BattleFixture(String level, long seed, boolean recording) {
+        assert level != null;
+        this.recording = recording;
+        driver = new HeadlessDriver(clock, environment, this, 1, seed);
+        driver.attack(level);
+        if (getField() == null)
+            throw new IllegalStateException("Battle has not started on level " + level);
+    }
+
+    @Override
+    public void onReceived(IIntArray data) {
+        if (recording)
+            datagrams.add(new GcResistantIntArray(data.length()).copyFrom(data, data.length()));
+    }
+
+    @Override
+    public void onChanged(boolean connected) {
+    }
+
+    /**
+     * Sends MOVE command to the Emulator and steps the logical clock (so that wolves move as well)
+     * @param direction direction (see {@link Model.MoveDirection})
+     */
+    public void move(Model.MoveDirection direction) {
+        driver.move(Arrays.binarySearch(Model.moveDirectionValues, direction)); // don't use "ordinal()" (GC pressure)
+        clock.advance(HeadlessDriver.MOVE_PERIOD);
+    }
+
+    /**
+     * Walks the actor to the right and back several times, to record a typical stream of STATE_CHANGED messages
+     * @param steps count of steps in each direction
+     * @param times count of walks
+     */
+    public void walk(int steps, int times) {
+        for (int i = 0; i < times; i++) {
+            for (int j = 0; j < steps; j++) {
+                move(Model.MoveDirection.Right);
+            }
+            for (int j = 0; j < steps; j++) {
+                move(Model.MoveDirection.Left);
+            }
+        }
+    }
+
+    /**
+     * @param cmd command
+     * @return recorded datagrams with the given command (each datagram of the Emulator contains a single message)
+     */
+    public IIntArray[] getDatagrams(Model.Cmd cmd) {
+        int code = Arrays.binarySearch(Model.cmdValues, cmd);
+        List<IIntArray> result = new ArrayList<IIntArray>();
+        for (IIntArray datagram : datagrams) {
+            if (datagram.length() > 2 && datagram.get(2) == code)
+                result.add(datagram);
+        }
+        return result.toArray(new IIntArray[result.size()]);
+    }
+
+    /**
+     * @return all the recorded datagrams, in order of receiving
+     */
+    public List<IIntArray> getDatagrams() {
+        return datagrams;
+    }
+
+    /**
+     * Stops the recording (e.g. before measurements, to avoid memory consumption)
+     */
+    public void stopRecording() {
+        recording = false;
+    }
+
+    /**
+     * @return field of the battle (NULL if the battle has not started)
+     */
+    FieldEx getField() {
+        return environment.getField(1);
+    }
+
+    /**
+     * Shuts the battle down
+     */
+    public void close() {
+        driver.close();
+        environment.close();
+    }
+}
@@ -0,0 +1,71 @@
+package ru.mitrakov.self.rush.model.emulator;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import ru.mitrakov.self.rush.model.Cell;
+
+/**
+ * Benchmarks for the Server Emulator battlefield: {@link FieldEx#move(ru.mitrakov.self.rush.model.Cells.CellObject,
+ * int)} (obstacles, ropes, daises, falling down) and the cell check performed on each step (food, things, mines,
+ * wolves, water).
+ * <br>The battle is restarted on each iteration, so that each iteration starts with the same field
+ * @author mitrakov
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FieldExBenchmark {
+    /** Level names (a simple level and a level full of ladders, ropes, wolves and water) */
+    @Param({"pack_01/level_01", "pack_02/level_15"})
+    public String level;
+
+    /** Battle */
+    private BattleFixture fixture;
+    /** Battlefield */
+    private FieldEx field;
+    /** Our actor */
+    private ActorEx actor;
+    /** Current direction of the actor (+1 or -1) */
+    private int dir = 1;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        fixture = new BattleFixture(level, 1, false);
+        field = fixture.getField();
+        actor = field.actor1;
+        dir = 1;
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        fixture.close();
+    }
+
+    /**
+     * Moves the actor to the left or to the right (turning back on obstacles), with all the game logic involved
+     * @return result of the move
+     */
+    @Benchmark
+    public boolean move() {
+        boolean success = field.move(actor, actor.getXy() + dir);
+        if (!success)
+            dir = -dir;
+        return success;
+    }
+
+    /**
+     * Relocates the actor to its own cell: it's the cell check of a single step without the move logic
+     * @return actor's cell
+     */
+    @Benchmark
+    public Cell checkCell() {
+        Cell cell = actor.getCell();
+        field.relocate(cell, cell, actor, false);
+        return cell;
+    }
+}
@@ -0,0 +1,136 @@
+package ru.mitrakov.self.rush.net;
+
+import java.util.Arrays;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import ru.mitrakov.self.rush.model.Model;
+import ru.mitrakov.self.rush.model.emulator.LogicalClock;
+import ru.mitrakov.self.rush.utils.collections.*;
+
+/**
+ * Benchmarks for {@link Network#send(IIntArray)} and {@link Network#post(IIntArray)}: building of the headers (msgSize,
+ * sid, token, flags) and coalescing of the messages. The protocol is replaced with a sink, so no datagrams are sent
+ * @author mitrakov
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NetworkBenchmark {
+    /** Count of messages coalesced within a frame */
+    private static final int BATCH = 4;
+    /** Integer value for {@link Model.Cmd#MOVE} command */
+    private static final int MOVE = Arrays.binarySearch(Model.cmdValues, Model.Cmd.MOVE);
+    /** Integer value for {@link Model.MoveDirection#Right} direction */
+    private static final int RIGHT = Arrays.binarySearch(Model.moveDirectionValues, Model.MoveDirection.Right);
+
+    /** Network (the thread is not started) */
+    private Network network;
+    /** Sink instead of SwUDP */
+    private final Sink sink = new Sink();
+    /** Message to send (just like MsgSender does) */
+    private final IIntArray msg = new ByteIntArray(Network.BUF_SIZ_SEND);
+
+    /**
+     * Protocol that only consumes the messages
+     */
+    private static final class Sink implements IProtocol {
+        /** Total length of the consumed messages */
+        private long length = 0;
+
+        @Override
+        public void connect() throws IOException {
+        }
+
+        @Override
+        public void send(IIntArray data) throws IOException {
+            length += data.length();
+        }
+
+        @Override
+        public void onReceived(IIntArray data) throws IOException {
+        }
+
+        @Override
+        public void onTimer() throws IOException {
+        }
+
+        @Override
+        public void onSenderConnected() throws IOException {
+        }
+
+        @Override
+        public void onReceiverConnected() throws IOException {
+        }
+
+        @Override
+        public void connectionFailed() {
+        }
+
+        @Override
+        public boolean isConnected() {
+            return true;
+        }
+
+        @Override
+        public int getFlags() {
+            return 0;
+        }
+
+        @Override
+        public void onFlags(int flags) {
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        IHandler handler = new IHandler() {
+            @Override
+            public void onReceived(IIntArray data) {
+            }
+
+            @Override
+            public void onChanged(boolean connected) {
+            }
+        };
+        Thread.UncaughtExceptionHandler errorHandler = new Thread.UncaughtExceptionHandler() {
+            @Override
+            public void uncaughtException(Thread t, Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        };
+        network = new Network(new LogicalClock(), handler, errorHandler, "localhost", 33996);
+        network.reset(0x1234, 0x56789ABCL);
+        network.setProtocol(sink);
+    }
+
+    /**
+     * Sends a single MOVE message
+     * @return total length of the sent messages
+     * @throws IOException never
+     */
+    @Benchmark
+    public long send() throws IOException {
+        network.send(msg.clear().add(MOVE).add(RIGHT));
+        return sink.length;
+    }
+
+    /**
+     * Posts several MOVE messages and flushes them at the end of the "frame"
+     * @return total length of the sent messages
+     * @throws IOException never
+     */
+    @Benchmark
+    public long postAndFlush() throws IOException {
+        for (int i = 0; i < BATCH; i++) {
+            network.post(msg.clear().add(MOVE).add(RIGHT));
+        }
+        network.flush();
+        return sink.length;
+    }
+}
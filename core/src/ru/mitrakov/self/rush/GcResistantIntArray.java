@@ -8,7 +8,9 @@ import ru.mitrakov.self.rush.utils.collections.IIntArray;
 
 /**
  * GcResistantIntArray - special implementation of IIntArray that DOES NOT creates new objects during its work to
- * decrease GC pressure. It can be safely used in render() method
+ * decrease GC pressure. It can be safely used in render() method.
+ * <br>Its methods are synchronized, so please use it only for arrays really shared between threads; thread-confined
+ * arrays should use {@link ru.mitrakov.self.rush.utils.collections.ByteIntArray ByteIntArray} instead
  * @author mitrakov
  */
 public final class GcResistantIntArray implements IIntArray {
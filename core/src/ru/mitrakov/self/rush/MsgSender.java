@@ -4,7 +4,7 @@ import java.util.Arrays;
 
 import ru.mitrakov.self.rush.model.Model;
 import ru.mitrakov.self.rush.net.Network;
-import ru.mitrakov.self.rush.utils.collections.IIntArray;
+import ru.mitrakov.self.rush.utils.collections.*;
 
 import static ru.mitrakov.self.rush.utils.Utils.getBytes;
 import static ru.mitrakov.self.rush.net.Network.BUF_SIZ_SEND;
@@ -12,6 +12,7 @@ import static ru.mitrakov.self.rush.net.Network.BUF_SIZ_SEND;
 /**
  * Message Sender is used for sending messages from the Model.
  * Class is designed to meet the Loose Coupling Principle.
+ * <br>Messages are coalesced by the Network (see {@link Network#post(IIntArray)}) and sent at the end of the frame
  * This class is intended to have a single instance.
  * @author mitrakov
  */
@@ -20,8 +21,11 @@ class MsgSender implements Model.ISender {
     private final Network network;
     /** External error handler */
     private final Thread.UncaughtExceptionHandler errorHandler;
-    /** Internal buffer to send messages (to avoid creating new arrays and decrease Garbage Collector pressure) */
-    private final IIntArray sendBuf = new GcResistantIntArray(BUF_SIZ_SEND);
+    /**
+     * Internal buffer to send messages (to avoid creating new arrays and decrease Garbage Collector pressure).
+     * Messages are sent from different threads (UI, Network, timers), so the buffer is guarded by "this" lock
+     */
+    private final IIntArray sendBuf = new ByteIntArray(BUF_SIZ_SEND, this);
 
     /**
      * Creates a new instance of Message Sender
@@ -40,9 +44,9 @@ class MsgSender implements Model.ISender {
     }
 
     @Override
-    public void send(int cmd) {
+    public synchronized void send(int cmd) {
         try {
-            network.send(sendBuf.clear().add(cmd));
+            network.post(sendBuf.clear().add(cmd));
         } catch (Exception e) {
             errorHandler.uncaughtException(Thread.currentThread(), e);
         }
@@ -54,13 +58,13 @@ class MsgSender implements Model.ISender {
     }
 
     @Override
-    public void send(int cmd, int... arg) {
+    public synchronized void send(int cmd, int... arg) {
         try {
             sendBuf.clear().add(cmd);
             for (int i : arg) {
                 sendBuf.add(i);
             }
-            network.send(sendBuf);
+            network.post(sendBuf);
         } catch (Exception e) {
             errorHandler.uncaughtException(Thread.currentThread(), e);
         }
@@ -72,9 +76,9 @@ class MsgSender implements Model.ISender {
     }
 
     @Override
-    public void send(int cmd, String arg) {
+    public synchronized void send(int cmd, String arg) {
         try {
-            network.send(sendBuf.fromByteArray(getBytes(arg), arg.length()).prepend(cmd));
+            network.post(sendBuf.fromByteArray(getBytes(arg), arg.length()).prepend(cmd));
         } catch (Exception e) {
             errorHandler.uncaughtException(Thread.currentThread(), e);
         }
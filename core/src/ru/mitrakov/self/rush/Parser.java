@@ -3,11 +3,13 @@ package ru.mitrakov.self.rush;
 import java.util.*;
 
 import ru.mitrakov.self.rush.model.*;
-import ru.mitrakov.self.rush.net.IHandler;
-import ru.mitrakov.self.rush.utils.collections.IIntArray;
+import ru.mitrakov.self.rush.net.*;
+import ru.mitrakov.self.rush.net.DecoderRegistry.IDecoder;
+import ru.mitrakov.self.rush.utils.collections.*;
 
-import static ru.mitrakov.self.rush.utils.SimpleLogger.log;
+import static ru.mitrakov.self.rush.utils.SimpleLogger.*;
 import static ru.mitrakov.self.rush.model.Model.*;
+import static ru.mitrakov.self.rush.model.Model.Cmd.*;
 
 /**
  * Parser is used to parse incoming messages from the network.
@@ -85,10 +87,14 @@ class Parser implements IHandler {
     private final Model model;
     /** Current locale for string formatting */
     private final Locale locale = Locale.getDefault();
-    /** Intermediate array to copy data from the network (to avoid creating new arrays and decrease GC pressure) */
-    private final IIntArray array = new GcResistantIntArray(Field.WIDTH * Field.HEIGHT);
-    /** Additional array to full copy field binary data */
-    private final IIntArray field = new GcResistantIntArray(Field.WIDTH * Field.HEIGHT);
+    /** View over a single message in the received data (data is decoded in place, without copies and shifts) */
+    private final IntArraySlice msg = new IntArraySlice();
+    /** Additional view over the field binary data */
+    private final IntArraySlice field = new IntArraySlice();
+    /** Decoders indexed by the command byte */
+    private final DecoderRegistry registry = new DecoderRegistry();
+    /** Batch of field changes (moves, appends and removals) received in a row, to be applied to the model at once */
+    private final FieldDelta delta = new FieldDelta();
 
     /**
      * Creates a new instance of Parser
@@ -97,16 +103,225 @@ class Parser implements IHandler {
     Parser(Model model) {
         assert model != null;
         this.model = model;
+
+        // each command byte is dispatched by a single array load (see DecoderRegistry)
+        on(SIGN_IN, new IDecoder() {
+            @Override
+            public void decode(int code, IntArraySlice args) {
+                signIn(cmdValues[code], args);
+            }
+        });
+        on(SIGN_UP, new IDecoder() {
+            @Override
+            public void decode(int code, IntArraySlice args) {
+                signIn(cmdValues[code], args);
+            }
+        });
+        on(SIGN_OUT, new IDecoder() {
+            @Override
+            public void decode(int code, IntArraySlice args) {
+                signOut(cmdValues[code], args);
+            }
+        });
+        on(USER_INFO, new IDecoder() {
+            @Override
+            public void decode(int code, IntArraySlice args) {
+                userInfo(cmdValues[code], args);
+            }
+        });
+        on(BUY_PRODUCT, new IDecoder() {
+            @Override
+            public void decode(int code, IntArraySlice args) {
+                userInfo(cmdValues[code], args);
+            }
+        });
+        on(ATTACK, new IDecoder() {
+            @Override
+            public void decode(int code, IntArraySlice args) {
+                responseOnAttack(cmdValues[code], args);
+            }
+        });
+        on(CALL, new IDecoder() {
+            @Override
+            public void decode(int code, IntArraySlice args) {
+                call(cmdValues[code], args);
+            }
+        });
+        on(STOPCALL, new IDecoder() {
+            @Override
+            public void decode(int code, IntArraySlice args) {
+                stopCall(cmdValues[code], args);
+            }
+        });
+        on(FRIEND_LIST, new IDecoder() {
+            @Override
+            public void decode(int code, IntArraySlice args) {
+                friendList(cmdValues[code], args);
+            }
+        });
+        on(ADD_FRIEND, new IDecoder() {
+            @Override
+            public void decode(int code, IntArraySlice args) {
+                addFriend(cmdValues[code], args);
+            }
+        });
+        on(REMOVE_FRIEND, new IDecoder() {
+            @Override
+            public void decode(int code, IntArraySlice args) {
+                removeFriend(cmdValues[code], args);
+            }
+        });
+        on(RANGE_OF_PRODUCTS, new IDecoder() {
+            @Override
+            public void decode(int code, IntArraySlice args) {
+                rangeOfProducts(cmdValues[code], args);
+            }
+        });
+        on(ENEMY_NAME, new IDecoder() {
+            @Override
+            public void decode(int code, IntArraySlice args) {
+                enemyName(cmdValues[code], args);
+            }
+        });
+        on(ROUND_INFO, new IDecoder() {
+            @Override
+            public void decode(int code, IntArraySlice args) {
+                roundInfo(cmdValues[code], args);
+            }
+        });
+        on(RATING, new IDecoder() {
+            @Override
+            public void decode(int code, IntArraySlice args) {
+                rating(cmdValues[code], args);
+            }
+        });
+        on(FULL_STATE, new IDecoder() {
+            @Override
+            public void decode(int code, IntArraySlice args) {
+                fullState(cmdValues[code], args);
+            }
+        });
+        on(MOVE, new IDecoder() {
+            @Override
+            public void decode(int code, IntArraySlice args) {
+                move(cmdValues[code], args);
+            }
+        });
+        on(STATE_CHANGED, new IDecoder() {
+            @Override
+            public void decode(int code, IntArraySlice args) {
+                stateChanged(cmdValues[code], args);
+            }
+        });
+        on(SCORE_CHANGED, new IDecoder() {
+            @Override
+            public void decode(int code, IntArraySlice args) {
+                scoreChanged(cmdValues[code], args);
+            }
+        });
+        on(PLAYER_WOUNDED, new IDecoder() {
+            @Override
+            public void decode(int code, IntArraySlice args) {
+                playerWounded(cmdValues[code], args);
+            }
+        });
+        on(FINISHED, new IDecoder() {
+            @Override
+            public void decode(int code, IntArraySlice args) {
+                finished(cmdValues[code], args);
+            }
+        });
+        on(THING_TAKEN, new IDecoder() {
+            @Override
+            public void decode(int code, IntArraySlice args) {
+                thingTaken(cmdValues[code], args);
+            }
+        });
+        on(ABILITY_LIST, new IDecoder() {
+            @Override
+            public void decode(int code, IntArraySlice args) {
+                abilitiesList(cmdValues[code], args);
+            }
+        });
+        on(OBJECT_APPENDED, new IDecoder() {
+            @Override
+            public void decode(int code, IntArraySlice args) {
+                objectAppended(cmdValues[code], args);
+            }
+        });
+        on(RESTORE_STATE, new IDecoder() {
+            @Override
+            public void decode(int code, IntArraySlice args) {
+                restoreState(cmdValues[code], args);
+            }
+        });
+        on(CHECK_PROMOCODE, new IDecoder() {
+            @Override
+            public void decode(int code, IntArraySlice args) {
+                checkPromocode(cmdValues[code], args);
+            }
+        });
+        on(PROMOCODE_DONE, new IDecoder() {
+            @Override
+            public void decode(int code, IntArraySlice args) {
+                promocodeDone(cmdValues[code], args);
+            }
+        });
+        on(GET_SKU_GEMS, new IDecoder() {
+            @Override
+            public void decode(int code, IntArraySlice args) {
+                getSkuGems(cmdValues[code], args);
+            }
+        });
+        on(CHECK_PURCHASE, new IDecoder() {
+            @Override
+            public void decode(int code, IntArraySlice args) {
+                checkPurchase(cmdValues[code], args);
+            }
+        });
+        on(EFFECT_CHANGED, new IDecoder() {
+            @Override
+            public void decode(int code, IntArraySlice args) {
+                effectChanged(cmdValues[code], args);
+            }
+        });
+        on(GET_CLIENT_VERSION, new IDecoder() {
+            @Override
+            public void decode(int code, IntArraySlice args) {
+                getClientVersion(cmdValues[code], args);
+            }
+        });
+        registry.register(0xF2, new IDecoder() { // debug: measuring the network latency
+            @Override
+            public void decode(int code, IntArraySlice args) {
+                int num = args.getU16(0);
+                long t0 = ((long) args.getU32(2) << 32) | (args.getU32(6) & 0xFFFFFFFFL);
+                String s = String.format(locale, "%d: %d msec", num, System.currentTimeMillis() - t0);
+                log("DATA ", s);
+            }
+        });
+    }
+
+    /**
+     * @return decoder registry (e.g. to get per-command counters)
+     */
+    DecoderRegistry getRegistry() {
+        return registry;
     }
 
     @Override
     public synchronized void onReceived(IIntArray data) {
         assert data != null;
-        // divide the byte array into several single messages
-        while (data.length() > 2) {
-            int len = data.get(0) * 256 + data.get(1);
-            processMsg(array.copyFrom(data.remove(0, 2), len));
-            data.remove(0, len);
+        // divide the byte array into several single messages (just by moving offsets)
+        try {
+            for (int i = 0; data.length() - i > 2; ) {
+                int len = data.get(i) * 256 + data.get(i + 1);
+                i += 2;
+                processMsg(msg.wrap(data, i, Math.min(len, data.length() - i)));
+                i += len;
+            }
+        } finally {
+            model.applyDelta(delta); // apply all the field changes of the datagram atomically (even if a message fails)
         }
     }
 
@@ -120,132 +335,40 @@ class Parser implements IHandler {
      * corresponding method of Model
      * @param data single message byte array
      */
-    private void processMsg(IIntArray data) {
+    private void processMsg(IntArraySlice data) {
         assert data != null;
-        log("Processing:", data);
+        log(TRACE, "Processing:", data);
         if (data.length() > 0) {
+            // field changes are collected in the delta; any other message must see them applied (to keep the order)
             int code = data.get(0);
-            if (0 <= code && code < Model.cmdValues.length) {
-                Cmd cmd = Model.cmdValues[code];
-                switch (cmd) {
-                    case SIGN_IN:
-                    case SIGN_UP:
-                        signIn(cmd, data.remove(0, 1));
-                        break;
-                    case SIGN_OUT:
-                        signOut(cmd, data.remove(0, 1));
-                        break;
-                    case USER_INFO:
-                    case BUY_PRODUCT:
-                        userInfo(cmd, data.remove(0, 1));
-                        break;
-                    case ATTACK: // response on Attack
-                        responseOnAttack(cmd, data.remove(0, 1));
-                        break;
-                    case CALL:
-                        call(cmd, data.remove(0, 1));
-                        break;
-                    case STOPCALL:
-                        stopCall(cmd, data.remove(0, 1));
-                        break;
-                    case FRIEND_LIST:
-                        friendList(cmd, data.remove(0, 1));
-                        break;
-                    case ADD_FRIEND:
-                        addFriend(cmd, data.remove(0, 1));
-                        break;
-                    case REMOVE_FRIEND:
-                        removeFriend(cmd, data.remove(0, 1));
-                        break;
-                    case RANGE_OF_PRODUCTS:
-                        rangeOfProducts(cmd, data.remove(0, 1));
-                        break;
-                    case ENEMY_NAME:
-                        enemyName(cmd, data.remove(0, 1));
-                        break;
-                    case ROUND_INFO:
-                        roundInfo(cmd, data.remove(0, 1));
-                        break;
-                    case RATING:
-                        rating(cmd, data.remove(0, 1));
-                        break;
-                    case FULL_STATE:
-                        fullState(cmd, data.remove(0, 1));
-                        break;
-                    case MOVE:   // response on Move
-                        move(cmd, data.remove(0, 1));
-                        break;
-                    case STATE_CHANGED:
-                        stateChanged(cmd, data.remove(0, 1));
-                        break;
-                    case SCORE_CHANGED:
-                        scoreChanged(cmd, data.remove(0, 1));
-                        break;
-                    case PLAYER_WOUNDED:
-                        playerWounded(cmd, data.remove(0, 1));
-                        break;
-                    case FINISHED:
-                        finished(cmd, data.remove(0, 1));
-                        break;
-                    case THING_TAKEN:
-                        thingTaken(cmd, data.remove(0, 1));
-                        break;
-                    case ABILITY_LIST:
-                        abilitiesList(cmd, data.remove(0, 1));
-                        break;
-                    case OBJECT_APPENDED:
-                        objectAppended(cmd, data.remove(0, 1));
-                        break;
-                    case RESTORE_STATE:
-                        restoreState(cmd, data.remove(0, 1));
-                        break;
-                    case CHECK_PROMOCODE:
-                        checkPromocode(cmd, data.remove(0, 1));
-                        break;
-                    case PROMOCODE_DONE:
-                        promocodeDone(cmd, data.remove(0, 1));
-                        break;
-                    case GET_SKU_GEMS:
-                        getSkuGems(cmd, data.remove(0, 1));
-                        break;
-                    case CHECK_PURCHASE:
-                        checkPurchase(cmd, data.remove(0, 1));
-                        break;
-                    case EFFECT_CHANGED:
-                        effectChanged(cmd, data.remove(0, 1));
-                        break;
-                    case GET_CLIENT_VERSION:
-                        getClientVersion(cmd, data.remove(0, 1));
-                        break;
-                    default:
-                        if (data.length() > 1)
-                            inspectError(cmd, data.get(1));
-                        else throw new IllegalArgumentException("Unhandled command code");
-                }
-            } else {
-                if (code == 0xF2) {
-                    int num = data.get(1) * 256 + data.get(2);
-                    long t0 = ((long) data.get(3) << 56) |
-                            ((long) data.get(4) << 48) |
-                            ((long) data.get(5) << 40) |
-                            ((long) data.get(6) << 32) |
-                            ((long) data.get(7) << 24) |
-                            ((long) data.get(8) << 16) |
-                            ((long) data.get(9) << 8) |
-                            ((long) data.get(10));
-                    String s = String.format(locale, "%d: %d msec", num, System.currentTimeMillis() - t0);
-                    log("DATA ", s);
+            Cmd cmd = code < cmdValues.length ? cmdValues[code] : null;
+            if (cmd != STATE_CHANGED && cmd != OBJECT_APPENDED && delta.size() > 0)
+                model.applyDelta(delta);
+            if (!registry.dispatch(data)) {
+                if (0 <= code && code < cmdValues.length) {
+                    if (data.length() > 1)
+                        inspectError(cmdValues[code], data.get(1));
+                    else throw new IllegalArgumentException("Unhandled command code");
                 } else throw new IllegalArgumentException("Incorrect command code");
             }
         } else throw new IllegalArgumentException("Empty data");
     }
 
+    /**
+     * Registers a decoder for the given command
+     * @param cmd command
+     * @param decoder decoder
+     */
+    private void on(Cmd cmd, IDecoder decoder) {
+        registry.register(Arrays.binarySearch(cmdValues, cmd), decoder); // don't use "cmd.ordinal()" (GC pressure)
+    }
+
     /**
      * Parses SIGN_IN command
      * @param cmd command
      * @param data arguments
      */
-    private void signIn(Cmd cmd, IIntArray data) {
+    private void signIn(Cmd cmd, IntArraySlice data) {
         if (data.length() == 1) {
             int error = data.get(0);
             if (error == 0)
@@ -259,7 +382,7 @@ class Parser implements IHandler {
      * @param cmd command
      * @param data arguments
      */
-    private void signOut(Cmd cmd, IIntArray data) {
+    private void signOut(Cmd cmd, IntArraySlice data) {
         if (data.length() == 1) {
             int error = data.get(0);
             if (error == 0)
@@ -273,11 +396,11 @@ class Parser implements IHandler {
      * @param cmd command
      * @param data arguments
      */
-    private void userInfo(Cmd cmd, IIntArray data) {
+    private void userInfo(Cmd cmd, IntArraySlice data) {
         if (data.length() > 0) {
             int error = data.get(0);
             if (error == 0)
-                model.setUserInfo(data.remove(0, 1));
+                model.setUserInfo(data.skip(1));
             else inspectError(cmd, error);
         } else throw new IllegalArgumentException("Incorrect user info format");
     }
@@ -287,11 +410,11 @@ class Parser implements IHandler {
      * @param cmd command
      * @param data arguments
      */
-    private void responseOnAttack(Cmd cmd, IIntArray data) {
+    private void responseOnAttack(Cmd cmd, IntArraySlice data) {
         if (data.length() > 0) {
             int error = data.get(0);
             if (error == 0)
-                model.waitForEnemy(data.remove(0, 1).toUTF8());
+                model.waitForEnemy(data.utf8(1));
             else inspectError(cmd, error);
         } else throw new IllegalArgumentException("Incorrect attack format");
     }
@@ -301,12 +424,12 @@ class Parser implements IHandler {
      * @param cmd command
      * @param data arguments
      */
-    private void call(Cmd cmd, IIntArray data) {
+    private void call(Cmd cmd, IntArraySlice data) {
         if (data.length() > 3) {
             int sidH = data.get(0);
             int sidL = data.get(1);
             int sid = sidH * 256 + sidL;
-            String aggressor = data.remove(0, 2).toUTF8();
+            String aggressor = data.utf8(2);
             model.attacked(sid, aggressor);
         } else if (data.length() == 1) {
             inspectError(cmd, data.get(0));
@@ -318,17 +441,17 @@ class Parser implements IHandler {
      * @param cmd command
      * @param data arguments
      */
-    private void stopCall(Cmd cmd, IIntArray data) {
+    private void stopCall(Cmd cmd, IntArraySlice data) {
         if (data.length() > 0) {
             boolean rejected = data.get(0) == 0;
             boolean missed = data.get(0) == 1;
             boolean expired = data.get(0) == 2;
             if (rejected)
-                model.stopCallRejected(data.remove(0, 1).toUTF8());
+                model.stopCallRejected(data.utf8(1));
             else if (missed)
-                model.stopCallMissed(data.remove(0, 1).toUTF8());
+                model.stopCallMissed(data.utf8(1));
             else if (expired)
-                model.stopCallExpired(data.remove(0, 1).toUTF8());
+                model.stopCallExpired(data.utf8(1));
             else inspectError(cmd, data.get(0));
         } else throw new IllegalArgumentException("Incorrect stopCall format");
     }
@@ -338,12 +461,12 @@ class Parser implements IHandler {
      * @param cmd command
      * @param data arguments
      */
-    private void friendList(Cmd cmd, IIntArray data) {
+    private void friendList(Cmd cmd, IntArraySlice data) {
         if (data.length() > 1) {
             int error = data.get(0);
             int fragNumber = data.get(1);
             if (error == 0)
-                model.setFriendList(data.remove(0, 2), fragNumber > 1);
+                model.setFriendList(data.skip(2), fragNumber > 1);
             else inspectError(cmd, error);
         } else if (data.length() == 1) {
             inspectError(cmd, data.get(0));
@@ -355,13 +478,13 @@ class Parser implements IHandler {
      * @param cmd command
      * @param data arguments
      */
-    private void addFriend(Cmd cmd, IIntArray data) {
+    private void addFriend(Cmd cmd, IntArraySlice data) {
         if (data.length() > 0) {
             int error = data.get(0);
             if (error == 0) {
                 if (data.length() > 1) {
                     int character = data.get(1);
-                    model.friendAdded(character, data.remove(0, 2).toUTF8());
+                    model.friendAdded(character, data.utf8(2));
                 } else throw new IllegalArgumentException("Incorrect addFriend format");
             } else inspectError(cmd, error);
         } else throw new IllegalArgumentException("Incorrect add friend format");
@@ -372,11 +495,11 @@ class Parser implements IHandler {
      * @param cmd command
      * @param data arguments
      */
-    private void removeFriend(Cmd cmd, IIntArray data) {
+    private void removeFriend(Cmd cmd, IntArraySlice data) {
         if (data.length() > 0) {
             int error = data.get(0);
             if (error == 0)
-                model.friendRemoved(data.remove(0, 1).toUTF8());
+                model.friendRemoved(data.utf8(1));
             else inspectError(cmd, error);
         } else throw new IllegalArgumentException("Incorrect remove friend format");
     }
@@ -386,11 +509,11 @@ class Parser implements IHandler {
      * @param cmd command
      * @param data arguments
      */
-    private void rangeOfProducts(Cmd cmd, IIntArray data) {
+    private void rangeOfProducts(Cmd cmd, IntArraySlice data) {
         if (data.length() > 0) {
             int error = data.get(0);
             if (error == 0) {
-                data.remove(0, 1);
+                data.skip(1);
                 if (data.length() % 3 == 0)
                     model.setRangeOfProducts(data);
                 else throw new IllegalArgumentException("Incorrect range-of-products triples format");
@@ -403,7 +526,7 @@ class Parser implements IHandler {
      * @param cmd command
      * @param data arguments
      */
-    private void enemyName(Cmd cmd, IIntArray data) {
+    private void enemyName(Cmd cmd, IntArraySlice data) {
         if (data.length() > 0)
             model.setEnemyName(data.toUTF8());
         else throw new IllegalArgumentException("Incorrect enemyName format" + cmd);
@@ -414,7 +537,7 @@ class Parser implements IHandler {
      * @param cmd command
      * @param data arguments
      */
-    private void roundInfo(Cmd cmd, IIntArray data) {
+    private void roundInfo(Cmd cmd, IntArraySlice data) {
         if (data.length() > 6) {
             int number = data.get(0);
             int timeSec = data.get(1);
@@ -423,7 +546,7 @@ class Parser implements IHandler {
             int character2 = data.get(4);
             int myLives = data.get(5);
             int enemyLives = data.get(6);
-            String fieldName = data.remove(0, 7).toUTF8();
+            String fieldName = data.utf8(7);
             model.setRoundInfo(number, timeSec, fieldName, aggressor, character1, character2, myLives, enemyLives);
         } else if (data.length() == 1) {
             inspectError(cmd, data.get(0));
@@ -435,13 +558,13 @@ class Parser implements IHandler {
      * @param cmd command
      * @param data arguments
      */
-    private void rating(Cmd cmd, IIntArray data) {
+    private void rating(Cmd cmd, IntArraySlice data) {
         if (data.length() > 1) {
             int error = data.get(0);
             int type = data.get(1);
             RatingType[] types = RatingType.values();
             if (error == 0 && (0 <= type && type < types.length)) {
-                model.setRating(types[type], data.remove(0, 2));
+                model.setRating(types[type], data.skip(2));
             } else inspectError(cmd, error);
         } else if (data.length() == 1) {
             inspectError(cmd, data.get(0));
@@ -453,11 +576,11 @@ class Parser implements IHandler {
      * @param cmd command
      * @param state arguments
      */
-    private void fullState(Cmd cmd, IIntArray state) {
+    private void fullState(Cmd cmd, IntArraySlice state) {
         int n = Field.HEIGHT * Field.WIDTH;
         if (state.length() >= n) {
             // field
-            model.setNewField(field.copyFrom(state, n));
+            model.setNewField(field.wrap(state, 0, n));
 
             // scanning additional sections
             for (int j = n; j + 1 < state.length(); j += 2) {
@@ -470,7 +593,7 @@ class Parser implements IHandler {
                             int number = state.get(k);
                             int id = state.get(k + 1);
                             int xy = state.get(k + 2);
-                            model.appendObject(number, id, xy);
+                            delta.append(number, id, xy);
                         }
                         break;
                     case 2: // parse style pack
@@ -483,6 +606,7 @@ class Parser implements IHandler {
                 }
                 j += sectionLen;
             }
+            model.applyDelta(delta);
         } else if (state.length() == 0) {
             model.setEmptyField();
         } else if (state.length() == 1) {
@@ -495,7 +619,7 @@ class Parser implements IHandler {
      * @param cmd command
      * @param data arguments
      */
-    private void move(Cmd cmd, IIntArray data) {
+    private void move(Cmd cmd, IntArraySlice data) {
         if (data.length() == 1) {
             boolean error = data.get(0) != 0;
             if (!error)
@@ -509,13 +633,13 @@ class Parser implements IHandler {
      * @param cmd command
      * @param data arguments
      */
-    private void stateChanged(Cmd cmd, IIntArray data) {
+    private void stateChanged(Cmd cmd, IntArraySlice data) {
         if (data.length() == 4) {
             int number = data.get(0);
             int id = data.get(1);
             int xy = data.get(2);
             boolean reset = data.get(3) == 1;
-            model.setXy(number, id, xy, reset);
+            delta.move(number, id, xy, reset); // will be applied at the end of the datagram
         } else if (data.length() == 1) {
             inspectError(cmd, data.get(0));
         } else throw new IllegalArgumentException("Incorrect state changed format");
@@ -526,7 +650,7 @@ class Parser implements IHandler {
      * @param cmd command
      * @param score arguments
      */
-    private void scoreChanged(Cmd cmd, IIntArray score) {
+    private void scoreChanged(Cmd cmd, IntArraySlice score) {
         if (score.length() == 2) {
             int score1 = score.get(0);
             int score2 = score.get(1);
@@ -541,7 +665,7 @@ class Parser implements IHandler {
      * @param cmd command
      * @param data arguments
      */
-    private void playerWounded(Cmd cmd, IIntArray data) {
+    private void playerWounded(Cmd cmd, IntArraySlice data) {
         if (data.length() == 4) {
             boolean me = data.get(0) == 1;
             int cause = data.get(1);
@@ -558,7 +682,7 @@ class Parser implements IHandler {
      * @param cmd command
      * @param data arguments
      */
-    private void finished(Cmd cmd, IIntArray data) {
+    private void finished(Cmd cmd, IntArraySlice data) {
         if (data.length() > 3) {
             boolean roundFinished = data.get(0) == 0; // 0 = finished round, 1 = finished game
             boolean gameFinished = data.get(0) == 1;
@@ -568,8 +692,7 @@ class Parser implements IHandler {
             if (roundFinished)
                 model.roundFinished(winner, score1, score2);
             else if (gameFinished) {
-                int reward = data.length() == 8
-                        ? (data.get(4) << 24) | (data.get(5) << 16) | (data.get(6) << 8) | data.get(7) : 0;
+                int reward = data.length() == 8 ? data.getU32(4) : 0;
                 model.gameFinished(winner, score1, score2, reward);
             } else throw new IllegalArgumentException("Incorrect finished format!");
         } else if (data.length() == 1) {
@@ -582,7 +705,7 @@ class Parser implements IHandler {
      * @param cmd command
      * @param data arguments
      */
-    private void thingTaken(Cmd cmd, IIntArray data) {
+    private void thingTaken(Cmd cmd, IntArraySlice data) {
         if (data.length() == 2) {
             boolean me = data.get(0) != 0;
             int thingId = data.get(1);
@@ -599,12 +722,12 @@ class Parser implements IHandler {
      * @param cmd command
      * @param data arguments
      */
-    private void objectAppended(Cmd cmd, IIntArray data) {
+    private void objectAppended(Cmd cmd, IntArraySlice data) {
         if (data.length() == 3) {
             int id = data.get(0);
             int objNum = data.get(1);
             int xy = data.get(2);
-            model.appendObject(objNum, id, xy);
+            delta.append(objNum, id, xy); // will be applied at the end of the datagram
         } else if (data.length() == 1) {
             inspectError(cmd, data.get(0));
         } else throw new IllegalArgumentException("Incorrect object format");
@@ -616,22 +739,23 @@ class Parser implements IHandler {
      * @param data arguments
      * @since ServerAPI 1.3.0
      */
-    private void restoreState(Cmd cmd, IIntArray data) {
+    private void restoreState(Cmd cmd, IntArraySlice data) {
         if (data.length() >= 1) {
             int error = data.get(0);
             if (error == 0) {
-                IIntArray chunks = data.remove(0, 1);
+                IntArraySlice chunks = data.skip(1);
                 if (chunks.length() % 3 == 0) {
                     log("RESTORING CHUNKS: ", chunks.length());
                     for (int i = 0; i < chunks.length(); i += 3) {
                         int num = chunks.get(i);
                         int id = chunks.get(i + 1);
                         int xy = chunks.get(i + 2);
-                        log("Num:", num);
-                        log("Id: ", id);
-                        log("XY: ", xy);
-                        model.setXy(num, id, xy, true);
+                        log(TRACE, "Num:", num);
+                        log(TRACE, "Id: ", id);
+                        log(TRACE, "XY: ", xy);
+                        delta.move(num, id, xy, true);
                     }
+                    model.applyDelta(delta);
                 } else throw new IllegalArgumentException("Incorrect restoreState format");
             } else inspectError(cmd, error);
         } else throw new IllegalArgumentException("Incorrect restoreState size");
@@ -642,7 +766,7 @@ class Parser implements IHandler {
      * @param cmd command
      * @param data arguments
      */
-    private void checkPromocode(Cmd cmd, IIntArray data) {
+    private void checkPromocode(Cmd cmd, IntArraySlice data) {
         if (data.length() == 2) {
             int error = data.get(0);
             if (error == 0) {
@@ -659,11 +783,11 @@ class Parser implements IHandler {
      * @param cmd command
      * @param data arguments
      */
-    private void promocodeDone(Cmd cmd, IIntArray data) {
+    private void promocodeDone(Cmd cmd, IntArraySlice data) {
         if (data.length() > 1) {
             boolean inviter = data.get(0) == 1;
-            int gems = (data.get(1) << 24) | (data.get(2) << 16) | (data.get(3) << 8) | data.get(4);
-            model.setPromocodeDone(data.remove(0, 5).toUTF8(), inviter, gems);
+            int gems = data.getU32(1);
+            model.setPromocodeDone(data.utf8(5), inviter, gems);
         } else if (data.length() == 1) {
             inspectError(cmd, data.get(0));
         } else throw new IllegalArgumentException("Incorrect 'promocode done' format");
@@ -674,7 +798,7 @@ class Parser implements IHandler {
      * @param cmd command
      * @param data arguments
      */
-    private void getSkuGems(Cmd cmd, IIntArray data) {
+    private void getSkuGems(Cmd cmd, IntArraySlice data) {
         if (data.length() > 1)
             model.setSkuGems(data);
         else if (data.length() == 1)
@@ -687,12 +811,12 @@ class Parser implements IHandler {
      * @param cmd command
      * @param data arguments
      */
-    private void checkPurchase(Cmd cmd, IIntArray data) {
+    private void checkPurchase(Cmd cmd, IntArraySlice data) {
         if (data.length() > 5) {
             int error = data.get(0);
             if (error == 0) {
-                int gems = (data.get(1) << 24) | (data.get(2) << 16) | (data.get(3) << 8) | data.get(4);
-                String coupon = data.remove(0, 5).toUTF8();
+                int gems = data.getU32(1);
+                String coupon = data.utf8(5);
                 model.paymentDone(gems, coupon);
             } else inspectError(cmd, error);
         } else if (data.length() == 1) {
@@ -705,7 +829,7 @@ class Parser implements IHandler {
      * @param cmd command
      * @param data arguments
      */
-    private void effectChanged(Cmd cmd, IIntArray data) {
+    private void effectChanged(Cmd cmd, IntArraySlice data) {
         if (data.length() == 3) {
             int effectId = data.get(0);
             boolean added = data.get(1) == 1;
@@ -723,10 +847,10 @@ class Parser implements IHandler {
      * @param cmd command
      * @param data arguments
      */
-    private void abilitiesList(Cmd cmd, IIntArray data) {
+    private void abilitiesList(Cmd cmd, IntArraySlice data) {
         if (data.length() > 0) {
             int count = data.get(0);
-            data.remove(0, 1);
+            data.skip(1);
             if (data.length() == count)
                 model.setAbilities(data);
             else inspectError(cmd, data.get(0));
@@ -738,7 +862,7 @@ class Parser implements IHandler {
      * @param cmd command
      * @param data arguments
      */
-    private void getClientVersion(Cmd cmd, IIntArray data) {
+    private void getClientVersion(Cmd cmd, IntArraySlice data) {
         if (data.length() == 6)
             model.setClientVersion(data.get(0), data.get(1), data.get(2), data.get(3), data.get(4), data.get(5));
         else throw new IllegalArgumentException("Incorrect client version format: " + cmd);
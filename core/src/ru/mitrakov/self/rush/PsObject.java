@@ -1,6 +1,6 @@
 package ru.mitrakov.self.rush;
 
-import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * Platform Specific Object.
@@ -10,8 +10,23 @@ import java.util.*;
  * @author mitrakov
  */
 public abstract class PsObject {
+    /** Max count of threads in the default scheduler */
+    private static final int SCHEDULER_THREADS = 2;
+
+    /**
+     * Handle of a scheduled task
+     */
+    public interface ITask {
+        /**
+         * Cancels the task (if the task is running right now, it will be completed, but never started again)
+         */
+        void cancel();
+    }
+
     /** Billing Provider */
     private IBillingProvider billingProvider;
+    /** Shared scheduler for all the tasks (created on demand, see {@link #createScheduler()}) */
+    private ScheduledExecutorService scheduler;
 
     /**
      * Creates new instance of Platform Specific Object
@@ -60,31 +75,66 @@ public abstract class PsObject {
     public abstract String getKeyboardVendor();
 
     /**
-     * Runs a task periodically. By default it uses a standard Java timer (not recommended on Android)
+     * Runs a task periodically (with a fixed delay between the end of one run and the start of the next one).
+     * By default it uses a shared scheduler (see {@link #createScheduler()}), so that no new threads are created
      * @param delayMsec start delay in msec
      * @param periodMsec period delay in msec
      * @param f function to run
+     * @return handle to cancel the task
      */
-    public void runDaemon(int delayMsec, int periodMsec, final Runnable f) {
-        new Timer(true).schedule(new TimerTask() {
-            @Override
-            public void run() {
-                f.run();
-            }
-        }, delayMsec, periodMsec);
+    public ITask runDaemon(int delayMsec, int periodMsec, Runnable f) {
+        return wrap(getScheduler().scheduleWithFixedDelay(f, delayMsec, periodMsec, TimeUnit.MILLISECONDS));
     }
 
     /**
-     * Runs a single task in the given delay. By default it uses a standard Java timer (not recommended on Android)
+     * Runs a single task in the given delay.
+     * By default it uses a shared scheduler (see {@link #createScheduler()}), so that no new threads are created
      * @param delayMsec delay in msec
      * @param f function to run
+     * @return handle to cancel the task
+     */
+    public ITask runTask(int delayMsec, Runnable f) {
+        return wrap(getScheduler().schedule(f, delayMsec, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Creates a scheduler for {@link #runTask(int, Runnable)} and {@link #runDaemon(int, int, Runnable)}.
+     * By default it is a pool of {@link #SCHEDULER_THREADS} daemon threads (not recommended on Android, please
+     * override runTask() and runDaemon() instead). Called only once, on the first scheduled task
+     * @return new scheduler
+     */
+    protected ScheduledExecutorService createScheduler() {
+        return Executors.newScheduledThreadPool(SCHEDULER_THREADS, new ThreadFactory() {
+            private int n = 0;
+
+            @Override
+            public synchronized Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "psObject-" + n++);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * @return shared scheduler (it is created on the first call)
+     */
+    private synchronized ScheduledExecutorService getScheduler() {
+        if (scheduler == null)
+            scheduler = createScheduler();
+        return scheduler;
+    }
+
+    /**
+     * @param future future of a scheduled task
+     * @return handle to cancel the task
      */
-    public void runTask(int delayMsec, final Runnable f) {
-        new Timer(true).schedule(new TimerTask() {
+    private static ITask wrap(final Future<?> future) {
+        return new ITask() {
             @Override
-            public void run() {
-                f.run();
+            public void cancel() {
+                future.cancel(false);
             }
-        }, delayMsec);
+        };
     }
 }
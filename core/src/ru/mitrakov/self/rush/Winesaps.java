@@ -1,6 +1,6 @@
 package ru.mitrakov.self.rush;
 
-import java.net.*;
+import java.io.IOException;
 
 import com.badlogic.gdx.*;
 import com.badlogic.gdx.audio.*;
@@ -41,6 +41,8 @@ public class Winesaps extends Game {
     public static final String HOST = "winesaps.ru";
     /** Server port */
     public static final int PORT = 33996;
+    /** Network backend: TRUE for NIO event loop (DatagramChannel + Selector), FALSE for blocking DatagramSocket */
+    public static final boolean NIO = false;
 
     /** Platform Specific Object */
     private final PsObject psObject;
@@ -85,16 +87,16 @@ public class Winesaps extends Game {
             };
             IHandler parser = new Parser(model);
             Model.IFileReader fileReader = new FileReader();
-            ServerEmulator serverEmulator = new ServerEmulator(model, fileReader, parser);
+            ServerEmulator serverEmulator = new ServerEmulator(psObject, model, fileReader, parser);
 
-            network = new Network(psObject, parser, errorHandler, HOST, PORT);
-            network.setProtocol(new SwUDP(psObject, network.getSocket(), HOST, PORT, network));
+            network = new Network(psObject, parser, errorHandler, HOST, PORT, NIO);
+            network.setProtocol(new SwUDP(network, network));
 
             // set up model
             model.setSenders(new MsgSender(network, errorHandler), new MsgSenderEmulator(serverEmulator));
             model.setFileReader(fileReader);
             model.setEmulator(serverEmulator);
-        } catch (SocketException e) {
+        } catch (IOException e) {
             e.printStackTrace();
         }
     }
@@ -113,9 +115,12 @@ public class Winesaps extends Game {
 
     @Override
     public void render() {
-        if (screen != null)                             // screen exists
+        if (screen != null) {                           // screen exists
+            model.bus.drain();                          // deliver all the events raised since the previous frame
             screen.render(Gdx.graphics.getDeltaTime());
-        else if (assetManager.update()) {               // loading assets (returns true when finished)
+            if (network != null)
+                network.flush();                        // send all the messages issued within this frame at once
+        } else if (assetManager.update()) {               // loading assets (returns true when finished)
             init();
         } else {                                        // draw splash screen
             Gdx.gl.glClear(GL20.GL_COLOR_BUFFER_BIT);
@@ -268,7 +273,7 @@ public class Winesaps extends Game {
                     psObject.pushNotification(i18n.format("dialog.incoming.notification", ev.enemy), false);
                 }
             }
-        });
+        }, EventBus.InviteEvent.class);
 
         // set default locale
         updateLocale();
@@ -1,6 +1,6 @@
 package ru.mitrakov.self.rush.model;
 
-import java.util.List;
+import java.util.*;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 import ru.mitrakov.self.rush.model.Cells.*;
@@ -16,8 +16,21 @@ public class Cell {
     public final int xy;
     /** Bottom object (block, water, etc., may be NULL) */
     public CellObject bottom;
-    /** List of objects on the cell. Note that CopyOnWriteList has been chosen DELIBERATELY to decrease GC pressure */
+    /**
+     * List of objects on the cell. Note that CopyOnWriteList has been chosen DELIBERATELY to decrease GC pressure
+     * (client-side fields replace it with a simple list, and the renderer reads {@link Field.Snapshot snapshots})
+     */
     public List<CellObject> objects = new CopyOnWriteArrayList<CellObject>();
+    /**
+     * Primitive index of the field the cell belongs to (NULL for the trash cell and snapshot cells). Please change
+     * {@link #objects} only by {@link #addObject(CellObject)} and {@link #removeObject(CellObject)} to keep it in sync
+     */
+    FieldStore store;
+    /**
+     * Bitmasks of object kinds of the field (or the snapshot) the cell belongs to, by coordinate (see
+     * {@link FieldStore#getMask(int)}); NULL for the trash cell
+     */
+    long[] masks;
 
     /**
      * Private constructor (use <b>newCell()</b> factory method)
@@ -52,7 +65,19 @@ public class Cell {
         }
         CellObject object = newObject(value & 0x3F, res, numberFunc, number);
         if (object != null)
-            res.objects.add(object);
+            res.addObject(object);
+        return res;
+    }
+
+    /**
+     * Creates a new empty Cell for {@link Field.Snapshot} (it's filled by the writer before being published, so it
+     * doesn't need a thread-safe list)
+     * @param xy index in a battle field
+     * @return new Cell
+     */
+    static Cell newSnapshotCell(int xy) {
+        Cell res = new Cell(xy);
+        res.objects = new ArrayList<CellObject>(4);
         return res;
     }
 
@@ -158,11 +183,16 @@ public class Cell {
     /**
      * @param objClass java class of CellObject to search
      * @param <T> CellObject type
-     * @return first object in the cell that corresponds to a given java class
+     * @return first object in the cell that is an instance of a given java class (note that an object may have the
+     * kind of the class without being its instance, e.g. ActorEx of the Server Emulator has the ID of Actor1/Actor2;
+     * such objects are skipped)
      */
     @SuppressWarnings("unchecked")
     public <T extends CellObject> T getFirst(Class<T> objClass) {
-        for (int i = 0; i < objects.size(); i++) {  // .... GC!
+        long kind = Cells.kindOf(objClass);
+        if (kind != 0 && masks != null && (masks[xy] & kind) == 0)
+            return null; // most of the cells are empty, so it's the most frequent case
+        for (int i = 0; i < objects.size(); i++) {  // do NOT use for-each to decrease GC pressure
             CellObject obj = getObject(i);
             if (objClass.isInstance(obj))
                 return (T) obj;
@@ -170,12 +200,65 @@ public class Cell {
         return null;
     }
 
+    /**
+     * @param kind kind bitmask (e.g. {@link Cells#KIND_FOOD}, or {@link FieldStore#bit(int)} for a given object ID)
+     * @return first object in the cell that has any of the given kinds (or NULL)
+     */
+    public CellObject getFirst(long kind) {
+        if (masks != null && (masks[xy] & kind) == 0)
+            return null; // most of the cells are empty, so it's the most frequent case
+        for (int i = 0; i < objects.size(); i++) {
+            CellObject obj = getObject(i);
+            if (obj != null && (obj.getKind() & kind) != 0)
+                return obj;
+        }
+        return null;
+    }
+
     /**
      * @param objClass java class of CellObject to check
      * @return true, if a CellObject of a given java class exists in the cell
      */
     public boolean objectExists(Class<? extends CellObject> objClass) {
-        return getFirst(objClass) != null;
+        long kind = Cells.kindOf(objClass);
+        return kind != 0 ? objectExists(kind) : getFirst(objClass) != null;
+    }
+
+    /**
+     * @param kind kind bitmask (e.g. {@link Cells#KIND_FOOD}, or {@link FieldStore#bit(int)} for a given object ID)
+     * @return true, if an object with any of the given kinds exists in the cell (just a single bit test, except for
+     * the trash cell)
+     */
+    public boolean objectExists(long kind) {
+        return masks != null ? (masks[xy] & kind) != 0 : getFirst(kind) != null;
+    }
+
+    /**
+     * Adds the object to the cell (and updates the primitive index of the field).
+     * <br>Synchronized, because the Server Emulator changes the same cell from different threads (e.g. a wolf steps
+     * into a cell while an actor picks up a thing there): the list and the bitmask of the cell must change atomically,
+     * otherwise a concurrent {@link FieldStore#removed(Cell, CellObject)} might lose a bit
+     * @param object object
+     */
+    public synchronized void addObject(CellObject object) {
+        assert object != null;
+        objects.add(object);
+        if (store != null)
+            store.added(this, object);
+    }
+
+    /**
+     * Removes the object from the cell (and updates the primitive index of the field); synchronized, see
+     * {@link #addObject(CellObject)}
+     * @param object object
+     * @return true, if the object has been in the cell
+     */
+    public synchronized boolean removeObject(CellObject object) {
+        assert object != null;
+        boolean removed = objects.remove(object);
+        if (removed && store != null)
+            store.removed(this, object);
+        return removed;
     }
 
     /**
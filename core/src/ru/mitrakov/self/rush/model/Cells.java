@@ -1,11 +1,94 @@
 package ru.mitrakov.self.rush.model;
 
+import java.util.IdentityHashMap;
+import java.util.Map;
+
 /**
  * Static class for creating Cells of different types
  * @author mitrakov
  */
 @SuppressWarnings("WeakerAccess")
 public class Cells {
+    // @mitrakov: object kinds are bitmasks: bits 1-0x33 are object IDs (see FieldStore.bit()), and the highest bits are
+    // abstract categories; so that checks like "is there any food in the cell?" are just a single bit test (see Cell)
+
+    /** Kind: any animated object (see {@link CellObjectAnimated}) */
+    public static final long KIND_ANIMATED = 1L << 58;
+    /** Kind: any actor (see {@link CellObjectActor}) */
+    public static final long KIND_ACTOR = 1L << 59;
+    /** Kind: any food (see {@link CellObjectFood}) */
+    public static final long KIND_FOOD = 1L << 60;
+    /** Kind: any favourite food (see {@link CellObjectFavouriteFood}) */
+    public static final long KIND_FAVOURITE_FOOD = 1L << 61;
+    /** Kind: any raisable object (see {@link CellObjectRaisable}) */
+    public static final long KIND_RAISABLE = 1L << 62;
+    /** Kind: any thing (see {@link CellObjectThing}) */
+    public static final long KIND_THING = 1L << 63;
+
+    /** Java class -> kind (filled in the static initializer, so it is read-only and thread-safe afterwards) */
+    private static final Map<Class<?>, Long> kinds = new IdentityHashMap<Class<?>, Long>(64);
+
+    static {
+        kinds.put(CellObjectAnimated.class, KIND_ANIMATED);
+        kinds.put(CellObjectActor.class, KIND_ACTOR);
+        kinds.put(CellObjectFood.class, KIND_FOOD);
+        kinds.put(CellObjectFavouriteFood.class, KIND_FAVOURITE_FOOD);
+        kinds.put(CellObjectRaisable.class, KIND_RAISABLE);
+        kinds.put(CellObjectThing.class, KIND_THING);
+        kinds.put(Block.class, FieldStore.bit(Block.ID));
+        kinds.put(Dais.class, FieldStore.bit(Dais.ID));
+        kinds.put(Water.class, FieldStore.bit(Water.ID));
+        kinds.put(Actor1.class, FieldStore.bit(Actor1.ID));
+        kinds.put(Actor2.class, FieldStore.bit(Actor2.ID));
+        kinds.put(Wolf.class, FieldStore.bit(Wolf.ID));
+        kinds.put(Entry1.class, FieldStore.bit(Entry1.ID));
+        kinds.put(Entry2.class, FieldStore.bit(Entry2.ID));
+        kinds.put(LadderTop.class, FieldStore.bit(LadderTop.ID));
+        kinds.put(LadderBottom.class, FieldStore.bit(LadderBottom.ID));
+        kinds.put(Stair.class, FieldStore.bit(Stair.ID));
+        kinds.put(RopeLine.class, FieldStore.bit(RopeLine.ID));
+        kinds.put(Waterfall.class, FieldStore.bit(Waterfall.ID));
+        kinds.put(BeamChunk.class, FieldStore.bit(BeamChunk.ID));
+        kinds.put(Apple.class, FieldStore.bit(Apple.ID));
+        kinds.put(Pear.class, FieldStore.bit(Pear.ID));
+        kinds.put(Meat.class, FieldStore.bit(Meat.ID));
+        kinds.put(Carrot.class, FieldStore.bit(Carrot.ID));
+        kinds.put(Mushroom.class, FieldStore.bit(Mushroom.ID));
+        kinds.put(Nut.class, FieldStore.bit(Nut.ID));
+        kinds.put(FoodActor1.class, FieldStore.bit(FoodActor1.ID));
+        kinds.put(FoodActor2.class, FieldStore.bit(FoodActor2.ID));
+        kinds.put(UmbrellaThing.class, FieldStore.bit(UmbrellaThing.ID));
+        kinds.put(MineThing.class, FieldStore.bit(MineThing.ID));
+        kinds.put(BeamThing.class, FieldStore.bit(BeamThing.ID));
+        kinds.put(AntidoteThing.class, FieldStore.bit(AntidoteThing.ID));
+        kinds.put(FlashbangThing.class, FieldStore.bit(FlashbangThing.ID));
+        kinds.put(TeleportThing.class, FieldStore.bit(TeleportThing.ID));
+        kinds.put(DetectorThing.class, FieldStore.bit(DetectorThing.ID));
+        kinds.put(BoxThing.class, FieldStore.bit(BoxThing.ID));
+        kinds.put(Umbrella.class, FieldStore.bit(Umbrella.ID));
+        kinds.put(Mine.class, FieldStore.bit(Mine.ID));
+        kinds.put(Beam.class, FieldStore.bit(Beam.ID));
+        kinds.put(Antidote.class, FieldStore.bit(Antidote.ID));
+        kinds.put(Flashbang.class, FieldStore.bit(Flashbang.ID));
+        kinds.put(Teleport.class, FieldStore.bit(Teleport.ID));
+        kinds.put(Detector.class, FieldStore.bit(Detector.ID));
+        kinds.put(Box.class, FieldStore.bit(Box.ID));
+        kinds.put(DecorationStatic.class, FieldStore.bit(DecorationStatic.ID));
+        kinds.put(DecorationDynamic.class, FieldStore.bit(DecorationDynamic.ID));
+        kinds.put(DecorationWarning.class, FieldStore.bit(DecorationWarning.ID));
+        kinds.put(DecorationDanger.class, FieldStore.bit(DecorationDanger.ID));
+    }
+
+    /**
+     * @param clazz java class of CellObject
+     * @return kind bitmask that corresponds to the given class (an object has this kind if and only if it is an
+     * instance of the class), or 0 if the class has no kind (e.g. CellObject itself or subclasses of the Emulator)
+     */
+    public static long kindOf(Class<?> clazz) {
+        Long kind = kinds.get(clazz); // no autoboxing here: values are created once
+        return kind != null ? kind : 0;
+    }
+
     /**
      * Base class for all Cell Objects (actors, things, stairs, umbrellas, mines, etc.)
      */
@@ -20,6 +103,8 @@ public class Cells {
 
         /** Object ID */
         private int id;
+        /** Object kind: bitmask of its ID and all its categories (see {@link Cells#kindOf(Class)}) */
+        private final long kind;
         /** Current effect applied to the object */
         private Model.Effect effect = Model.Effect.None;
 
@@ -32,6 +117,12 @@ public class Cells {
             assert cell != null;
             this.id = id;
             this.cell = cell;
+            this.kind = FieldStore.bit(id) | (this instanceof CellObjectAnimated ? KIND_ANIMATED : 0)
+                    | (this instanceof CellObjectActor ? KIND_ACTOR : 0)
+                    | (this instanceof CellObjectFood ? KIND_FOOD : 0)
+                    | (this instanceof CellObjectFavouriteFood ? KIND_FAVOURITE_FOOD : 0)
+                    | (this instanceof CellObjectRaisable ? KIND_RAISABLE : 0)
+                    | (this instanceof CellObjectThing ? KIND_THING : 0);
         }
 
         /**
@@ -48,6 +139,13 @@ public class Cells {
             return id;
         }
 
+        /**
+         * @return kind of the object (bitmask of its ID and all its categories)
+         */
+        public long getKind() {
+            return kind;
+        }
+
         /**
          * @return coordinates of the object (0-255)
          * @see #getX()
@@ -105,9 +203,9 @@ public class Cells {
          */
         public void setCell(Cell newCell) {
             Cell oldCell = this.cell;
-            oldCell.objects.remove(this);
-            newCell.objects.add(this);
+            oldCell.removeObject(this);
             this.cell = newCell;
+            newCell.addObject(this);
         }
     }
 
@@ -185,147 +283,186 @@ public class Cells {
 
     /** Block Object */
     public static class Block extends CellObject {
+        /** Object ID (see Server API documentation for more details) */
+        public static final int ID = 0x01;
+
         /**
          * Creates a new Block object
          * @param cell cell to store the new object created
          */
         public Block(Cell cell) {
-            super(0x01, cell);
+            super(ID, cell);
         }
     }
 
     /** Dais Object */
     public static class Dais extends CellObject {
+        /** Object ID (see Server API documentation for more details) */
+        public static final int ID = 0x02;
+
         /**
          * Creates a new Dais object
          * @param cell cell to store the new object created
          */
         public Dais(Cell cell) {
-            super(0x02, cell);
+            super(ID, cell);
         }
     }
 
     /** Water Object */
     public static class Water extends CellObject {
+        /** Object ID (see Server API documentation for more details) */
+        public static final int ID = 0x03;
+
         /**
          * Creates a new Water object
          * @param cell cell to store the new object created
          */
         public Water(Cell cell) {
-            super(0x03, cell);
+            super(ID, cell);
         }
     }
 
     /** Actor1 Object */
     public static class Actor1 extends CellObjectActor {
+        /** Object ID (see Server API documentation for more details) */
+        public static final int ID = 0x04;
+
         /**
          * Creates a new Actor1 object
          * @param cell cell to store the new object created
          */
         public Actor1(Cell cell, int number) {
-            super(0x04, cell);
+            super(ID, cell);
             this.number = number;
         }
     }
 
     /** Actor2 Object */
     public static class Actor2 extends CellObjectActor {
+        /** Object ID (see Server API documentation for more details) */
+        public static final int ID = 0x05;
+
         /**
          * Creates a new Actor2 object
          * @param cell cell to store the new object created
          */
         public Actor2(Cell cell, int number) {
-            super(0x05, cell);
+            super(ID, cell);
             this.number = number;
         }
     }
 
     /** Wolf Object */
     public static class Wolf extends CellObjectAnimated {
+        /** Object ID (see Server API documentation for more details) */
+        public static final int ID = 0x06;
+
         /**
          * Creates a new Wolf object
          * @param cell cell to store the new object created
          */
         public Wolf(Cell cell, int number) {
-            super(0x06, cell);
+            super(ID, cell);
             this.number = number;
         }
     }
 
     /** Entry1 Object (where Actor1 is respawn) */
     public static class Entry1 extends CellObject {
+        /** Object ID (see Server API documentation for more details) */
+        public static final int ID = 0x07;
+
         /**
          * Creates a new Entry1 object
          * @param cell cell to store the new object created
          */
         public Entry1(Cell cell) {
-            super(0x07, cell);
+            super(ID, cell);
         }
     }
 
     /** Entry2 Object (where Actor2 is respawn) */
     public static class Entry2 extends CellObject {
+        /** Object ID (see Server API documentation for more details) */
+        public static final int ID = 0x08;
+
         /**
          * Creates a new Entry2 object
          * @param cell cell to store the new object created
          */
         public Entry2(Cell cell) {
-            super(0x08, cell);
+            super(ID, cell);
         }
     }
 
     /** LadderTop Object (in order to move down) */
     public static class LadderTop extends CellObject {
+        /** Object ID (see Server API documentation for more details) */
+        public static final int ID = 0x09;
+
         /**
          * Creates a new LadderTop object
          * @param cell cell to store the new object created
          */
         public LadderTop(Cell cell) {
-            super(0x09, cell);
+            super(ID, cell);
         }
     }
 
     /** LadderBottom Object (in order to move up) */
     public static class LadderBottom extends CellObject {
+        /** Object ID (see Server API documentation for more details) */
+        public static final int ID = 0x0A;
+
         /**
          * Creates a newLadderBottom  object
          * @param cell cell to store the new object created
          */
         public LadderBottom(Cell cell) {
-            super(0x0A, cell);
+            super(ID, cell);
         }
     }
 
     /** Stair Object */
     public static class Stair extends CellObjectRaisable {
+        /** Object ID (see Server API documentation for more details) */
+        public static final int ID = 0x0B;
+
         /**
          * Creates a new Stair object
          * @param cell cell to store the new object created
          */
         public Stair(Cell cell) {
-            super(0x0B, cell);
+            super(ID, cell);
         }
     }
 
     /** RopeLine Object */
     public static class RopeLine extends CellObject {
+        /** Object ID (see Server API documentation for more details) */
+        public static final int ID = 0x0C;
+
         /**
          * Creates a new RopeLine object
          * @param cell cell to store the new object created
          */
         public RopeLine(Cell cell) {
-            super(0x0C, cell);
+            super(ID, cell);
         }
     }
 
     /** Waterfall Object */
     public static class Waterfall extends CellObject {
+        /** Object ID (see Server API documentation for more details) */
+        public static final int ID = 0x0D;
+
         /**
          * Creates a new Waterfall object (with default ID)
          * @param cell cell to store the new object created
          */
         public Waterfall(Cell cell) {
-            super(0x0D, cell);
+            super(ID, cell);
         }
 
         /**
@@ -340,345 +477,432 @@ public class Cells {
 
     /** Beam Chunk Object (single part of a bridge) */
     public static class BeamChunk extends CellObject {
+        /** Object ID (see Server API documentation for more details) */
+        public static final int ID = 0x0F;
+
         /**
          * Creates a new Beam Chunk object
          * @param cell cell to store the new object created
          */
         public BeamChunk(Cell cell, int number) {
-            super(0x0F, cell);
+            super(ID, cell);
             this.number = number;
         }
     }
 
     /** Apple Object */
     public static class Apple extends CellObjectFood {
+        /** Object ID (see Server API documentation for more details) */
+        public static final int ID = 0x10;
+
         /**
          * Creates a new Apple object
          * @param cell cell to store the new object created
          */
         public Apple(Cell cell, int number) {
-            super(0x10, cell);
+            super(ID, cell);
             this.number = number;
         }
     }
 
     /** Pear Object */
     public static class Pear extends CellObjectFood {
+        /** Object ID (see Server API documentation for more details) */
+        public static final int ID = 0x11;
+
         /**
          * Creates a new Pear object
          * @param cell cell to store the new object created
          */
         public Pear(Cell cell, int number) {
-            super(0x11, cell);
+            super(ID, cell);
             this.number = number;
         }
     }
 
     /** Meat Object */
     public static class Meat extends CellObjectFood {
+        /** Object ID (see Server API documentation for more details) */
+        public static final int ID = 0x12;
+
         /**
          * Creates a new Meat object
          * @param cell cell to store the new object created
          */
         public Meat(Cell cell, int number) {
-            super(0x12, cell);
+            super(ID, cell);
             this.number = number;
         }
     }
 
     /** Carrot Object */
     public static class Carrot extends CellObjectFood {
+        /** Object ID (see Server API documentation for more details) */
+        public static final int ID = 0x13;
+
         /**
          * Creates a new Carrot object
          * @param cell cell to store the new object created
          */
         public Carrot(Cell cell, int number) {
-            super(0x13, cell);
+            super(ID, cell);
             this.number = number;
         }
     }
 
     /** Mushroom Object */
     public static class Mushroom extends CellObjectFood {
+        /** Object ID (see Server API documentation for more details) */
+        public static final int ID = 0x14;
+
         /**
          * Creates a new Mushroom object
          * @param cell cell to store the new object created
          */
         public Mushroom(Cell cell, int number) {
-            super(0x14, cell);
+            super(ID, cell);
             this.number = number;
         }
     }
 
     /** Nut Object */
     public static class Nut extends CellObjectFood {
+        /** Object ID (see Server API documentation for more details) */
+        public static final int ID = 0x15;
+
         /**
          * Creates a new Nut object
          * @param cell cell to store the new object created
          */
         public Nut(Cell cell, int number) {
-            super(0x15, cell);
+            super(ID, cell);
             this.number = number;
         }
     }
 
     /** FoodActor1 Object (reason is to be replaced with what an Actor1 likes, e.g. Carrot for Rabbits) */
     public static class FoodActor1 extends CellObjectFavouriteFood {
+        /** Object ID (see Server API documentation for more details) */
+        public static final int ID = 0x16;
+
         /**
          * Creates a new FoodActor1 object
          * @param cell cell to store the new object created
          */
         public FoodActor1(Cell cell, int number) {
-            super(0x16, cell);
+            super(ID, cell);
             this.number = number;
         }
     }
 
     /** FoodActor2 Object (reason is to be replaced with what an Actor2 likes, e.g. Carrot for Rabbits) */
     public static class FoodActor2 extends CellObjectFavouriteFood {
+        /** Object ID (see Server API documentation for more details) */
+        public static final int ID = 0x17;
+
         /**
          * Creates a new FoodActor2 object
          * @param cell cell to store the new object created
          */
         public FoodActor2(Cell cell, int number) {
-            super(0x17, cell);
+            super(ID, cell);
             this.number = number;
         }
     }
 
     /** Umbrella Thing Object */
     public static class UmbrellaThing extends CellObjectThing {
+        /** Object ID (see Server API documentation for more details) */
+        public static final int ID = 0x20;
+
         /**
          * Creates a new Umbrella Thing object
          * @param cell cell to store the new object created
          */
         public UmbrellaThing(Cell cell, int number) {
-            super(0x20, cell);
+            super(ID, cell);
             this.number = number;
         }
     }
 
     /** Mine Thing Object */
     public static class MineThing extends CellObjectThing {
+        /** Object ID (see Server API documentation for more details) */
+        public static final int ID = 0x21;
+
         /**
          * Creates a new Mine Thing object
          * @param cell cell to store the new object created
          */
         public MineThing(Cell cell, int number) {
-            super(0x21, cell);
+            super(ID, cell);
             this.number = number;
         }
     }
 
     /** Beam Thing Object */
     public static class BeamThing extends CellObjectThing {
+        /** Object ID (see Server API documentation for more details) */
+        public static final int ID = 0x22;
+
         /**
          * Creates a new Beam Thing object
          * @param cell cell to store the new object created
          */
         public BeamThing(Cell cell, int number) {
-            super(0x22, cell);
+            super(ID, cell);
             this.number = number;
         }
     }
 
     /** Antidote Thing Object */
     public static class AntidoteThing extends CellObjectThing {
+        /** Object ID (see Server API documentation for more details) */
+        public static final int ID = 0x23;
+
         /**
          * Creates a new Antidote Thing object
          * @param cell cell to store the new object created
          */
         public AntidoteThing(Cell cell, int number) {
-            super(0x23, cell);
+            super(ID, cell);
             this.number = number;
         }
     }
 
     /** Flashbang Thing Object */
     public static class FlashbangThing extends CellObjectThing {
+        /** Object ID (see Server API documentation for more details) */
+        public static final int ID = 0x24;
+
         /**
          * Creates a new Flashbang Thing object
          * @param cell cell to store the new object created
          */
         public FlashbangThing(Cell cell, int number) {
-            super(0x24, cell);
+            super(ID, cell);
             this.number = number;
         }
     }
 
     /** Teleport Thing Object */
     public static class TeleportThing extends CellObjectThing {
+        /** Object ID (see Server API documentation for more details) */
+        public static final int ID = 0x25;
+
         /**
          * Creates a new Teleport Thing object
          * @param cell cell to store the new object created
          */
         public TeleportThing(Cell cell, int number) {
-            super(0x25, cell);
+            super(ID, cell);
             this.number = number;
         }
     }
 
     /** Mines Detector Thing Object */
     public static class DetectorThing extends CellObjectThing {
+        /** Object ID (see Server API documentation for more details) */
+        public static final int ID = 0x26;
+
         /**
          * Creates a new Mines Detector Thing object
          * @param cell cell to store the new object created
          */
         public DetectorThing(Cell cell, int number) {
-            super(0x26, cell);
+            super(ID, cell);
             this.number = number;
         }
     }
 
     /** Box Thing Object */
     public static class BoxThing extends CellObjectThing {
+        /** Object ID (see Server API documentation for more details) */
+        public static final int ID = 0x27;
+
         /**
          * Creates a new Box Thing object
          * @param cell cell to store the new object created
          */
         public BoxThing(Cell cell, int number) {
-            super(0x27, cell);
+            super(ID, cell);
             this.number = number;
         }
     }
 
     /** Umbrella Object */
     public static class Umbrella extends CellObject {
+        /** Object ID (see Server API documentation for more details) */
+        public static final int ID = 0x28;
+
         /**
          * Creates a new Umbrella object
          * @param cell cell to store the new object created
          */
         public Umbrella(Cell cell, int number) {
-            super(0x28, cell);
+            super(ID, cell);
             this.number = number;
         }
     }
 
     /** Mine Object */
     public static class Mine extends CellObject {
+        /** Object ID (see Server API documentation for more details) */
+        public static final int ID = 0x29;
+
         /**
          * Creates a new Mine object
          * @param cell cell to store the new object created
          */
         public Mine(Cell cell, int number) {
-            super(0x29, cell);
+            super(ID, cell);
             this.number = number;
         }
     }
 
     /** Beam Object */
     public static class Beam extends CellObject {
+        /** Object ID (see Server API documentation for more details) */
+        public static final int ID = 0x2A;
+
         /**
          * Creates a new Beam object
          * @param cell cell to store the new object created
          */
         public Beam(Cell cell, int number) {
-            super(0x2A, cell);
+            super(ID, cell);
             this.number = number;
         }
     }
 
     /** Antidote Object */
     public static class Antidote extends CellObject {
+        /** Object ID (see Server API documentation for more details) */
+        public static final int ID = 0x2B;
+
         /**
          * Creates a new Antidote object
          * @param cell cell to store the new object created
          */
         public Antidote(Cell cell, int number) {
-            super(0x2B, cell);
+            super(ID, cell);
             this.number = number;
         }
     }
 
     /** Flashbang Object */
     public static class Flashbang extends CellObject {
+        /** Object ID (see Server API documentation for more details) */
+        public static final int ID = 0x2C;
+
         /**
          * Creates a new Flashbang object
          * @param cell cell to store the new object created
          */
         public Flashbang(Cell cell, int number) {
-            super(0x2C, cell);
+            super(ID, cell);
             this.number = number;
         }
     }
 
     /** Teleport Object */
     public static class Teleport extends CellObject {
+        /** Object ID (see Server API documentation for more details) */
+        public static final int ID = 0x2D;
+
         /**
          * Creates a new Teleport object
          * @param cell cell to store the new object created
          */
         public Teleport(Cell cell, int number) {
-            super(0x2D, cell);
+            super(ID, cell);
             this.number = number;
         }
     }
 
     /** Mines Detector Object */
     public static class Detector extends CellObject {
+        /** Object ID (see Server API documentation for more details) */
+        public static final int ID = 0x2E;
+
         /**
          * Creates a new Mines Detector object
          * @param cell cell to store the new object created
          */
         public Detector(Cell cell, int number) {
-            super(0x2E, cell);
+            super(ID, cell);
             this.number = number;
         }
     }
 
     /** Box Object */
     public static class Box extends CellObjectRaisable {
+        /** Object ID (see Server API documentation for more details) */
+        public static final int ID = 0x2F;
+
         /**
          * Creates a new Box object
          * @param cell cell to store the new object created
          */
         public Box(Cell cell, int number) {
-            super(0x2F, cell);
+            super(ID, cell);
             this.number = number;
         }
     }
 
     /** Static Decoration Object (for appearance purposes only) */
     public static class DecorationStatic extends CellObject {
+        /** Object ID (see Server API documentation for more details) */
+        public static final int ID = 0x30;
+
         /**
          * Creates a new Static Decoration object
          * @param cell cell to store the new object created
          */
         public DecorationStatic(Cell cell) {
-            super(0x30, cell);
+            super(ID, cell);
         }
     }
 
     /** Dynamic Decoration Object (for appearance purposes only) */
     public static class DecorationDynamic extends CellObject {
+        /** Object ID (see Server API documentation for more details) */
+        public static final int ID = 0x31;
+
         /**
          * Creates a new Dynamic Decoration object
          * @param cell cell to store the new object created
          */
         public DecorationDynamic(Cell cell) {
-            super(0x31, cell);
+            super(ID, cell);
         }
     }
 
     /** Warning Decoration Object (for appearance purposes only) */
     public static class DecorationWarning extends CellObject {
+        /** Object ID (see Server API documentation for more details) */
+        public static final int ID = 0x32;
+
         /**
          * Creates a new Warning Decoration object
          * @param cell cell to store the new object created
          */
         public DecorationWarning(Cell cell) {
-            super(0x32, cell);
+            super(ID, cell);
         }
     }
 
     /** Danger Decoration Object (for appearance purposes only) */
     public static class DecorationDanger extends CellObject {
+        /** Object ID (see Server API documentation for more details) */
+        public static final int ID = 0x33;
+
         /**
          * Creates a new Danger Decoration object
          * @param cell cell to store the new object created
          */
         public DecorationDanger(Cell cell) {
-            super(0x33, cell);
+            super(ID, cell);
         }
     }
 }
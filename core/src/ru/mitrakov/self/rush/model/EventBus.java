@@ -1,17 +1,51 @@
 package ru.mitrakov.self.rush.model;
 
 import java.util.*;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 import ru.mitrakov.self.rush.model.Cells.CellObject;
 
+import static ru.mitrakov.self.rush.utils.SimpleLogger.*;
+
 /**
  * Event Bus
  * @author Mitrakov
  */
 public class EventBus {
     /** Base event class */
-    public static abstract class Event {}
+    public static abstract class Event implements Cloneable {
+        /** State of a queue-owned instance (see {@link EventBus#STATE}); always FREE for the instances of the Model */
+        volatile int state = FREE;
+
+        /**
+         * @return shallow copy of this event (used only to preallocate queue-owned instances of the event type, see
+         * {@link Slots})
+         */
+        Event copy() {
+            try {
+                Event event = (Event) clone();
+                event.state = FREE;
+                return event;
+            } catch (CloneNotSupportedException e) {
+                throw new AssertionError(e); // impossible: Event is Cloneable
+            }
+        }
+
+        /**
+         * Copies all the fields from the given event of the same type (used to defer delivery of an event without "new"
+         * operations, because the Model reuses event instances to decrease GC pressure)
+         * @param src event of the same type
+         */
+        void copyFrom(Event src) {
+        }
+    }
+
+    /**
+     * Base class for idempotent events that describe the latest state of something (e.g. current score). Only the latest
+     * state matters, so deferred delivery may coalesce several such events into one (see {@link #drain()})
+     */
+    public static abstract class StateEvent extends Event {}
 
     /** Event: MOVE acknowledge from the Server */
     public static final class MoveResponseEvent extends Event {}
@@ -58,6 +92,12 @@ public class EventBus {
         VersionNotAllowedEvent(String minVersion) {
             this.minVersion = minVersion;
         }
+
+        @Override
+        void copyFrom(Event src) {
+            VersionNotAllowedEvent event = (VersionNotAllowedEvent) src;
+            minVersion = event.minVersion;
+        }
     }
     /** Event: new version is available to download */
     public static final class NewVersionAvailableEvent extends Event {
@@ -70,9 +110,15 @@ public class EventBus {
         NewVersionAvailableEvent(String newVersion) {
             this.newVersion = newVersion;
         }
+
+        @Override
+        void copyFrom(Event src) {
+            NewVersionAvailableEvent event = (NewVersionAvailableEvent) src;
+            newVersion = event.newVersion;
+        }
     }
     /** Event: name is changed (by loading data from settings file or by the Server); also the name may be the same */
-    public static final class NameChangedEvent extends Event {
+    public static final class NameChangedEvent extends StateEvent {
         /** Username */
         public String name;
         /**
@@ -82,9 +128,15 @@ public class EventBus {
         NameChangedEvent(String name) {
             this.name = name;
         }
+
+        @Override
+        void copyFrom(Event src) {
+            NameChangedEvent event = (NameChangedEvent) src;
+            name = event.name;
+        }
     }
     /** Event: gems balance has been changed */
-    public static final class GemsChangedEvent extends Event {
+    public static final class GemsChangedEvent extends StateEvent {
         /** Gems count */
         public int gems;
         /**
@@ -94,9 +146,15 @@ public class EventBus {
         GemsChangedEvent(int gems) {
             this.gems = gems;
         }
+
+        @Override
+        void copyFrom(Event src) {
+            GemsChangedEvent event = (GemsChangedEvent) src;
+            gems = event.gems;
+        }
     }
     /** Event: user's abilities have been changed */
-    public static final class AbilitiesExpireUpdatedEvent extends Event {
+    public static final class AbilitiesExpireUpdatedEvent extends StateEvent {
         /** List of abilities */
         public Iterable<Model.Ability> items;
         /**
@@ -106,9 +164,15 @@ public class EventBus {
         AbilitiesExpireUpdatedEvent(Iterable<Model.Ability> items) {
             this.items = items;
         }
+
+        @Override
+        void copyFrom(Event src) {
+            AbilitiesExpireUpdatedEvent event = (AbilitiesExpireUpdatedEvent) src;
+            items = event.items;
+        }
     }
     /** Event: friends list has been updated */
-    public static final class FriendListUpdatedEvent extends Event {
+    public static final class FriendListUpdatedEvent extends StateEvent {
         /** List of friends */
         public Collection<FriendItem> items;
         /**
@@ -118,6 +182,12 @@ public class EventBus {
         FriendListUpdatedEvent(Collection<FriendItem> items) {
             this.items = items;
         }
+
+        @Override
+        void copyFrom(Event src) {
+            FriendListUpdatedEvent event = (FriendListUpdatedEvent) src;
+            items = event.items;
+        }
     }
     /** Event: new friend has been added */
     public static final class FriendAddedEvent extends Event {
@@ -130,6 +200,12 @@ public class EventBus {
         FriendAddedEvent(FriendItem name) {
             this.name = name;
         }
+
+        @Override
+        void copyFrom(Event src) {
+            FriendAddedEvent event = (FriendAddedEvent) src;
+            name = event.name;
+        }
     }
     /** Event: new friend has been removed */
     public static final class FriendRemovedEvent extends Event {
@@ -142,6 +218,12 @@ public class EventBus {
         FriendRemovedEvent(String name) {
             this.name = name;
         }
+
+        @Override
+        void copyFrom(Event src) {
+            FriendRemovedEvent event = (FriendRemovedEvent) src;
+            name = event.name;
+        }
     }
     /** Event: someone invited us to a battle */
     public static final class InviteEvent extends Event {
@@ -158,6 +240,13 @@ public class EventBus {
             this.enemy = enemy;
             this.enemySid = enemySid;
         }
+
+        @Override
+        void copyFrom(Event src) {
+            InviteEvent event = (InviteEvent) src;
+            enemy = event.enemy;
+            enemySid = event.enemySid;
+        }
     }
     /** Event: the enemy rejected our invite for a battle */
     public static final class StopCallRejectedEvent extends Event {
@@ -170,6 +259,12 @@ public class EventBus {
         StopCallRejectedEvent(String cowardName) {
             this.cowardName = cowardName;
         }
+
+        @Override
+        void copyFrom(Event src) {
+            StopCallRejectedEvent event = (StopCallRejectedEvent) src;
+            cowardName = event.cowardName;
+        }
     }
     /** Event: we miss someone's call for a battle, and Server wants us to stop ringing */
     public static final class StopCallMissedEvent extends Event {
@@ -182,6 +277,12 @@ public class EventBus {
         StopCallMissedEvent(String aggressorName) {
             this.aggressorName = aggressorName;
         }
+
+        @Override
+        void copyFrom(Event src) {
+            StopCallMissedEvent event = (StopCallMissedEvent) src;
+            aggressorName = event.aggressorName;
+        }
     }
     /** Event: we invite someone for a battle, but he/she missed (or ignored) our invitation */
     public static final class StopCallExpiredEvent extends Event {
@@ -194,6 +295,12 @@ public class EventBus {
         StopCallExpiredEvent(String defenderName) {
             this.defenderName = defenderName;
         }
+
+        @Override
+        void copyFrom(Event src) {
+            StopCallExpiredEvent event = (StopCallExpiredEvent) src;
+            defenderName = event.defenderName;
+        }
     }
     /** Event: ranking updated */
     @SuppressWarnings("WeakerAccess")
@@ -211,6 +318,13 @@ public class EventBus {
             this.type = type;
             this.items = items;
         }
+
+        @Override
+        void copyFrom(Event src) {
+            RatingUpdatedEvent event = (RatingUpdatedEvent) src;
+            type = event.type;
+            items = event.items;
+        }
     }
     /** Event: round has been finished */
     public static final class RoundFinishedEvent extends Event {
@@ -239,6 +353,16 @@ public class EventBus {
             this.totalScore1 = totalScore1;
             this.totalScore2 = totalScore2;
         }
+
+        @Override
+        void copyFrom(Event src) {
+            RoundFinishedEvent event = (RoundFinishedEvent) src;
+            winner = event.winner;
+            detractor1 = event.detractor1;
+            detractor2 = event.detractor2;
+            totalScore1 = event.totalScore1;
+            totalScore2 = event.totalScore2;
+        }
     }
     /** Event: battle has been finished */
     public static final class GameFinishedEvent extends Event {
@@ -271,6 +395,17 @@ public class EventBus {
             this.totalScore2 = totalScore2;
             this.reward = reward;
         }
+
+        @Override
+        void copyFrom(Event src) {
+            GameFinishedEvent event = (GameFinishedEvent) src;
+            winner = event.winner;
+            detractor1 = event.detractor1;
+            detractor2 = event.detractor2;
+            totalScore1 = event.totalScore1;
+            totalScore2 = event.totalScore2;
+            reward = event.reward;
+        }
     }
     /** Event: promo code activated */
     public static final class PromocodeDoneEvent extends Event {
@@ -291,9 +426,17 @@ public class EventBus {
             this.inviter = inviter;
             this.gems = gems;
         }
+
+        @Override
+        void copyFrom(Event src) {
+            PromocodeDoneEvent event = (PromocodeDoneEvent) src;
+            name = event.name;
+            inviter = event.inviter;
+            gems = event.gems;
+        }
     }
     /** Event: Style Pack has been changed */
-    public static final class StyleChangedEvent extends Event {
+    public static final class StyleChangedEvent extends StateEvent {
         /** Style Pack number */
         public int stylePack;
         /**
@@ -303,9 +446,15 @@ public class EventBus {
         StyleChangedEvent(int stylePack) {
             this.stylePack = stylePack;
         }
+
+        @Override
+        void copyFrom(Event src) {
+            StyleChangedEvent event = (StyleChangedEvent) src;
+            stylePack = event.stylePack;
+        }
     }
     /** Event: Character has been changed */
-    public static final class CharacterChangedEvent extends Event {
+    public static final class CharacterChangedEvent extends StateEvent {
         /** New character (rabbit, hedgehog, etc.) */
         public Model.Character character;
         /**
@@ -315,9 +464,15 @@ public class EventBus {
         CharacterChangedEvent(Model.Character character) {
             this.character = character;
         }
+
+        @Override
+        void copyFrom(Event src) {
+            CharacterChangedEvent event = (CharacterChangedEvent) src;
+            character = event.character;
+        }
     }
     /** Event: Abilities list has been changed */
-    public static final class AbilitiesChangedEvent extends Event {
+    public static final class AbilitiesChangedEvent extends StateEvent {
         /** New abilities list */
         public Iterable<Model.Ability> items;
         /**
@@ -327,6 +482,12 @@ public class EventBus {
         AbilitiesChangedEvent(Iterable<Model.Ability> items) {
             this.items = items;
         }
+
+        @Override
+        void copyFrom(Event src) {
+            AbilitiesChangedEvent event = (AbilitiesChangedEvent) src;
+            items = event.items;
+        }
     }
     /** Event: enemy has been changed */
     public static final class DialUpEvent extends Event {
@@ -339,6 +500,12 @@ public class EventBus {
         DialUpEvent(String enemy) {
             this.enemy = enemy;
         }
+
+        @Override
+        void copyFrom(Event src) {
+            DialUpEvent event = (DialUpEvent) src;
+            enemy = event.enemy;
+        }
     }
     /** Event: Round started */
     public static final class RoundStartedEvent extends Event {
@@ -355,6 +522,13 @@ public class EventBus {
             this.number = number;
             this.levelName = levelName;
         }
+
+        @Override
+        void copyFrom(Event src) {
+            RoundStartedEvent event = (RoundStartedEvent) src;
+            number = event.number;
+            levelName = event.levelName;
+        }
     }
     /** Event: new battlefield created */
     public static final class NewFieldEvent extends Event {
@@ -371,9 +545,34 @@ public class EventBus {
             this.actor = actor;
             this.field = field;
         }
+
+        @Override
+        void copyFrom(Event src) {
+            NewFieldEvent event = (NewFieldEvent) src;
+            actor = event.actor;
+            field = event.field;
+        }
+    }
+    /** Event: battlefield changed (a whole batch of moves, appends and removals has been applied) */
+    public static final class FieldChangedEvent extends StateEvent {
+        /** Battle field */
+        public Field field;
+        /**
+         * Creates a new Field Changed Event
+         * @param field battle field
+         */
+        FieldChangedEvent(Field field) {
+            this.field = field;
+        }
+
+        @Override
+        void copyFrom(Event src) {
+            FieldChangedEvent event = (FieldChangedEvent) src;
+            field = event.field;
+        }
     }
     /** Event: Score changed */
-    public static final class ScoreChangedEvent extends Event {
+    public static final class ScoreChangedEvent extends StateEvent {
         /** Score of detractor1 */
         public int score1;
         /** Score of detractor2 */
@@ -387,10 +586,17 @@ public class EventBus {
             this.score1 = score1;
             this.score2 = score2;
         }
+
+        @Override
+        void copyFrom(Event src) {
+            ScoreChangedEvent event = (ScoreChangedEvent) src;
+            score1 = event.score1;
+            score2 = event.score2;
+        }
     }
     /** Event: lives count changed */
     @SuppressWarnings("WeakerAccess")
-    public static final class LivesChangedEvent extends Event {
+    public static final class LivesChangedEvent extends StateEvent {
         /** My lives count */
         public int myLives;
         /** Enemy lives count */
@@ -404,6 +610,13 @@ public class EventBus {
             this.myLives = myLives;
             this.enemyLives = enemyLives;
         }
+
+        @Override
+        void copyFrom(Event src) {
+            LivesChangedEvent event = (LivesChangedEvent) src;
+            myLives = event.myLives;
+            enemyLives = event.enemyLives;
+        }
     }
     /** Event: player has been wounded */
     public static final class PlayerWoundedEvent extends Event {
@@ -428,6 +641,15 @@ public class EventBus {
             this.myLives = myLives;
             this.enemyLives = enemyLives;
         }
+
+        @Override
+        void copyFrom(Event src) {
+            PlayerWoundedEvent event = (PlayerWoundedEvent) src;
+            xy = event.xy;
+            cause = event.cause;
+            myLives = event.myLives;
+            enemyLives = event.enemyLives;
+        }
     }
     /** Event: effect has been applied to an object */
     public static final class EffectAddedEvent extends Event {
@@ -440,6 +662,12 @@ public class EventBus {
         EffectAddedEvent(Model.Effect effect) {
             this.effect = effect;
         }
+
+        @Override
+        void copyFrom(Event src) {
+            EffectAddedEvent event = (EffectAddedEvent) src;
+            effect = event.effect;
+        }
     }
     /** Event: object has been removed from the battlefield */
     public static final class ObjectRemovedEvent extends Event {
@@ -456,6 +684,13 @@ public class EventBus {
             this.oldXy = oldXy;
             this.obj = obj;
         }
+
+        @Override
+        void copyFrom(Event src) {
+            ObjectRemovedEvent event = (ObjectRemovedEvent) src;
+            oldXy = event.oldXy;
+            obj = event.obj;
+        }
     }
     /** Event: actor's position has been reset */
     public static final class ActorResetEvent extends Event {
@@ -468,6 +703,12 @@ public class EventBus {
         ActorResetEvent(CellObject obj) {
             this.obj = obj;
         }
+
+        @Override
+        void copyFrom(Event src) {
+            ActorResetEvent event = (ActorResetEvent) src;
+            obj = event.obj;
+        }
     }
     /** Event: thing has been changed (dropped, used, or taken a new one) */
     public static final class ThingChangedEvent extends Event {
@@ -488,6 +729,14 @@ public class EventBus {
             this.newThing = newThing;
             this.mine = mine;
         }
+
+        @Override
+        void copyFrom(Event src) {
+            ThingChangedEvent event = (ThingChangedEvent) src;
+            oldThing = event.oldThing;
+            newThing = event.newThing;
+            mine = event.mine;
+        }
     }
     /** Event: authorization status changed (signed in or signed out) */
     public static final class AuthorizedChangedEvent extends Event {
@@ -500,6 +749,12 @@ public class EventBus {
         AuthorizedChangedEvent(boolean authorized) {
             this.authorized = authorized;
         }
+
+        @Override
+        void copyFrom(Event src) {
+            AuthorizedChangedEvent event = (AuthorizedChangedEvent) src;
+            authorized = event.authorized;
+        }
     }
     /** Event: connection status changed (connected/disconnected) */
     public static final class ConnectedChangeEvent extends Event {
@@ -512,9 +767,15 @@ public class EventBus {
         ConnectedChangeEvent(boolean connected) {
             this.connected = connected;
         }
+
+        @Override
+        void copyFrom(Event src) {
+            ConnectedChangeEvent event = (ConnectedChangeEvent) src;
+            connected = event.connected;
+        }
     }
     /** Event: input promo code status changed: valid/invalid */
-    public static final class PromocodeValidChangedEvent extends Event {
+    public static final class PromocodeValidChangedEvent extends StateEvent {
         /** Promo code status: valid/invalid */
         public boolean valid;
         /**
@@ -524,9 +785,15 @@ public class EventBus {
         PromocodeValidChangedEvent(boolean valid) {
             this.valid = valid;
         }
+
+        @Override
+        void copyFrom(Event src) {
+            PromocodeValidChangedEvent event = (PromocodeValidChangedEvent) src;
+            valid = event.valid;
+        }
     }
     /** Event: SKU prices updated */
-    public static final class SkuGemsUpdatedEvent extends Event {
+    public static final class SkuGemsUpdatedEvent extends StateEvent {
         /** New prices (map: [SKU_name -> gems]) */
         public Map<String, Integer> skuGems;
         /**
@@ -536,6 +803,12 @@ public class EventBus {
         SkuGemsUpdatedEvent(Map<String, Integer> skuGems) {
             this.skuGems = skuGems;
         }
+
+        @Override
+        void copyFrom(Event src) {
+            SkuGemsUpdatedEvent event = (SkuGemsUpdatedEvent) src;
+            skuGems = event.skuGems;
+        }
     }
     /** Event: payment successful */
     public static final class PaymentDoneEvent extends Event {
@@ -552,6 +825,13 @@ public class EventBus {
             this.gems = gems;
             this.coupon = coupon;
         }
+
+        @Override
+        void copyFrom(Event src) {
+            PaymentDoneEvent event = (PaymentDoneEvent) src;
+            gems = event.gems;
+            coupon = event.coupon;
+        }
     }
 
 
@@ -568,11 +848,69 @@ public class EventBus {
         void OnEvent(Event event);
     }
 
-    /** Subscribers */
+    /** Capacity of the deferred queue (must be a power of 2) */
+    private static final int QUEUE_CAPACITY = 1024;
+    /** Count of queue-owned instances per event type (StateEvents need only 1, because they are coalesced) */
+    private static final int POOL_SIZ = 32;
+
+    /** State of a queue-owned instance: free (Event), or not in the queue (StateEvent) */
+    private static final int FREE = 0;
+    /** State of a queue-owned instance: in the queue */
+    private static final int QUEUED = 1;
+    /** State of a queue-owned StateEvent: a producer is copying the fields into the instance */
+    private static final int WRITING = 2;
+    /** State of a queue-owned StateEvent: the consumer is copying the fields from the instance */
+    private static final int READING = 3;
+    /** Atomic access to {@link Event#state} (no extra objects per event) */
+    private static final AtomicIntegerFieldUpdater<Event> STATE = AtomicIntegerFieldUpdater.newUpdater(Event.class,
+            "state");
+
+    /**
+     * Queue-owned instances of a single event type: raised events are copied to them (see {@link Event#copyFrom}),
+     * because the Model keeps changing its own instances. They are preallocated on the first raise of the type.
+     * <ul>
+     *     <li>Event: a pool of instances; an instance is taken by a producer and freed after the delivery (if all
+     *     the instances are in the queue, a temporary copy is allocated);
+     *     <li>StateEvent: a single instance, updated by producers while it waits in the queue (coalescing), and a
+     *     view owned by the consumer, so that the listeners never see the fields from different updates.
+     * </ul>
+     */
+    private static final class Slots {
+        /** Queue-owned instances */
+        final Event[] items;
+        /** Copy of the StateEvent for the listeners (consumer only; NULL for other events) */
+        final Event view;
+
+        /**
+         * Creates queue-owned instances for the type of the given event
+         * @param event event (NON-NULL)
+         */
+        Slots(Event event) {
+            boolean state = event instanceof StateEvent;
+            items = new Event[state ? 1 : POOL_SIZ];
+            for (int i = 0; i < items.length; i++) {
+                items[i] = event.copy();
+            }
+            view = state ? event.copy() : null;
+        }
+    }
+
+    /** Subscribers to all events */
     private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+    /** Subscribers to specific event types (map: [event class -> subscribers]) */
+    private final ConcurrentMap<Class<?>, CopyOnWriteArrayList<Listener>> typedListeners =
+            new ConcurrentHashMap<Class<?>, CopyOnWriteArrayList<Listener>>();
+    /** Deferred subscribers to specific event types (map: [event class -> subscribers]), see {@link #drain()} */
+    private final ConcurrentMap<Class<?>, CopyOnWriteArrayList<Listener>> deferredListeners =
+            new ConcurrentHashMap<Class<?>, CopyOnWriteArrayList<Listener>>();
+    /** Queue of events for deferred subscribers (contains only queue-owned instances, see {@link Slots}) */
+    private final EventQueue queue = new EventQueue(QUEUE_CAPACITY);
+    /** Queue-owned instances (map: [event class -> instances]) */
+    private final ConcurrentMap<Class<?>, Slots> slots = new ConcurrentHashMap<Class<?>, Slots>();
 
     /**
-     * Adds a subscriber to the subscribers list
+     * Adds a subscriber to the subscribers list (the subscriber will receive ALL the events).
+     * <br>Please prefer {@link #addListener(Listener, Class[])} to receive only the events that the subscriber cares of
      * @param listener subscriber
      */
     public void addListener(Listener listener) {
@@ -580,10 +918,40 @@ public class EventBus {
         listeners.add(listener);
     }
 
+    /**
+     * Subscribes the listener to the given event types (the listener will receive only the events of these classes, so
+     * that battle events don't go through "instanceof" chains of the listeners that don't care of them).
+     * <br>The listener is called synchronously, on the thread that raised the event (usually the Network thread).
+     * <br>Subscribing to the same type twice has no effect
+     * @param listener subscriber (NON-NULL)
+     * @param types event classes (e.g. EventBus.ScoreChangedEvent.class)
+     * @throws IllegalArgumentException if a type is not a concrete event class
+     */
+    public void addListener(Listener listener, Class<?>... types) {
+        subscribe(typedListeners, listener, types);
+    }
+
+    /**
+     * Subscribes the listener to the given event types with deferred delivery: events are put to a lock-free queue,
+     * and the listener is called from {@link #drain()} (usually once per frame on the render thread), so it may safely
+     * access UI components, and the thread that raised the event never waits for UI work.
+     * <br>The listener receives a queue-owned copy of the event, which is reused after the call (so please don't keep
+     * references to it).
+     * <br>Subscribing to the same type twice has no effect
+     * @param listener subscriber (NON-NULL)
+     * @param types event classes (e.g. EventBus.ScoreChangedEvent.class)
+     * @throws IllegalArgumentException if a type is not a concrete event class
+     */
+    public void addDeferredListener(Listener listener, Class<?>... types) {
+        subscribe(deferredListeners, listener, types);
+    }
+
     /**
      * Triggers the event to the Event Bus
      * @param event event to be transmitted to the listeners
      * @see #addListener(Listener)
+     * @see #addListener(Listener, Class[])
+     * @see #addDeferredListener(Listener, Class[])
      */
     public void raise(Event event) {
         assert event != null;
@@ -591,5 +959,126 @@ public class EventBus {
             Listener listener = listeners.get(i); assert listener != null;
             listener.OnEvent(event);
         }
+        deliver(typedListeners.get(event.getClass()), event); // Class has identity hashCode, so no allocations
+        if (deferredListeners.containsKey(event.getClass()))
+            enqueue(event);
+    }
+
+    /**
+     * Delivers all the events enqueued for deferred subscribers (must be called from a single thread, usually once per
+     * frame on the render thread). Several StateEvents of the same type raised within a frame are delivered once (with
+     * the latest state)
+     * @return count of events delivered
+     * @see #addDeferredListener(Listener, Class[])
+     */
+    public int drain() {
+        int n = 0;
+        Event event;
+        while (n < QUEUE_CAPACITY && (event = queue.poll()) != null) { // limit: listeners may raise new events
+            List<Listener> lst = deferredListeners.get(event.getClass());
+            if (event instanceof StateEvent) {
+                while (!STATE.compareAndSet(event, QUEUED, READING)) {
+                    Thread.yield(); // a producer is copying a few fields right now
+                }
+                Event view = slots.get(event.getClass()).view;
+                view.copyFrom(event);
+                STATE.set(event, FREE); // new changes will be enqueued again
+                deliver(lst, view);
+            } else try {
+                deliver(lst, event);
+            } finally {
+                STATE.set(event, FREE); // return the instance to the pool
+            }
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * Copies the event to a queue-owned instance and puts it to the deferred queue (may be called from any thread).
+     * A StateEvent that is already in the queue is just updated
+     * @param event event (NON-NULL)
+     */
+    private void enqueue(Event event) {
+        Slots s = slots.get(event.getClass());
+        if (s == null) { // first raise of the type
+            Slots newSlots = new Slots(event);
+            s = slots.putIfAbsent(event.getClass(), newSlots);
+            if (s == null)
+                s = newSlots;
+        }
+
+        if (event instanceof StateEvent) {
+            Event item = s.items[0];
+            while (true) {
+                int state = item.state;
+                if ((state == FREE || state == QUEUED) && STATE.compareAndSet(item, state, WRITING)) {
+                    item.copyFrom(event);
+                    STATE.set(item, QUEUED);
+                    if (state == FREE && !queue.offer(item)) {
+                        while (!STATE.compareAndSet(item, QUEUED, FREE)) {
+                            Thread.yield(); // another producer is copying a few fields right now
+                        }
+                        log(ERROR, "EventBus queue overflow; event lost: ", event.getClass().getSimpleName());
+                    }
+                    return;
+                }
+                Thread.yield(); // another thread is copying a few fields right now
+            }
+        }
+
+        Event item = null;
+        for (int i = 0; i < s.items.length && item == null; i++) { // don't use iterators here (GC!)
+            if (STATE.compareAndSet(s.items[i], FREE, QUEUED))
+                item = s.items[i];
+        }
+        if (item != null)
+            item.copyFrom(event);
+        else { // the pool is exhausted (e.g. rendering is paused), so allocate a temporary copy
+            item = event.copy();
+            STATE.set(item, QUEUED);
+        }
+        if (!queue.offer(item)) {
+            STATE.set(item, FREE);
+            log(ERROR, "EventBus queue overflow; event lost: ", event.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * Adds the listener to the given subscribers map
+     * @param map subscribers map (map: [event class -> subscribers])
+     * @param listener subscriber (NON-NULL)
+     * @param types event classes
+     * @throws IllegalArgumentException if a type is not a concrete event class
+     */
+    private void subscribe(ConcurrentMap<Class<?>, CopyOnWriteArrayList<Listener>> map, Listener listener,
+                           Class<?>... types) {
+        assert map != null && listener != null && types != null;
+        for (Class<?> type : types) {
+            if (type == Event.class || type == StateEvent.class || !Event.class.isAssignableFrom(type))
+                throw new IllegalArgumentException("Incorrect event type: " + type);
+            CopyOnWriteArrayList<Listener> lst = map.get(type);
+            if (lst == null) {
+                CopyOnWriteArrayList<Listener> newList = new CopyOnWriteArrayList<Listener>();
+                lst = map.putIfAbsent(type, newList);
+                if (lst == null)
+                    lst = newList;
+            }
+            lst.addIfAbsent(listener);
+        }
+    }
+
+    /**
+     * Passes the event to the given subscribers
+     * @param lst subscribers (may be NULL)
+     * @param event event
+     */
+    private void deliver(List<Listener> lst, Event event) {
+        if (lst != null) {
+            for (int i = 0; i < lst.size(); i++) { // do NOT use iterators! They produces excessive work for GC
+                Listener listener = lst.get(i); assert listener != null;
+                listener.OnEvent(event);
+            }
+        }
     }
 }
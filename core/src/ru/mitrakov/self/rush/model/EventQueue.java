@@ -0,0 +1,77 @@
+package ru.mitrakov.self.rush.model;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * Bounded lock-free queue of events: many threads may offer events (Network thread, SwUDP timers, Emulator timers),
+ * and a single thread (usually the render thread) polls them.
+ * <br>Slots are preallocated, so that offering and polling do not produce garbage for GC.
+ * <br>The queue stores references only, so the events must be owned by the queue until they are polled (please see
+ * {@link EventBus#raise(EventBus.Event)})
+ * @author mitrakov
+ */
+final class EventQueue {
+    /** Events */
+    private final EventBus.Event[] events;
+    /** Sequence numbers of the slots: position when the slot is free, position + 1 when the slot is filled */
+    private final AtomicLongArray sequences;
+    /** Mask to compute a slot index */
+    private final int mask;
+    /** Position of the next slot to fill (producers) */
+    private final AtomicLong tail = new AtomicLong();
+    /** Position of the next slot to poll (the consumer only) */
+    private long head = 0;
+
+    /**
+     * Creates a new instance of EventQueue
+     * @param capacity capacity (must be a power of 2)
+     */
+    EventQueue(int capacity) {
+        if (capacity <= 0 || (capacity & (capacity - 1)) != 0)
+            throw new IllegalArgumentException("Capacity must be a power of 2: " + capacity);
+        events = new EventBus.Event[capacity];
+        sequences = new AtomicLongArray(capacity);
+        mask = capacity - 1;
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Enqueues the event (may be called from any thread, never blocks)
+     * @param event event (NON-NULL)
+     * @return false, if the queue is full (the event is not enqueued), and true otherwise
+     */
+    boolean offer(EventBus.Event event) {
+        assert event != null;
+        while (true) {
+            long pos = tail.get();
+            int idx = (int) (pos & mask);
+            long diff = sequences.get(idx) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    events[idx] = event;
+                    sequences.set(idx, pos + 1); // volatile write publishes the event
+                    return true;
+                }
+            } else if (diff < 0) {
+                return false;
+            } // else another producer has taken this slot, try again
+        }
+    }
+
+    /**
+     * Dequeues the next event (must be called from a single consumer thread)
+     * @return event, or NULL if the queue is empty
+     */
+    EventBus.Event poll() {
+        int idx = (int) (head & mask);
+        if (sequences.get(idx) != head + 1)
+            return null;
+        EventBus.Event event = events[idx];
+        events[idx] = null;
+        sequences.set(idx, head + events.length); // free the slot for producers
+        head++;
+        return event;
+    }
+}
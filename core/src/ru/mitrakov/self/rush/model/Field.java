@@ -6,7 +6,12 @@ import ru.mitrakov.self.rush.model.Cells.CellObject;
 import ru.mitrakov.self.rush.utils.collections.IIntArray;
 
 /**
- * Class that represents a battle field (array of 255 cells)
+ * Class that represents a battle field (array of 255 cells).
+ * <br>On the client side the field is changed by a single writer (Network thread, under the field lock, see
+ * {@link Model#applyDelta(FieldDelta)}), and the renderer reads immutable snapshots (see {@link #acquire()}), so the
+ * renderer never sees half-applied moves and needs no locks.
+ * <br>Besides the cells, the field keeps its compact primitive index ({@link #store}), so that most of the queries
+ * don't need to traverse the lists of objects
  * @author mitrakov
  */
 public class Field {
@@ -19,6 +24,57 @@ public class Field {
     /** Trash cell (all the removed objects go there) */
     public static final Cell TRASH_CELL = Cell.newCell(0, TRASH_XY, null, 0);
 
+    /**
+     * Immutable snapshot of the field state for the renderer: cells with their bottoms and lists of objects (objects
+     * themselves are shared with the field).
+     * <br>Snapshots are reused (to decrease GC pressure), so a snapshot is valid only between {@link #acquire()} and
+     * {@link #release()}
+     */
+    public static final class Snapshot {
+        /** Array of cells (the same indices as in {@link Field#cells}) */
+        public final Cell cells[] = new Cell[WIDTH * HEIGHT + 1];
+        /** Bitmasks of object kinds, per cell (see {@link FieldStore#getMask(int)}) */
+        public final long masks[] = new long[TRASH_XY];
+
+        /**
+         * @param xy coordinate
+         * @param id object ID
+         * @return true, if there is an object with the given ID in the cell (same as {@link FieldStore#has(int, int)})
+         */
+        public boolean has(int xy, int id) {
+            return 0 <= xy && xy < masks.length && (masks[xy] & FieldStore.bit(id)) != 0;
+        }
+
+        /**
+         * Creates a new empty snapshot
+         */
+        private Snapshot() {
+            for (int i = 0; i < cells.length; i++) {
+                cells[i] = Cell.newSnapshotCell(i);
+                if (i < TRASH_XY)
+                    cells[i].masks = masks;
+            }
+        }
+
+        /**
+         * Copies the current state of the given cells into this snapshot
+         * @param src cells of the field
+         * @param store primitive index of the field
+         */
+        private void copyFrom(Cell[] src, FieldStore store) {
+            store.copyMasks(masks);
+            for (int i = 0; i < TRASH_XY; i++) { // trash cell is never drawn
+                Cell cell = cells[i];
+                cell.bottom = src[i].bottom;
+                cell.objects.clear();
+                List<CellObject> objects = src[i].objects;
+                for (int j = 0; j < objects.size(); j++) { // do NOT use addAll(): it creates a new array each time
+                    cell.objects.add(objects.get(j));
+                }
+            }
+        }
+    }
+
     /** Interface that is able to generate a next sequence number */
     public interface NextNumber {
         int next();
@@ -26,8 +82,17 @@ public class Field {
 
     /** Array of cells. We make it 'public' to smooth little overhead of having getters. +1 is used for the TrashCell */
     public final Cell cells[] = new Cell[WIDTH * HEIGHT + 1];
-    /** Map: ObjectNumber -> CellObject */
-    protected final Map<Integer, CellObject> objects = new HashMap<Integer, CellObject>(8);
+    /** Primitive index of the field (bitmasks of object kinds and bottom IDs per cell) */
+    public final FieldStore store = new FieldStore();
+    /**
+     * Object number -> CellObject (numbers are normally bytes, but the array grows if necessary). Note that it's an
+     * array, not a Map, to avoid autoboxing on each move (GC pressure)
+     */
+    private CellObject[] objectsByNumber = new CellObject[256];
+    /** Object ID -> number of the first registered object with this ID (0 if none), see {@link #nextNumberById} */
+    private final int[] firstNumberById = new int[64];
+    /** Object number -> number of the next registered object with the same ID (0 if none) */
+    private int[] nextNumberById = new int[256];
     /** Current object number, for internal use only */
     @SuppressWarnings("WeakerAccess")
     protected int objectNumber = 0;
@@ -39,11 +104,30 @@ public class Field {
         }
     };
 
+    /** Snapshots (the published one, the one that may still be read by the renderer, and a spare one to fill) */
+    private final Snapshot[] snapshots = new Snapshot[3];
+    /** Published snapshot (the only field shared with the renderer, along with {@link #reading}) */
+    private volatile Snapshot front;
+    /** Snapshot that is being read by the renderer right now (may be NULL) */
+    private volatile Snapshot reading;
+
     /**
-     * Created a new Field based on the given binary data
+     * Created a new Field based on the given binary data (for the client side: lists of objects are NOT thread-safe,
+     * so the field must be changed by a single writer, and read through snapshots, see {@link #acquire()})
      * @param fieldData binary data (see Server Documentation for more details)
      */
     public Field(IIntArray fieldData) {
+        this(fieldData, false);
+        publish();
+    }
+
+    /**
+     * Created a new Field based on the given binary data
+     * @param fieldData binary data (see Server Documentation for more details)
+     * @param concurrent TRUE to keep thread-safe lists of objects in the cells (e.g. for the Server Emulator, where
+     *                   objects are moved by several threads), FALSE to use simple lists (no copying on each move)
+     */
+    protected Field(IIntArray fieldData, boolean concurrent) {
         assert fieldData != null;
         if (fieldData.length() != WIDTH * HEIGHT)
             throw new IllegalArgumentException("Incorrect field length: " + fieldData.length());
@@ -51,8 +135,14 @@ public class Field {
         for (int i = 0; i < fieldData.length(); i++) {
             cells[i] = Cell.newCell(fieldData.get(i), i, nextNumber, 0);
             assert cells[i] != null;
+            if (!concurrent)
+                cells[i].objects = new ArrayList<CellObject>(cells[i].objects);
+            cells[i].store = store;
+            cells[i].masks = store.getMasks();
+            store.setBottom(cells[i]);
             for (CellObject object : cells[i].objects) {
-                objects.put(object.getNumber(), object);
+                putObject(object);
+                store.added(cells[i], object);
             }
         }
         // create fake cell for "removed" objects
@@ -73,8 +163,8 @@ public class Field {
 
         CellObject object = Cell.newObject(id, cells[xy], null, number);
         if (object != null) {
-            cells[xy].objects.add(object);
-            objects.put(object.getNumber(), object);
+            cells[xy].addObject(object);
+            putObject(object);
         }
     }
 
@@ -88,7 +178,7 @@ public class Field {
         if (newXy < 0 || newXy > TRASH_XY)
             throw new IllegalArgumentException("Incorrect xy");
 
-        CellObject object = objects.get(number);
+        CellObject object = getObjectByNumber(number);
         if (object != null) {
             if (object.getId() == id) {
                 object.setCell(cells[newXy]);
@@ -103,20 +193,55 @@ public class Field {
      * @param effect effect
      */
     void setEffect(int number, Model.Effect effect) {
-        CellObject object = objects.get(number);
+        CellObject object = getObjectByNumber(number);
         if (object != null)
             object.setEffect(effect);
     }
 
+    /**
+     * Registers the object in the indices "number -> object" and "id -> objects" (objects without numbers, like
+     * ladders, are not registered). If there is already an object with the same number, it will be replaced
+     * @param object object
+     */
+    protected void putObject(CellObject object) {
+        assert object != null;
+        int number = object.getNumber(), id = object.getId();
+        if (number <= 0 || id < 0 || id >= firstNumberById.length)
+            return;
+        if (number >= objectsByNumber.length) {
+            int n = objectsByNumber.length;
+            while (n <= number)
+                n *= 2;
+            CellObject[] newObjects = new CellObject[n];
+            int[] newNext = new int[n];
+            System.arraycopy(objectsByNumber, 0, newObjects, 0, objectsByNumber.length);
+            System.arraycopy(nextNumberById, 0, newNext, 0, nextNumberById.length);
+            objectsByNumber = newObjects;
+            nextNumberById = newNext;
+        }
+        CellObject old = objectsByNumber[number];
+        objectsByNumber[number] = object;
+        if (old == null || old.getId() != id) {
+            if (old != null)
+                unlink(number, old.getId());
+            nextNumberById[number] = firstNumberById[id];
+            firstNumberById[id] = number;
+        }
+    }
+
     /**
      * @param id object ID (please don't mix up with an object number).
      * @see #getObjectByNumber(int) getObjectByNumber
-     * @return the first found object with a given <b>id</b>
+     * @return the first found object with a given <b>id</b> (for numbered objects, like actors, it takes O(1))
      */
     CellObject getObjectById(int id) {
-        for (Cell cell : cells) {                     // in Java 8 may be replaced with lambda
-            for (CellObject object : cell.objects) {
-                if (object.getId() == id)
+        if (0 <= id && id < firstNumberById.length && firstNumberById[id] > 0)
+            return objectsByNumber[firstNumberById[id]];
+        for (int i = 0; i < cells.length; i++) { // objects without numbers are not indexed, so search them
+            Cell cell = cells[i];
+            for (int j = 0; j < cell.getObjectsCount(); j++) {
+                CellObject object = cell.getObject(j);
+                if (object != null && object.getId() == id)
                     return object;
             }
         }
@@ -126,9 +251,67 @@ public class Field {
     /**
      * @param number object number.
      * @see #getObjectById(int) getObjectById
-     * @return object with a given <b>number</b>
+     * @return object with a given <b>number</b> (or NULL)
      */
     CellObject getObjectByNumber(int number) {
-        return objects.get(number);
+        return 0 < number && number < objectsByNumber.length ? objectsByNumber[number] : null;
+    }
+
+    /**
+     * Removes the number from the chain of the given ID (see {@link #putObject(CellObject)})
+     * @param number object number
+     * @param id object ID
+     */
+    private void unlink(int number, int id) {
+        if (firstNumberById[id] == number) {
+            firstNumberById[id] = nextNumberById[number];
+        } else {
+            for (int n = firstNumberById[id]; n > 0; n = nextNumberById[n]) {
+                if (nextNumberById[n] == number) {
+                    nextNumberById[n] = nextNumberById[number];
+                    break;
+                }
+            }
+        }
+        nextNumberById[number] = 0;
+    }
+
+    /**
+     * Publishes the current state of the field for the renderer (must be called by the writer, under the field lock,
+     * after a batch of changes has been applied)
+     */
+    void publish() {
+        Snapshot front = this.front, reading = this.reading;
+        Snapshot back = null;
+        for (int i = 0; i < snapshots.length && back == null; i++) {
+            if (snapshots[i] == null)
+                snapshots[i] = new Snapshot();
+            if (snapshots[i] != front && snapshots[i] != reading)
+                back = snapshots[i];
+        }
+        assert back != null; // 3 snapshots are always enough: one is published, one is being read, and a spare one
+        back.copyFrom(cells, store);
+        this.front = back; // volatile write publishes the snapshot
+    }
+
+    /**
+     * Acquires the latest published snapshot for reading (renderer only). Snapshot must be released afterwards
+     * @return immutable snapshot of the field
+     * @see #release()
+     */
+    public Snapshot acquire() {
+        Snapshot snapshot;
+        do {
+            snapshot = front;
+            reading = snapshot;
+        } while (snapshot != front); // the writer might have swapped it before seeing our "reading" flag
+        return snapshot;
+    }
+
+    /**
+     * Releases the snapshot acquired by {@link #acquire()}, so that it may be reused by the writer
+     */
+    public void release() {
+        reading = null;
     }
 }
@@ -0,0 +1,142 @@
+package ru.mitrakov.self.rush.model;
+
+/**
+ * FieldDelta - batch of changes of the battle field (moves, appends and removals of objects), that should be applied
+ * atomically by {@link Model#applyDelta(FieldDelta)}.
+ * <br>Changes are stored in parallel primitive arrays (no boxing, no "new" operations after warming up, to decrease GC
+ * pressure), so the same instance may be reused for each datagram.
+ * <br>This class is NOT thread-safe: it must be filled and applied by a single thread (e.g. Network thread)
+ * @author mitrakov
+ */
+public final class FieldDelta {
+    /** Operation: append a new object */
+    static final int APPEND = 0;
+    /** Operation: move an object (or remove it, if xy = {@link Field#TRASH_XY}) */
+    static final int MOVE = 1;
+
+    /** Operations */
+    private int[] ops = new int[16];
+    /** Object numbers */
+    private int[] numbers = new int[16];
+    /** Object IDs */
+    private int[] ids = new int[16];
+    /** Coordinates */
+    private int[] xys = new int[16];
+    /** Reset flags (see {@link #move(int, int, int, boolean)}) */
+    private boolean[] resets = new boolean[16];
+    /** Count of changes */
+    private int size = 0;
+
+    /**
+     * Adds a new change: append a new object
+     * @param number object number
+     * @param id object ID
+     * @param xy object coordinate
+     * @return reference to "this"
+     */
+    public FieldDelta append(int number, int id, int xy) {
+        return add(APPEND, number, id, xy, false);
+    }
+
+    /**
+     * Adds a new change: move an object to a new position (or remove it, if xy = {@link Field#TRASH_XY})
+     * @param number object number
+     * @param id object ID (just an additional check)
+     * @param xy new coordinate
+     * @param reset if TRUE, then the object should be replaced immediately (without animations and so on)
+     * @return reference to "this"
+     */
+    public FieldDelta move(int number, int id, int xy, boolean reset) {
+        return add(MOVE, number, id, xy, reset);
+    }
+
+    /**
+     * Removes all the changes
+     * @return reference to "this"
+     */
+    public FieldDelta clear() {
+        size = 0;
+        return this;
+    }
+
+    /**
+     * @return count of changes
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param i index of a change
+     * @return operation ({@link #APPEND} or {@link #MOVE})
+     */
+    int getOp(int i) {
+        return ops[i];
+    }
+
+    /**
+     * @param i index of a change
+     * @return object number
+     */
+    int getNumber(int i) {
+        return numbers[i];
+    }
+
+    /**
+     * @param i index of a change
+     * @return object ID
+     */
+    int getId(int i) {
+        return ids[i];
+    }
+
+    /**
+     * @param i index of a change
+     * @return object coordinate
+     */
+    int getXy(int i) {
+        return xys[i];
+    }
+
+    /**
+     * @param i index of a change
+     * @return reset flag
+     */
+    boolean isReset(int i) {
+        return resets[i];
+    }
+
+    /**
+     * Adds a new change, growing the arrays if necessary
+     * @param op operation
+     * @param number object number
+     * @param id object ID
+     * @param xy coordinate
+     * @param reset reset flag
+     * @return reference to "this"
+     */
+    private FieldDelta add(int op, int number, int id, int xy, boolean reset) {
+        if (size == ops.length) {
+            int n = size * 2;
+            int[] newOps = new int[n], newNumbers = new int[n], newIds = new int[n], newXys = new int[n];
+            boolean[] newResets = new boolean[n];
+            System.arraycopy(ops, 0, newOps, 0, size);
+            System.arraycopy(numbers, 0, newNumbers, 0, size);
+            System.arraycopy(ids, 0, newIds, 0, size);
+            System.arraycopy(xys, 0, newXys, 0, size);
+            System.arraycopy(resets, 0, newResets, 0, size);
+            ops = newOps;
+            numbers = newNumbers;
+            ids = newIds;
+            xys = newXys;
+            resets = newResets;
+        }
+        ops[size] = op;
+        numbers[size] = number;
+        ids[size] = id;
+        xys[size] = xy;
+        resets[size] = reset;
+        size++;
+        return this;
+    }
+}
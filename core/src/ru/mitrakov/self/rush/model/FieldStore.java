@@ -0,0 +1,123 @@
+package ru.mitrakov.self.rush.model;
+
+import ru.mitrakov.self.rush.model.Cells.CellObject;
+
+/**
+ * FieldStore is a compact primitive representation of the battle field (struct-of-arrays): for each cell it keeps a
+ * bitmask of object kinds (IDs and categories, see {@link CellObject#getKind()}) and an ID of the bottom object.
+ * A whole level fits in a few KB of contiguous arrays, so that queries like "is there a ladder in the cell?" are just
+ * array reads (no lists traversal, no "new" operations, no GC pressure).
+ * <br>Objects by number are looked up by {@link Field#getObjectByNumber(int)} (it keeps the objects themselves).
+ * <br>The store is an index maintained by {@link Cell#addObject(CellObject)} and {@link Cell#removeObject(CellObject)},
+ * while the lists of objects in the cells remain the source of truth; both methods change the list and the index
+ * of a cell under the monitor of the cell, so that concurrent writers of the same cell never lose an update
+ * @author mitrakov
+ */
+public final class FieldStore {
+    /**
+     * Bitmasks of object kinds, per cell: bit N is set, if there is an object with ID = N in the cell, and the upper
+     * bits are categories of the objects (see {@link Cells#KIND_FOOD} and so on)
+     */
+    private final long[] masks = new long[Field.TRASH_XY];
+    /** IDs of bottom objects, per cell (0 if there is no bottom) */
+    private final int[] bottoms = new int[Field.TRASH_XY];
+
+    /**
+     * @param id object ID
+     * @return bit that corresponds to the given object ID
+     */
+    public static long bit(int id) {
+        assert 0 <= id && id < 64;
+        return 1L << id;
+    }
+
+    /**
+     * @param xy coordinate
+     * @param id object ID
+     * @return true, if there is an object with the given ID in the cell (bottom objects are NOT considered)
+     */
+    public boolean has(int xy, int id) {
+        return 0 <= xy && xy < masks.length && (masks[xy] & bit(id)) != 0;
+    }
+
+    /**
+     * @param xy coordinate
+     * @param mask bitmask of object kinds (see {@link #bit(int)} and {@link Cells#KIND_FOOD} and so on)
+     * @return true, if there is at least one object with any of the given kinds in the cell
+     */
+    public boolean hasAny(int xy, long mask) {
+        return 0 <= xy && xy < masks.length && (masks[xy] & mask) != 0;
+    }
+
+    /**
+     * @param xy coordinate
+     * @return bitmask of object kinds in the cell (0 for an empty cell or the trash cell)
+     */
+    public long getMask(int xy) {
+        return 0 <= xy && xy < masks.length ? masks[xy] : 0;
+    }
+
+    /**
+     * @param xy coordinate
+     * @return ID of the bottom object in the cell, or 0 if there is no bottom
+     */
+    public int getBottom(int xy) {
+        return 0 <= xy && xy < bottoms.length ? bottoms[xy] : 0;
+    }
+
+    /**
+     * @return bitmasks of object kinds of all the cells (the array itself, to be read by the cells, see
+     * {@link Cell#objectExists(long)})
+     */
+    long[] getMasks() {
+        return masks; // it's OK (please add an exception for FindBugs and DO NOT create a copy as it suggests)
+    }
+
+    /**
+     * Copies the bitmasks of all the cells to the given array
+     * @param dst destination array (length must be at least {@link Field#TRASH_XY})
+     */
+    void copyMasks(long[] dst) {
+        System.arraycopy(masks, 0, dst, 0, masks.length);
+    }
+
+    /**
+     * Registers the bottom object of the cell
+     * @param cell cell
+     */
+    void setBottom(Cell cell) {
+        assert cell != null;
+        if (cell.xy < bottoms.length)
+            bottoms[cell.xy] = cell.bottom != null ? cell.bottom.getId() : 0;
+    }
+
+    /**
+     * Registers the object that has been added to the cell (must be called under the monitor of the cell)
+     * @param cell cell
+     * @param object object (already added to the list of the cell)
+     */
+    void added(Cell cell, CellObject object) {
+        assert cell != null && object != null;
+        if (cell.xy < masks.length)
+            masks[cell.xy] |= object.getKind();
+    }
+
+    /**
+     * Unregisters the object that has been removed from the cell (must be called under the monitor of the cell)
+     * @param cell cell
+     * @param object object (already removed from the list of the cell)
+     */
+    void removed(Cell cell, CellObject object) {
+        assert cell != null && object != null;
+        if (cell.xy >= masks.length)
+            return;
+        // recompute the mask, because there may be several objects of the same kind in the cell (e.g. 2 wolves)
+        long mask = 0;
+        for (int i = 0; i < cell.getObjectsCount(); i++) {  // do NOT use for-each to decrease GC pressure
+            CellObject obj = cell.getObject(i);
+            if (obj != null)
+                mask |= obj.getKind();
+        }
+        masks[cell.xy] = mask;
+    }
+}
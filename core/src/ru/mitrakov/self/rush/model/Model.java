@@ -352,8 +352,8 @@ public class Model {
     // ======================
     // === PRIVATE EVENTS ===
     // ======================
-    // these events are extracted to fields ONLY FOR DECREASING GC PRESSURE during a battle!
-    // the other events can be emitted over usual "new EventBus.XxxEvent(...)" notation
+    // all the events are extracted to fields to decrease GC pressure (please do NOT use "new EventBus.XxxEvent(...)")
+    // note that listeners must not keep references to the events, because they are reused
     // ==================================================
 
     private final EventBus.NewFieldEvent newFieldEvent = new EventBus.NewFieldEvent(null, null);
@@ -368,6 +368,50 @@ public class Model {
     private final EventBus.ObjectRemovedEvent objectRemovedEvent = new EventBus.ObjectRemovedEvent(0, null);
     private final EventBus.RoundFinishedEvent roundFinishedEvent = new EventBus.RoundFinishedEvent(false, "", "", 0, 0);
     private final EventBus.PlayerWoundedEvent playerWoundedEvent = new EventBus.PlayerWoundedEvent(0, null, 0, 0);
+    private final EventBus.FieldChangedEvent fieldChangedEvent = new EventBus.FieldChangedEvent(null);
+    private final EventBus.NameChangedEvent nameChangedEvent = new EventBus.NameChangedEvent("");
+    private final EventBus.ConnectedChangeEvent connectedChangeEvent = new EventBus.ConnectedChangeEvent(false);
+    private final EventBus.AuthorizedChangedEvent authorizedChangedEvent = new EventBus.AuthorizedChangedEvent(false);
+    private final EventBus.CharacterChangedEvent characterChangedEvent = new EventBus.CharacterChangedEvent(null);
+    private final EventBus.GemsChangedEvent gemsChangedEvent = new EventBus.GemsChangedEvent(0);
+    private final EventBus.AbilitiesExpireUpdatedEvent abilitiesExpireUpdatedEvent =
+            new EventBus.AbilitiesExpireUpdatedEvent(null);
+    private final EventBus.DialUpEvent dialUpEvent = new EventBus.DialUpEvent("");
+    private final EventBus.InviteEvent inviteEvent = new EventBus.InviteEvent("", 0);
+    private final EventBus.StopCallRejectedEvent stopCallRejectedEvent = new EventBus.StopCallRejectedEvent("");
+    private final EventBus.StopCallMissedEvent stopCallMissedEvent = new EventBus.StopCallMissedEvent("");
+    private final EventBus.StopCallExpiredEvent stopCallExpiredEvent = new EventBus.StopCallExpiredEvent("");
+    private final EventBus.FriendListUpdatedEvent friendListUpdatedEvent = new EventBus.FriendListUpdatedEvent(null);
+    private final EventBus.FriendAddedEvent friendAddedEvent = new EventBus.FriendAddedEvent(null);
+    private final EventBus.FriendRemovedEvent friendRemovedEvent = new EventBus.FriendRemovedEvent("");
+    private final EventBus.RatingUpdatedEvent ratingUpdatedEvent = new EventBus.RatingUpdatedEvent(null, null);
+    private final EventBus.PromocodeValidChangedEvent promocodeValidChangedEvent =
+            new EventBus.PromocodeValidChangedEvent(false);
+    private final EventBus.PromocodeDoneEvent promocodeDoneEvent = new EventBus.PromocodeDoneEvent("", false, 0);
+    private final EventBus.SkuGemsUpdatedEvent skuGemsUpdatedEvent = new EventBus.SkuGemsUpdatedEvent(null);
+    private final EventBus.PaymentDoneEvent paymentDoneEvent = new EventBus.PaymentDoneEvent(0, "");
+    private final EventBus.GameFinishedEvent gameFinishedEvent = new EventBus.GameFinishedEvent(false, "", "", 0, 0, 0);
+    private final EventBus.AbilitiesChangedEvent abilitiesChangedEvent = new EventBus.AbilitiesChangedEvent(null);
+    private final EventBus.WaitingForEnemyEvent waitingForEnemyEvent = new EventBus.WaitingForEnemyEvent();
+    private final EventBus.VersionNotAllowedEvent versionNotAllowedEvent = new EventBus.VersionNotAllowedEvent("");
+    private final EventBus.NewVersionAvailableEvent newVersionAvailableEvent =
+            new EventBus.NewVersionAvailableEvent("");
+    private final EventBus.BattleNotFoundEvent battleNotFoundEvent = new EventBus.BattleNotFoundEvent();
+    private final EventBus.UnsupportedProtocolEvent unsupportedProtocolEvent = new EventBus.UnsupportedProtocolEvent();
+    private final EventBus.EnemyNotFoundEvent enemyNotFoundEvent = new EventBus.EnemyNotFoundEvent();
+    private final EventBus.AttackedYourselfEvent attackedYourselfEvent = new EventBus.AttackedYourselfEvent();
+    private final EventBus.AddFriendErrorEvent addFriendErrorEvent = new EventBus.AddFriendErrorEvent();
+    private final EventBus.NoGemsEvent noGemsEvent = new EventBus.NoGemsEvent();
+    private final EventBus.IncorrectCredentialsEvent incorrectCredentialsEvent =
+            new EventBus.IncorrectCredentialsEvent();
+    private final EventBus.IncorrectNameEvent incorrectNameEvent = new EventBus.IncorrectNameEvent();
+    private final EventBus.IncorrectEmailEvent incorrectEmailEvent = new EventBus.IncorrectEmailEvent();
+    private final EventBus.DuplicateNameEvent duplicateNameEvent = new EventBus.DuplicateNameEvent();
+    private final EventBus.SignUpErrorEvent signUpErrorEvent = new EventBus.SignUpErrorEvent();
+    private final EventBus.ServerGonnaStopEvent serverGonnaStopEvent = new EventBus.ServerGonnaStopEvent();
+    private final EventBus.WeakPasswordEvent weakPasswordEvent = new EventBus.WeakPasswordEvent();
+    private final EventBus.AggressorBusyEvent aggressorBusyEvent = new EventBus.AggressorBusyEvent();
+    private final EventBus.DefenderBusyEvent defenderBusyEvent = new EventBus.DefenderBusyEvent();
 
 
     // ============================
@@ -458,7 +502,8 @@ public class Model {
                     music = settings[2].equals("1");
                     soundEffects = settings[3].equals("1");
                     name = settings[4];
-                    bus.raise(new EventBus.NameChangedEvent(name));
+                    nameChangedEvent.name = name;
+                    bus.raise(nameChangedEvent);
                     // other settings may differ from version to version (since 2.0.0)
                     for (int i = 5; i < settings.length; i++) {
                         String st = settings[i];
@@ -878,7 +923,8 @@ public class Model {
             }
         }
         connected = value;
-        bus.raise(new EventBus.ConnectedChangeEvent(connected));
+        connectedChangeEvent.connected = connected;
+        bus.raise(connectedChangeEvent);
     }
 
     /**
@@ -897,7 +943,8 @@ public class Model {
                 // hash = ""; saveSettings(); @mitrakov (2017-06-30): Do not clear hash, it may cause unexpected bugs
             }
         }
-        bus.raise(new EventBus.AuthorizedChangedEvent(value));
+        authorizedChangedEvent.authorized = value;
+        bus.raise(authorizedChangedEvent);
     }
 
     /**
@@ -914,7 +961,8 @@ public class Model {
             bld.append((char) data.get(i));
         }
         name = bld.toString();
-        bus.raise(new EventBus.NameChangedEvent(name));
+        nameChangedEvent.name = name;
+        bus.raise(nameChangedEvent);
         i++;
 
         // parse promo code
@@ -929,13 +977,15 @@ public class Model {
         int ch = data.get(i++);
         if (0 <= ch && ch < characterValues.length) {
             character = characterValues[ch];
-            bus.raise(new EventBus.CharacterChangedEvent(character)); // it's safe to raise this event multiple times
+            characterChangedEvent.character = character;
+            bus.raise(characterChangedEvent); // it's safe to raise this event multiple times
         }
 
         // parse gems
         if (i + 3 < data.length()) {
             int gems = (data.get(i) << 24) | (data.get(i + 1) << 16) | (data.get(i + 2) << 8) | (data.get(i + 3));
-            bus.raise(new EventBus.GemsChangedEvent(gems));
+            gemsChangedEvent.gems = gems;
+            bus.raise(gemsChangedEvent);
         }
         i += 4;
 
@@ -957,7 +1007,8 @@ public class Model {
         }
         abilityExpireTime = System.currentTimeMillis();
         // fire the event
-        bus.raise(new EventBus.AbilitiesExpireUpdatedEvent(userAbilities));
+        abilitiesExpireUpdatedEvent.items = userAbilities;
+        bus.raise(abilitiesExpireUpdatedEvent);
 
         // now we know valid user name => read the history from a local storage
         if (fileReader != null && history.isEmpty()) {
@@ -979,7 +1030,8 @@ public class Model {
     public void waitForEnemy(String name) {
         if (name.length() > 0) { // server can send empty name as a response of Quick Attack
             setEnemyName(name);
-            bus.raise(new EventBus.DialUpEvent(name));
+            dialUpEvent.enemy = name;
+            bus.raise(dialUpEvent);
         }
     }
 
@@ -998,7 +1050,9 @@ public class Model {
      */
     public void attacked(int sid, String aggressorName) {
         setEnemyName(aggressorName);
-        bus.raise(new EventBus.InviteEvent(aggressorName, sid));
+        inviteEvent.enemy = aggressorName;
+        inviteEvent.enemySid = sid;
+        bus.raise(inviteEvent);
     }
 
     /**
@@ -1006,7 +1060,8 @@ public class Model {
      * @param coward enemy name
      */
     public void stopCallRejected(String coward) {
-        bus.raise(new EventBus.StopCallRejectedEvent(coward));
+        stopCallRejectedEvent.cowardName = coward;
+        bus.raise(stopCallRejectedEvent);
     }
 
     /**
@@ -1014,7 +1069,8 @@ public class Model {
      * @param aggressorName aggressor name
      */
     public void stopCallMissed(String aggressorName) {
-        bus.raise(new EventBus.StopCallMissedEvent(aggressorName));
+        stopCallMissedEvent.aggressorName = aggressorName;
+        bus.raise(stopCallMissedEvent);
     }
 
     /**
@@ -1022,7 +1078,8 @@ public class Model {
      * @param defenderName defender name
      */
     public void stopCallExpired(String defenderName) {
-        bus.raise(new EventBus.StopCallExpiredEvent(defenderName));
+        stopCallExpiredEvent.defenderName = defenderName;
+        bus.raise(stopCallExpiredEvent);
     }
 
     /**
@@ -1047,7 +1104,8 @@ public class Model {
                 }
             }
         }
-        bus.raise(new EventBus.FriendListUpdatedEvent(friends));
+        friendListUpdatedEvent.items = friends;
+        bus.raise(friendListUpdatedEvent);
     }
 
     /**
@@ -1059,7 +1117,8 @@ public class Model {
         if (0 <= character && character < characterValues.length) {
             FriendItem item = new FriendItem(characterValues[character], name, 0);
             friends.add(item);
-            bus.raise(new EventBus.FriendAddedEvent(item));
+            friendAddedEvent.name = item;
+            bus.raise(friendAddedEvent);
         }
     }
 
@@ -1076,7 +1135,8 @@ public class Model {
                 }
             }
         }
-        bus.raise(new EventBus.FriendRemovedEvent(name));
+        friendRemovedEvent.name = name;
+        bus.raise(friendRemovedEvent);
     }
 
     /**
@@ -1137,7 +1197,9 @@ public class Model {
                 checkWeakPassword(wins);
         }
 
-        bus.raise(new EventBus.RatingUpdatedEvent(type, rating));
+        ratingUpdatedEvent.type = type;
+        ratingUpdatedEvent.items = rating;
+        bus.raise(ratingUpdatedEvent);
     }
 
     /**
@@ -1145,7 +1207,8 @@ public class Model {
      * @param valid TRUE if valid, FALSE - if invalid
      */
     public void setPromocodeValid(boolean valid) {
-        bus.raise(new EventBus.PromocodeValidChangedEvent(valid));
+        promocodeValidChangedEvent.valid = valid;
+        bus.raise(promocodeValidChangedEvent);
     }
 
     /**
@@ -1157,7 +1220,10 @@ public class Model {
      */
     public void setPromocodeDone(String name, boolean inviter, int gems) {
         assert name != null;
-        bus.raise(new EventBus.PromocodeDoneEvent(name, inviter, gems));
+        promocodeDoneEvent.name = name;
+        promocodeDoneEvent.inviter = inviter;
+        promocodeDoneEvent.gems = gems;
+        bus.raise(promocodeDoneEvent);
     }
 
     /**
@@ -1178,7 +1244,8 @@ public class Model {
                 res.put(sku, gems);
             }
         }
-        bus.raise(new EventBus.SkuGemsUpdatedEvent(res));
+        skuGemsUpdatedEvent.skuGems = res;
+        bus.raise(skuGemsUpdatedEvent);
     }
 
     /**
@@ -1187,7 +1254,9 @@ public class Model {
      * @param coupon coupon for the next purchase
      */
     public void paymentDone(int gems, String coupon) {
-        bus.raise(new EventBus.PaymentDoneEvent(gems, coupon));
+        paymentDoneEvent.gems = gems;
+        paymentDoneEvent.coupon = coupon;
+        bus.raise(paymentDoneEvent);
     }
 
     /**
@@ -1251,26 +1320,6 @@ public class Model {
         bus.raise(moveResponseEvent);
     }
 
-    /**
-     * Invoked in the battle mode, when a new object is added to the battle field
-     * @param number object number
-     * @param id object ID
-     * @param xy object coordinate, 0-255
-     */
-    public void appendObject(int number, int id, int xy) {
-        Field field;
-        synchronized (locker) {
-            field = this.field;
-        }
-        if (field != null) {
-            field.appendObject(number, id, xy);
-            if (id == AGGRESSOR_ID || id == DEFENDER_ID) {
-                curActor = field.getObjectById(aggressor ? AGGRESSOR_ID : DEFENDER_ID);
-                enemyActor = field.getObjectById(aggressor ? DEFENDER_ID : AGGRESSOR_ID);
-            }
-        }
-    }
-
     /**
      * Sets a new style pack (level appearance, music, etc.)
      * @param pack style pack
@@ -1282,36 +1331,41 @@ public class Model {
     }
 
     /**
-     * Set new position of an object in the battle mode
-     * @param number object number
-     * @param id object ID (just an additional check)
-     * @param xy new coordinate (0-255)
-     * @param reset if TRUE, then the object should be replaced immediately (without animations and so on)
+     * Applies the whole batch of changes (e.g. all the moves, appends and removals received in a single datagram)
+     * atomically: the field is locked only once, the renderer gets a new snapshot of the field only when the whole batch
+     * is applied (see {@link Field#acquire()}), and only one FieldChangedEvent is raised for the whole batch.
+     * <br>The event is raised only if a non-empty batch has been successfully applied to the current battle field
+     * (most of the datagrams, e.g. pings or user info, carry no field changes at all).
+     * <br>The delta is always cleared afterwards (even if a change fails, e.g. on ID mismatch), so it may be reused, and
+     * a failed batch is never replayed; the changes applied before the failure are published anyway (without the
+     * event, so the renderer just picks them up on the next frame)
+     * @param delta batch of changes (NON-NULL)
      */
-    public void setXy(int number, int id, int xy, boolean reset) {
+    public void applyDelta(FieldDelta delta) {
+        assert delta != null;
         Field field;
         synchronized (locker) {
             field = this.field;
         }
-        if (field != null) {
-            if (xy == Field.TRASH_XY) {
-                CellObject obj = field.getObjectByNumber(number);
-                if (obj != null) {
-                    objectRemovedEvent.oldXy = obj.getXy();
-                    objectRemovedEvent.obj = obj;
-                    bus.raise(objectRemovedEvent);
-                }
-            }
-            if (reset) {
-                if (curActor.getNumber() == number) {
-                    actorResetEvent.obj = curActor;
-                    bus.raise(actorResetEvent);
-                } else if (enemyActor != null && enemyActor.getNumber() == number) {
-                    actorResetEvent.obj = enemyActor;
-                    bus.raise(actorResetEvent);
+        try {
+            if (field != null && delta.size() > 0) {
+                synchronized (field) {
+                    try {
+                        for (int i = 0; i < delta.size(); i++) {
+                            int number = delta.getNumber(i), id = delta.getId(i), xy = delta.getXy(i);
+                            if (delta.getOp(i) == FieldDelta.APPEND)
+                                appendObject(field, number, id, xy);
+                            else setXy(field, number, id, xy, delta.isReset(i));
+                        }
+                    } finally {
+                        field.publish(); // the renderer gets the whole batch at once
+                    }
                 }
+                fieldChangedEvent.field = field;
+                bus.raise(fieldChangedEvent);
             }
-            field.setXy(number, id, xy);
+        } finally {
+            delta.clear();
         }
     }
 
@@ -1448,8 +1502,13 @@ public class Model {
 
         // reset reference to a field
         field = null;
-        bus.raise(new EventBus.GameFinishedEvent(winner, getDetractor1(), getDetractor2(), totalScore1, totalScore2,
-                reward));
+        gameFinishedEvent.winner = winner;
+        gameFinishedEvent.detractor1 = getDetractor1();
+        gameFinishedEvent.detractor2 = getDetractor2();
+        gameFinishedEvent.totalScore1 = totalScore1;
+        gameFinishedEvent.totalScore2 = totalScore2;
+        gameFinishedEvent.reward = reward;
+        bus.raise(gameFinishedEvent);
     }
 
     /**
@@ -1467,14 +1526,15 @@ public class Model {
                     abilities.add(abilityValues[id]);
             }
         }
-        bus.raise(new EventBus.AbilitiesChangedEvent(abilities));
+        abilitiesChangedEvent.items = abilities;
+        bus.raise(abilitiesChangedEvent);
     }
 
     /**
      * Informs that the server sends invitation to the enemy
      */
     public void setWaitingForEnemy() {
-        bus.raise(new EventBus.WaitingForEnemyEvent());
+        bus.raise(waitingForEnemyEvent);
     }
 
     /**
@@ -1492,10 +1552,14 @@ public class Model {
         String curVersion = String.format(locale, "%d.%d.%d", curVersionH, curVersionM, curVersionL);
         boolean versionAllowed = Winesaps.VERSION >= ((minVersionH << 16) | (minVersionM << 8) | minVersionL);
         boolean newVersionAvailable = Winesaps.VERSION < ((curVersionH << 16) | (curVersionM << 8) | curVersionL);
-        if (!versionAllowed)
-            bus.raise(new EventBus.VersionNotAllowedEvent(minVersion));
-        if (newVersionAvailable)
-            bus.raise(new EventBus.NewVersionAvailableEvent(curVersion));
+        if (!versionAllowed) {
+            versionNotAllowedEvent.minVersion = minVersion;
+            bus.raise(versionNotAllowedEvent);
+        }
+        if (newVersionAvailable) {
+            newVersionAvailableEvent.newVersion = curVersion;
+            bus.raise(newVersionAvailableEvent);
+        }
     }
 
     // ======================
@@ -1507,14 +1571,14 @@ public class Model {
      */
     public void setEmptyField() {
         field = null;
-        bus.raise(new EventBus.BattleNotFoundEvent());
+        bus.raise(battleNotFoundEvent);
     }
 
     /**
      * Invoked on error: unsupported protocol
      */
     public void setUnsupportedProtocol() {
-        bus.raise(new EventBus.UnsupportedProtocolEvent());
+        bus.raise(unsupportedProtocolEvent);
     }
 
     /**
@@ -1522,77 +1586,77 @@ public class Model {
      * @param aggressor TRUE if aggressor is busy (just in case, in theory impossible), FALSE - if defender
      */
     public void setUserBusy(boolean aggressor) {
-        bus.raise(aggressor ? new EventBus.AggressorBusyEvent() : new EventBus.DefenderBusyEvent());
+        bus.raise(aggressor ? aggressorBusyEvent : defenderBusyEvent);
     }
 
     /**
      * Invoked on error: enemy not found
      */
     public void setEnemyNotFound() {
-        bus.raise(new EventBus.EnemyNotFoundEvent());
+        bus.raise(enemyNotFoundEvent);
     }
 
     /**
      * Invoked on error: a user tried to attack himself
      */
     public void setAttackYourself() {
-        bus.raise(new EventBus.AttackedYourselfEvent());
+        bus.raise(attackedYourselfEvent);
     }
 
     /**
      * Invoked on add friend error (e.g. a user is already our friend, or if no users found with a given name)
      */
     public void setAddFriendError() {
-        bus.raise(new EventBus.AddFriendErrorEvent());
+        bus.raise(addFriendErrorEvent);
     }
 
     /**
      * Invoked on error: no gems enough to complete a given action
      */
     public void setNoGems() {
-        bus.raise(new EventBus.NoGemsEvent());
+        bus.raise(noGemsEvent);
     }
 
     /**
      * Invoked on error: username/password pair is incorrect
      */
     public void setIncorrectCredentials() {
-        bus.raise(new EventBus.IncorrectCredentialsEvent());
+        bus.raise(incorrectCredentialsEvent);
     }
 
     /**
      * Invoked on error: invalid username (e.g. too small or contains incorrect characters)
      */
     public void setIncorrectName() {
-        bus.raise(new EventBus.IncorrectNameEvent());
+        bus.raise(incorrectNameEvent);
     }
 
     /**
      * Invoked on error: invalid e-mail address
      */
     public void setIncorrectEmail() {
-        bus.raise(new EventBus.IncorrectEmailEvent());
+        bus.raise(incorrectEmailEvent);
     }
 
     /**
      * Invoked on error: username is already in use
      */
     public void setDuplicateName() {
-        bus.raise(new EventBus.DuplicateNameEvent());
+        bus.raise(duplicateNameEvent);
     }
 
     /**
      * Invoked on error: sign up error (on DB level, please refer to the Server docs for more details)
      */
     public void setSignUpError() {
-        bus.raise(new EventBus.SignUpErrorEvent());
+        bus.raise(signUpErrorEvent);
     }
 
     /**
      * Invoked on the server soft-shutdown
      */
     public void setServerGonnaStop() {
-        bus.raise(new EventBus.ServerGonnaStopEvent());
+        bus.raise(serverGonnaStopEvent);
     }
 
     // =======================
@@ -1607,7 +1671,7 @@ public class Model {
     private void checkWeakPassword(int winsCount) {
         boolean passwordIs1234 = hash.equals("81dc9bdb52d04dc20036dbd8313ed055");
         if (passwordIs1234 && winsCount >= 5)
-            bus.raise(new EventBus.WeakPasswordEvent());
+            bus.raise(weakPasswordEvent);
     }
 
     /**
@@ -1634,6 +1698,50 @@ public class Model {
         });
     }
 
+    /**
+     * Adds a new object to the given field (the field must be locked by the caller)
+     * @param field battle field
+     * @param number object number
+     * @param id object ID
+     * @param xy object coordinate, 0-255
+     */
+    private void appendObject(Field field, int number, int id, int xy) {
+        field.appendObject(number, id, xy);
+        if (id == AGGRESSOR_ID || id == DEFENDER_ID) {
+            curActor = field.getObjectById(aggressor ? AGGRESSOR_ID : DEFENDER_ID);
+            enemyActor = field.getObjectById(aggressor ? DEFENDER_ID : AGGRESSOR_ID);
+        }
+    }
+
+    /**
+     * Sets new position of an object on the given field (the field must be locked by the caller)
+     * @param field battle field
+     * @param number object number
+     * @param id object ID (just an additional check)
+     * @param xy new coordinate (0-255)
+     * @param reset if TRUE, then the object should be replaced immediately (without animations and so on)
+     */
+    private void setXy(Field field, int number, int id, int xy, boolean reset) {
+        if (xy == Field.TRASH_XY) {
+            CellObject obj = field.getObjectByNumber(number);
+            if (obj != null) {
+                objectRemovedEvent.oldXy = obj.getXy();
+                objectRemovedEvent.obj = obj;
+                bus.raise(objectRemovedEvent);
+            }
+        }
+        if (reset) {
+            if (curActor.getNumber() == number) {
+                actorResetEvent.obj = curActor;
+                bus.raise(actorResetEvent);
+            } else if (enemyActor != null && enemyActor.getNumber() == number) {
+                actorResetEvent.obj = enemyActor;
+                bus.raise(actorResetEvent);
+            }
+        }
+        field.setXy(number, id, xy);
+    }
+
     // =============================
     // === SINGLE PLAYER SUPPORT ===
     // =============================
@@ -11,9 +11,12 @@ import static ru.mitrakov.self.rush.model.Model.effectValues;
 
 /**
  * Analog of Server Actor class (reconstructed from Server v.1.3.6)
+ * <br>The same class is used for both actors, so it is neither {@link Cells.Actor1} nor {@link Cells.Actor2}, but it
+ * has the ID (and so the kind) of one of them; please look it up by kind, e.g. {@code FieldStore.bit(Actor2.ID)} or
+ * {@link Cells#KIND_ACTOR} ({@code Cell.getFirst(Actor1.class)} skips it)
  * @author Mitrakov
  */
-class ActorEx extends Cells.Actor1 {
+class ActorEx extends Cells.CellObjectActor {
     /** Array to store actor effect steps (index is effect ID, value is count of actor steps when effect is active) */
     private final IIntArray effectSteps = new GcResistantIntArray(effectValues.length);
     /** List of effect callback functions (index is effect ID, value is to be run when effect is over) */
@@ -28,12 +31,15 @@ class ActorEx extends Cells.Actor1 {
 
     /**
      * Creates a new Extended Actor
+     * @param id object ID ({@link Cells.Actor1#ID} or {@link Cells.Actor2#ID})
      * @param cell location
      * @param number sequence number of actor on a {@link FieldEx Battlefield}
      */
     @SuppressWarnings("ForLoopReplaceableByForEach")
-    ActorEx(Cell cell, int number) {
-        super(cell, number);
+    ActorEx(int id, Cell cell, int number) {
+        super(id, cell);
+        assert id == Cells.Actor1.ID || id == Cells.Actor2.ID;
+        this.number = number;
         for (int i = 0; i < effectValues.length; i++) {
             effectSteps.add(0);
             effectCallbacks.add(null);
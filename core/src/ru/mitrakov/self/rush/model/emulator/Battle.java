@@ -27,6 +27,13 @@ class Battle {
     private final List<Model.Ability> skills = new CopyOnWriteArrayList<Model.Ability>();
     /** List of swaggas available for a battle (note: swaggas belong to an actor for a battle, not to a user) */
     private final List<Model.Ability> swaggas = new CopyOnWriteArrayList<Model.Ability>();
+    /** List of skills of the defender (in fact empty, unless the defender is a {@link Bot}) */
+    private final List<Model.Ability> skills2 = new CopyOnWriteArrayList<Model.Ability>();
+    /** List of swaggas of the defender (in fact empty, unless the defender is a {@link Bot}) */
+    private final List<Model.Ability> swaggas2 = new CopyOnWriteArrayList<Model.Ability>();
+
+    /** Random of the battle (all random decisions of the battle are made by it, so that it can be replayed) */
+    private final Random random;
 
     /** Participant 1 */
     final Detractor detractor1;
@@ -45,19 +52,23 @@ class Battle {
      * @param aggressorAbilities ability list of aggressor
      * @param defenderAbilities ability list of defender
      * @param battleManager {@link BattleManager}
+     * @param random random of the battle (e.g. seeded for deterministic runs)
      */
     Battle(Model.Character character1, Model.Character character2, String[] levelnames, int wins,
-           IIntArray aggressorAbilities, IIntArray defenderAbilities, BattleManager battleManager) {
+           IIntArray aggressorAbilities, IIntArray defenderAbilities, BattleManager battleManager, Random random) {
         assert character1 != null && character2 != null && levelnames != null && battleManager != null;
+        assert random != null;
 
         if (levelnames.length > 0) {
             detractor1 = new Detractor(character1, aggressorAbilities);
             detractor2 = new Detractor(character2, defenderAbilities);
-            List<Model.Ability> skills1 = extractAbilitiesSkills(aggressorAbilities);
-            List<Model.Ability> swaggas1 = extractAbilitiesSwaggas(aggressorAbilities);
-            List<Model.Ability> empty = Collections.emptyList();
-            curRound = new Round(character1, character2, 0, levelnames[0], skills1, empty, swaggas1, empty,
-                    battleManager);
+            List<Model.Ability> skills1 = extractAbilitiesSkills(aggressorAbilities, skills);
+            List<Model.Ability> swaggas1 = extractAbilitiesSwaggas(aggressorAbilities, swaggas);
+            extractAbilitiesSkills(defenderAbilities, skills2);
+            extractAbilitiesSwaggas(defenderAbilities, swaggas2);
+            this.random = random;
+            curRound = new Round(character1, character2, 0, levelnames[0], skills1, skills2, swaggas1, swaggas2,
+                    battleManager, random);
             this.levelnames = levelnames;
             this.wins = wins;
             this.battleManager = battleManager;
@@ -66,11 +77,13 @@ class Battle {
 
     /**
      * Extracts only swaggas from the abilities array
-     * @see #extractAbilitiesSkills(IIntArray)
+     * @see #extractAbilitiesSkills(IIntArray, List)
      * @param abilities abilities array
+     * @param swaggas list to store the swaggas (to avoid "new" operations and decrease GC pressure)
      * @return list of swaggas
      */
-    private synchronized List<Model.Ability> extractAbilitiesSwaggas(IIntArray abilities) {
+    private synchronized List<Model.Ability> extractAbilitiesSwaggas(IIntArray abilities,
+                                                                  List<Model.Ability> swaggas) {
         swaggas.clear();
         for (int i = 0; i < abilities.length(); i++) {
             int ability = abilities.get(i);
@@ -92,11 +105,12 @@ class Battle {
 
     /**
      * Extracts only skills from the abilities array
-     * @see #extractAbilitiesSwaggas(IIntArray)
+     * @see #extractAbilitiesSwaggas(IIntArray, List)
      * @param abilities abilities array
+     * @param skills list to store the skills (to avoid "new" operations and decrease GC pressure)
      * @return list of skills
      */
-    private synchronized List<Model.Ability> extractAbilitiesSkills(IIntArray abilities) {
+    private synchronized List<Model.Ability> extractAbilitiesSkills(IIntArray abilities, List<Model.Ability> skills) {
         skills.clear();
         for (int i = 0; i < abilities.length(); i++) {
             int ability = abilities.get(i);
@@ -161,12 +175,13 @@ class Battle {
         if (number < levelnames.length) {
             String levelname = levelnames[number];
             // get parameters from within battle
-            List<Model.Ability> skills1 = extractAbilitiesSkills(detractor1.abilities);
-            List<Model.Ability> swaggas1 = extractAbilitiesSwaggas(detractor1.abilities);
+            List<Model.Ability> skills1 = extractAbilitiesSkills(detractor1.abilities, skills);
+            List<Model.Ability> swaggas1 = extractAbilitiesSwaggas(detractor1.abilities, swaggas);
+            extractAbilitiesSkills(detractor2.abilities, skills2);
+            extractAbilitiesSwaggas(detractor2.abilities, swaggas2);
             // create a new round
-            List<Model.Ability> empty = Collections.emptyList();
             round = new Round(detractor1.character, detractor2.character, number, levelname, skills1,
-                    empty, swaggas1, empty, battleManager);
+                    skills2, swaggas1, swaggas2, battleManager, random);
             lock.lock();
             curRound = round;
             lock.unlock();
@@ -184,6 +199,6 @@ class Battle {
 
         Environment env = battleManager.getEnvironment();
         assert env != null;
-        env.removeField();
+        env.removeField(battleManager.getSid());
     }
 }
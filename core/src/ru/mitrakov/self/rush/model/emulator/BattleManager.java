@@ -1,9 +1,11 @@
 package ru.mitrakov.self.rush.model.emulator;
 
 import java.util.Arrays;
+import java.util.Random;
 import java.util.concurrent.locks.ReentrantLock;
 
 import ru.mitrakov.self.rush.model.*;
+import ru.mitrakov.self.rush.PsObject;
 import ru.mitrakov.self.rush.GcResistantIntArray;
 import ru.mitrakov.self.rush.utils.collections.IIntArray;
 
@@ -16,6 +18,8 @@ import static ru.mitrakov.self.rush.model.Model.HurtCause.*;
 
 /**
  * Analog of Server BattleManager class (reconstructed from Server v.1.3.6)
+ * <br>Unlike the Server, there is a Battle Manager per session (it keeps the session's battle and sends messages to
+ * the session's {@link ServerEmulator}), while the {@link Environment} may be shared by many sessions
  * @author Mitrakov
  */
 class BattleManager {
@@ -27,8 +31,14 @@ class BattleManager {
     private final ReentrantLock battleLock = new ReentrantLock();
     /** File reader to read levels from the disk */
     private final Model.IFileReader fileReader;
+    /** Platform Specific Object (to schedule timers) */
+    private final PsObject psObject;
     /** Environment (intended to have only 1 instance per all the battles) */
     private final Environment environment;
+    /** Flag that the environment has been created by this Battle manager (and must be closed by it) */
+    private final boolean ownEnvironment;
+    /** Session ID (the key of the session's field in the {@link Environment}) */
+    private final int sid;
     /** Helper array to store binary data and avoid invoking "new" (to decrease Garbage Collector pressure) */
     private final IIntArray array = new GcResistantIntArray(WIDTH * Field.HEIGHT);      // need to be synchronized!
 
@@ -57,17 +67,72 @@ class BattleManager {
 
     /** Battle (on Server there is a Map of different battles, but for Emulator there is only one) */
     private Battle battle;
+    /** Flag that Player 2 is controlled by a {@link Bot} in new rounds (otherwise Player 2 does nothing) */
+    private volatile boolean botEnabled = false;
 
     /**
-     * Creates new BattleManager (this class is intended to have a single instance)
+     * Creates new BattleManager with its own {@link Environment} (e.g. for Single Player)
      * @param emulator reference to the Server emulator
      * @param fileReader file reader
+     * @param psObject Platform Specific Object (to schedule timers)
      */
-    BattleManager(ServerEmulator emulator, Model.IFileReader fileReader) {
-        assert fileReader != null;
+    BattleManager(ServerEmulator emulator, Model.IFileReader fileReader, PsObject psObject) {
+        this(emulator, fileReader, psObject, new Environment(psObject, 0), true, 0);
+    }
+
+    /**
+     * Creates new BattleManager for the session, attached to the shared {@link Environment}
+     * @param emulator reference to the Server emulator
+     * @param fileReader file reader
+     * @param psObject Platform Specific Object (to schedule timers)
+     * @param environment shared environment
+     * @param sid session ID (must be unique within the environment)
+     */
+    BattleManager(ServerEmulator emulator, Model.IFileReader fileReader, PsObject psObject, Environment environment,
+                  int sid) {
+        this(emulator, fileReader, psObject, environment, false, sid);
+    }
+
+    /**
+     * Creates new BattleManager
+     * @param emulator reference to the Server emulator
+     * @param fileReader file reader
+     * @param psObject Platform Specific Object (to schedule timers)
+     * @param environment environment
+     * @param ownEnvironment TRUE if the environment must be closed along with this Battle manager
+     * @param sid session ID
+     */
+    private BattleManager(ServerEmulator emulator, Model.IFileReader fileReader, PsObject psObject,
+                          Environment environment, boolean ownEnvironment, int sid) {
+        assert fileReader != null && psObject != null && environment != null;
         this.emulator = emulator;
         this.fileReader = fileReader;
-        this.environment = new Environment(this);
+        this.psObject = psObject;
+        this.environment = environment;
+        this.ownEnvironment = ownEnvironment;
+        this.sid = sid;
+    }
+
+    /**
+     * @return session ID
+     */
+    int getSid() {
+        return sid;
+    }
+
+    /**
+     * Enables/disables the computer-controlled opponent (it takes effect on the next round)
+     * @param enabled TRUE to control Player 2 by a {@link Bot}
+     */
+    void setBot(boolean enabled) {
+        botEnabled = enabled;
+    }
+
+    /**
+     * @return TRUE if Player 2 is controlled by a {@link Bot}
+     */
+    boolean isBotEnabled() {
+        return botEnabled;
     }
 
     /**
@@ -77,6 +142,13 @@ class BattleManager {
         return fileReader;
     }
 
+    /**
+     * @return Platform Specific Object (NON-NULL)
+     */
+    PsObject getPsObject() {
+        return psObject;
+    }
+
     /**
      * @return battle Environment (NON-NULL)
      */
@@ -105,7 +177,8 @@ class BattleManager {
      */
     void accept(Model.Character character1, Model.Character character2, IIntArray aggAbilities, IIntArray defAbilities,
                 String[] levelnames, int wins) {
-        Battle battle = new Battle(character1, character2, levelnames, wins, aggAbilities, defAbilities, this);
+        Random random = new Random(emulator.nextSeed()); // each battle has its own random (to be replayable)
+        Battle battle = new Battle(character1, character2, levelnames, wins, aggAbilities, defAbilities, this, random);
         battleLock.lock();
         this.battle = battle;
         battleLock.unlock();
@@ -138,7 +211,7 @@ class BattleManager {
         if (battle != null) {
             Round round = battle.getRound();
             assert round != null;
-            round.useThing();
+            round.useThing(round.player1);
             synchronized (lock) {
                 emulator.receive(array.clear().add(thingTaken).add(1).add(0));
             }
@@ -154,7 +227,7 @@ class BattleManager {
         if (battle != null) {
             Round round = battle.getRound();
             assert round != null;
-            Cells.CellObjectThing thing = round.useSkill(skillId);
+            Cells.CellObjectThing thing = round.useSkill(round.player1, skillId);
             if (thing != null) { // thing may be NULL (in case skill produced nothing)
                 int thingId = thing.getId();
                 synchronized (lock) {
@@ -170,13 +243,16 @@ class BattleManager {
     }
 
     /**
-     * Shuts the Battle manager down and releases corresponding resources
+     * Shuts the Battle manager down and releases corresponding resources (the shared environment is not closed)
      */
-    @SuppressWarnings("unused")
     void close() {
         //Assert(battleMgr.stop, battleMgr.environment)
         //battleMgr.stop <- true
-        environment.close();
+        Battle battle = getBattle();
+        if (battle != null)
+            battle.stop();
+        if (ownEnvironment)
+            environment.close();
     }
 
     /**
@@ -194,17 +270,18 @@ class BattleManager {
 
     /**
      * Invoked when [non-poisoned] food has been eaten by an actor
+     * @param me TRUE for us, and FALSE - for our enemy
      */
-    void foodEaten() {
+    void foodEaten(boolean me) {
         Battle battle = getBattle();
         if (battle != null) {
             Round round = battle.getRound();
             assert round != null;
-            Player player = round.player1;
+            Player player = round.getPlayerBySid(me);
 
             player.score++;
             synchronized (lock) {
-                emulator.receive(array.clear().add(scoreChanged).add(player.score).add(0));
+                emulator.receive(array.clear().add(scoreChanged).add(round.player1.score).add(round.player2.score));
             }
             round.checkRoundFinished();
         }
@@ -212,16 +289,19 @@ class BattleManager {
 
     /**
      * Invoked when a thing has been taken (dropped) by an actor
+     * @param me TRUE for us, and FALSE - for our enemy (the enemy's things are not sent to the client)
      * @param thing thing (may be NULL that means an actor dropped a thing)
      */
-    void thingTaken(Cells.CellObjectThing thing) {
+    void thingTaken(boolean me, Cells.CellObjectThing thing) {
         Battle battle = getBattle();
         if (battle != null) {
             Round round = battle.getRound();
             assert round != null;
-            round.setThingToPlayer(thing);
-            synchronized (lock) {
-                emulator.receive(array.clear().add(thingTaken).add(1).add(thing != null ? thing.getId() : 0));
+            round.setThingToPlayer(round.getPlayerBySid(me), thing);
+            if (me) {
+                synchronized (lock) {
+                    emulator.receive(array.clear().add(thingTaken).add(1).add(thing != null ? thing.getId() : 0));
+                }
             }
         }
     }
@@ -307,8 +387,8 @@ class BattleManager {
                 emulator.receive(array.clear().add(playerWounded).add(1).add(causeId).add(lives1).add(lives2));
             }
             if (isAlive) {
-                round.restore();
-            } else roundFinished(false);
+                round.restore(me);
+            } else roundFinished(!me);
         }
     }
 
@@ -370,9 +450,10 @@ class BattleManager {
             array.fromByteArray(getBytes(fname), fname.length()).prepend(lives2).prepend(lives1).prepend(char2Id)
                     .prepend(char1Id).prepend(1).prepend(t).prepend(round.number).prepend(roundInfo);
             emulator.receive(array);
-            emulator.receive(base.prepend(fullState));
+            emulator.receive(array.copyFrom(base, base.length()).prepend(fullState)); // don't prepend to field's data
             array.copyFrom(abilities1, abilities1.length()).prepend(abilities1.length()).prepend(abilityList);
             emulator.receive(array);
         }
+        round.field.bot = round.bot; // the bot starts only when the round is current and the client knows Actor2
     }
 }
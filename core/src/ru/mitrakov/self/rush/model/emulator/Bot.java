@@ -0,0 +1,416 @@
+package ru.mitrakov.self.rush.model.emulator;
+
+import java.util.*;
+
+import ru.mitrakov.self.rush.model.*;
+
+import static ru.mitrakov.self.rush.model.Field.*;
+import static ru.mitrakov.self.rush.model.Model.Ability.*;
+import static ru.mitrakov.self.rush.model.Model.Effect.*;
+import static ru.mitrakov.self.rush.model.Model.MoveDirection.*;
+import static ru.mitrakov.self.rush.model.Model.abilityValues;
+
+/**
+ * Computer-controlled opponent for Player 2 (there is no such class on the Server; it's used for Single Player)
+ * <br>The bot is stepped by the {@link Environment} along with the wolves. On each step it makes a single action: uses
+ * a thing or a skill, or moves towards the nearest edible food (or a thing, if it has nothing), avoiding water,
+ * waterfalls, mines and wolves.
+ * <br>Path finding is based on a cached graph of moves ({@link FieldEx#getDestination(ActorEx, int, int)} for each
+ * cell and each direction) and a distance map (reverse BFS from all the targets at once). Both are updated
+ * incrementally: the graph is recomputed only for the columns around the changed cells, and the BFS is resumed on
+ * the next step if it has not fit into the budget of the current step.
+ * <br>The bot uses only the random of the battle, so the battles with a bot are still replayable
+ * @author mitrakov
+ */
+@SuppressWarnings("ForLoopReplaceableByForEach")
+class Bot {
+    /** Count of cells on the battlefield */
+    private static final int N = WIDTH * HEIGHT;
+    /** Max count of BFS nodes expanded per step (steps are counted rather than time, to keep battles replayable) */
+    private static final int BUDGET = 128;
+    /** Distance to unreachable cells */
+    private static final int INF = Integer.MAX_VALUE;
+    /** Distance (in cells) to the enemy to use mines and flashbangs */
+    private static final int ATTACK_DISTANCE = 3;
+    /** Increments of index for each direction of the graph */
+    private static final int[] DELTAS = {-1, 1, -WIDTH, WIDTH};
+    /** Move directions for each direction of the graph (see {@link Round#move(Player, Model.MoveDirection)}) */
+    private static final Model.MoveDirection[] DIRECTIONS = {Left, Right, LeftUp, LeftDown};
+    /** Objects that change the graph of moves (see {@link FieldStore}) */
+    private static final long TOPOLOGY = FieldStore.bit(Cells.Block.ID) | FieldStore.bit(Cells.LadderTop.ID) |
+            FieldStore.bit(Cells.LadderBottom.ID) | FieldStore.bit(Cells.Stair.ID) |
+            FieldStore.bit(Cells.RopeLine.ID) | FieldStore.bit(Cells.BeamChunk.ID) | FieldStore.bit(Cells.Box.ID);
+    /** Objects that allow to move up */
+    private static final long LADDER_BOTTOM_OR_ROPE =
+            FieldStore.bit(Cells.LadderBottom.ID) | FieldStore.bit(Cells.RopeLine.ID);
+    /** Objects that make a cell dangerous or safe again */
+    private static final long DANGER = FieldStore.bit(Cells.Waterfall.ID) | FieldStore.bit(Cells.Umbrella.ID) |
+            FieldStore.bit(Cells.BeamChunk.ID) | FieldStore.bit(Cells.Mine.ID);
+    /** Food objects (IDs 0x10-0x17) */
+    private static final long FOOD = 0xFFL << 0x10;
+    /** Things (IDs 0x20-0x27) */
+    private static final long THINGS = 0xFFL << 0x20;
+
+    /** Round */
+    private final Round round;
+    /** Battlefield */
+    private final FieldEx field;
+    /** Player controlled by the bot */
+    private final Player player;
+    /** Enemy */
+    private final Player enemy;
+    /** Graph of moves: destination for each cell and each direction (index is xy*4 + direction), or -1 */
+    private final int[] dst = new int[N * DELTAS.length];
+    /** Reverse graph (CSR): predecessors of the cell xy are pred[predStart[xy]] ... pred[predStart[xy+1]-1] */
+    private final int[] predStart = new int[N + 1], pred = new int[N * DELTAS.length];
+    /** Cached masks of objects that change the graph, per cell */
+    private final long[] topology = new long[N];
+    /** Cached masks of targets and dangers, per cell */
+    private final long[] targets = new long[N];
+    /** Distance map being computed (the BFS may take several steps) */
+    private int[] dist = new int[N];
+    /** Last completely computed distance map (distance to the nearest target, per cell) */
+    private int[] ready = new int[N];
+    /** BFS queue (each cell is enqueued at most once) */
+    private final int[] queue = new int[N];
+    /** BFS queue head and tail */
+    private int head = 0, tail = 0;
+    /** Flag that the BFS is in progress */
+    private boolean planning = false;
+    /** Flag that the player had a thing at the last planning (things are targets only for an empty-handed bot) */
+    private boolean hadThing = false;
+
+    /**
+     * Creates a new bot for Player 2 of the given round
+     * @param round round
+     */
+    Bot(Round round) {
+        assert round != null && round.player2.actor != null;
+        this.round = round;
+        this.field = round.field;
+        this.player = round.player2;
+        this.enemy = round.player1;
+        Arrays.fill(ready, INF);
+        for (int xy = 0; xy < N; xy++) {
+            topology[xy] = field.store.getMask(xy) & TOPOLOGY;
+            targets[xy] = field.store.getMask(xy) & (FOOD | THINGS | DANGER);
+        }
+        for (int x = 0; x < WIDTH; x++) {
+            updateColumn(x);
+        }
+        updatePredecessors();
+        startPlanning();
+    }
+
+    /**
+     * Performs single action of the bot (invoked by the {@link Environment} on each tick)
+     */
+    void step() {
+        ActorEx actor = player.actor;
+        int xy = actor.getXy();
+        if (xy < 0 || xy >= N) return; // e.g. the actor is being restored
+
+        sync();
+        if (planning)
+            plan(BUDGET);
+        if (tryThing(actor, xy) || trySkill()) return;
+
+        Model.MoveDirection direction = actor.hasEffect(Dazzle) ? DIRECTIONS[field.random.nextInt(2)] : choose(xy);
+        if (direction != null)
+            round.move(player, direction);
+    }
+
+    /**
+     * Checks the cells for changes: updates the graph of moves and restarts the BFS if necessary
+     */
+    private void sync() {
+        long dirty = 0; // bitmask of columns to recompute (WIDTH <= 64)
+        boolean changed = false;
+        for (int xy = 0; xy < N; xy++) {
+            long mask = field.store.getMask(xy);
+            if ((mask & TOPOLOGY) != topology[xy]) {
+                topology[xy] = mask & TOPOLOGY;
+                int x = xy % WIDTH;
+                dirty |= 7L << x >>> 1; // columns x-1, x, x+1 (a move looks at the neighbour columns only)
+            }
+            if ((mask & (FOOD | THINGS | DANGER)) != targets[xy]) {
+                targets[xy] = mask & (FOOD | THINGS | DANGER);
+                changed = true;
+            }
+        }
+        if (dirty != 0) {
+            for (int x = 0; x < WIDTH; x++) {
+                if ((dirty & (1L << x)) != 0)
+                    updateColumn(x);
+            }
+            updatePredecessors();
+            changed = true;
+        }
+        boolean hasThing = player.getThing() != null;
+        if (changed || hasThing != hadThing)
+            startPlanning();
+    }
+
+    /**
+     * Recomputes the graph of moves for all the cells of the given column
+     * @param x column
+     */
+    private void updateColumn(int x) {
+        if (x >= WIDTH) return;
+        ActorEx actor = player.actor;
+        for (int xy = x; xy < N; xy += WIDTH) {
+            long mask = field.store.getMask(xy);
+            for (int k = 0; k < DELTAS.length; k++) {
+                int h = DELTAS[k];
+                // ladders and ropes are required to move up/down (otherwise Round turns it into a left move)
+                boolean possible = h == -WIDTH ? (mask & LADDER_BOTTOM_OR_ROPE) != 0
+                        : h != WIDTH || (mask & FieldStore.bit(Cells.LadderTop.ID)) != 0;
+                int d = possible ? field.getDestination(actor, xy, h) : -1;
+                dst[xy * DELTAS.length + k] = d != xy ? d : -1;
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the reverse graph of moves
+     */
+    private void updatePredecessors() {
+        Arrays.fill(predStart, 0);
+        for (int i = 0; i < dst.length; i++) {
+            if (dst[i] >= 0)
+                predStart[dst[i] + 1]++;
+        }
+        for (int xy = 0; xy < N; xy++) {
+            predStart[xy + 1] += predStart[xy];
+        }
+        int[] pos = queue; // the queue is reused as a temporary array (the BFS is restarted after that)
+        System.arraycopy(predStart, 0, pos, 0, N);
+        for (int i = 0; i < dst.length; i++) {
+            if (dst[i] >= 0)
+                pred[pos[dst[i]]++] = i / DELTAS.length;
+        }
+        head = tail = 0;
+        planning = false;
+    }
+
+    /**
+     * Starts a new BFS from all the targets (edible food, and also things if the bot has nothing)
+     */
+    private void startPlanning() {
+        hadThing = player.getThing() != null;
+        long kinds = hadThing ? FOOD : FOOD | THINGS;
+        Arrays.fill(dist, INF);
+        head = tail = 0;
+        for (int xy = 0; xy < N; xy++) {
+            if ((targets[xy] & kinds) != 0 && !isDangerous(xy) && isTarget(xy, kinds)) {
+                dist[xy] = 0;
+                queue[tail++] = xy;
+            }
+        }
+        planning = true;
+    }
+
+    /**
+     * Continues the BFS
+     * @param budget max count of nodes to expand
+     */
+    private void plan(int budget) {
+        while (head < tail && budget-- > 0) {
+            int v = queue[head++];
+            for (int i = predStart[v]; i < predStart[v + 1]; i++) {
+                int u = pred[i];
+                if (dist[u] == INF && !isDangerous(u)) {
+                    dist[u] = dist[v] + 1;
+                    queue[tail++] = u;
+                }
+            }
+        }
+        if (head == tail) { // done: publish the distance map
+            int[] tmp = ready;
+            ready = dist;
+            dist = tmp;
+            planning = false;
+        }
+    }
+
+    /**
+     * @param xy coordinate
+     * @param kinds bitmask of target objects ({@link #FOOD} and maybe {@link #THINGS})
+     * @return TRUE if there is something worth taking in the cell (poison is not worth it, unless there is Antidote)
+     */
+    private boolean isTarget(int xy, long kinds) {
+        if ((targets[xy] & kinds & THINGS) != 0) return true;
+        Cells.CellObject obj = field.cells[xy].getFirst(Cells.KIND_FOOD);
+        if (obj instanceof Cells.CellObjectFood)
+            return player.actor.hasEffect(Antidote) || !field.isPoison(player.actor, (Cells.CellObjectFood) obj);
+        return false;
+    }
+
+    /**
+     * @param xy coordinate
+     * @return TRUE if the bot would be hurt in the cell (see FieldEx.checkCell)
+     */
+    private boolean isDangerous(int xy) {
+        ActorEx actor = player.actor;
+        long mask = field.store.getMask(xy);
+        if ((mask & FOOD) != 0 && !isTarget(xy, FOOD)) return true; // poison
+        boolean beam = (mask & FieldStore.bit(Cells.BeamChunk.ID)) != 0;
+        if (field.store.getBottom(xy) == Cells.Water.ID && !beam && !actor.hasSwagga(Snorkel)) return true;
+        if ((mask & FieldStore.bit(Cells.Waterfall.ID)) != 0 && (mask & FieldStore.bit(Cells.Umbrella.ID)) == 0
+                && !actor.hasSwagga(SouthWester)) return true;
+        return (mask & FieldStore.bit(Cells.Mine.ID)) != 0 && !beam && !actor.hasSwagga(SapperShoes);
+    }
+
+    /**
+     * @param xy coordinate
+     * @return TRUE if a wolf may reach the cell on its next step (wolves walk along the rows and sometimes use ladders)
+     */
+    private boolean isNearWolf(int xy) {
+        List<WolfEx> wolves = field.getWolves();
+        for (int i = 0; i < wolves.size(); i++) { // don't use iterators here (GC!)
+            WolfEx wolf = wolves.get(i);
+            int w = wolf.getXy();
+            int dx = (xy - w) * wolf.curDir; // > 0 if the wolf is heading to the cell
+            if (w / WIDTH == xy / WIDTH && -1 <= dx && dx <= 2) return true;
+            if (xy == w - WIDTH || xy == w + WIDTH) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Chooses the direction to the nearest target (ties are broken randomly); if no target is reachable, the bot just
+     * walks forward and turns back on obstacles
+     * @param xy current coordinate
+     * @return move direction, or NULL to wait (if all the moves are dangerous, but the current cell is not)
+     */
+    private Model.MoveDirection choose(int xy) {
+        int best = -1, bestDist = INF, ties = 0;
+        for (int k = 0; k < DELTAS.length; k++) {
+            int d = dst[xy * DELTAS.length + k];
+            if (!isSafeMove(xy, k) || ready[d] == INF) continue;
+            if (ready[d] < bestDist) {
+                best = k;
+                bestDist = ready[d];
+                ties = 1;
+            } else if (ready[d] == bestDist && field.random.nextInt(++ties) == 0)
+                best = k;
+        }
+        if (best >= 0)
+            return DIRECTIONS[best];
+
+        // wander
+        int k = player.actor.isDirectedToRight() ? 1 : 0;
+        if (isSafeMove(xy, k)) return DIRECTIONS[k];
+        if (isSafeMove(xy, 1 - k)) return DIRECTIONS[1 - k];
+        return isNearWolf(xy) ? escape(xy) : null;
+    }
+
+    /**
+     * Chooses the move that keeps the bot as far from the wolves as possible (when there are no safe moves at all)
+     * @param xy current coordinate
+     * @return move direction, or NULL if staying is the best option
+     */
+    private Model.MoveDirection escape(int xy) {
+        Model.MoveDirection result = null;
+        int best = getWolfDistance(xy);
+        for (int k = 0; k < DELTAS.length; k++) {
+            int d = dst[xy * DELTAS.length + k];
+            if (d >= 0 && !isDangerous(d) && getWolfDistance(d) > best) {
+                best = getWolfDistance(d);
+                result = DIRECTIONS[k];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param xy coordinate
+     * @return Manhattan distance to the nearest wolf, considering the cell where each wolf is heading to
+     */
+    private int getWolfDistance(int xy) {
+        int result = INF;
+        List<WolfEx> wolves = field.getWolves();
+        for (int i = 0; i < wolves.size(); i++) { // don't use iterators here (GC!)
+            WolfEx wolf = wolves.get(i);
+            int w = wolf.getXy() + wolf.curDir;
+            int distance = Math.abs(w % WIDTH - xy % WIDTH) + Math.abs(w / WIDTH - xy / WIDTH);
+            result = Math.min(result, distance);
+        }
+        return result;
+    }
+
+    /**
+     * @param xy current coordinate
+     * @param k direction of the graph
+     * @return TRUE if the move is possible, and the bot won't be hurt in the destination cell
+     */
+    private boolean isSafeMove(int xy, int k) {
+        int d = dst[xy * DELTAS.length + k];
+        return d >= 0 && !isDangerous(d) && !isNearWolf(d);
+    }
+
+    /**
+     * Uses the thing, if the bot has one and it's the right moment for it
+     * @param actor actor
+     * @param xy current coordinate
+     * @return TRUE if the thing has been used
+     */
+    private boolean tryThing(ActorEx actor, int xy) {
+        Cells.CellObjectThing thing = player.getThing();
+        if (thing == null) return false;
+
+        boolean use;
+        int h = actor.isDirectedToRight() ? 1 : -1;
+        if (thing instanceof Cells.UmbrellaThing)
+            use = hasAhead(xy, h, 2, FieldStore.bit(Cells.Waterfall.ID));
+        else if (thing instanceof Cells.BeamThing)
+            use = isInRow(xy, xy + h) && field.store.getBottom(xy + h) == Cells.Water.ID;
+        else if (thing instanceof Cells.MineThing || thing instanceof Cells.FlashbangThing) {
+            int e = enemy.actor.getXy();
+            use = e / WIDTH == xy / WIDTH && Math.abs(e - xy) <= ATTACK_DISTANCE;
+        } else use = true; // antidote, teleport, detector, box
+        if (use)
+            round.useThing(player);
+        return use;
+    }
+
+    /**
+     * Uses the first unused skill (if the bot has no thing)
+     * @return TRUE if a skill has been used
+     */
+    private boolean trySkill() {
+        if (player.getThing() != null) return false;
+        List<Model.Ability> skills = player.skills;
+        for (int i = 0; i < skills.size(); i++) { // don't use iterators here (GC!)
+            Model.Ability skill = skills.get(i);
+            if (!player.usedSkills.contains(skill)) {
+                round.useSkill(player, Arrays.binarySearch(abilityValues, skill)); // don't use "skill.ordinal()"
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param xy coordinate
+     * @param h direction (+1 or -1)
+     * @param n count of cells to check
+     * @param mask bitmask of objects
+     * @return TRUE if any of the objects is in one of n cells ahead in the same row
+     */
+    private boolean hasAhead(int xy, int h, int n, long mask) {
+        for (int i = 1; i <= n && isInRow(xy, xy + i * h); i++) {
+            if (field.store.hasAny(xy + i * h, mask)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param xy1 coordinate 1
+     * @param xy2 coordinate 2
+     * @return TRUE if both coordinates are on the battlefield in the same row
+     */
+    private static boolean isInRow(int xy1, int xy2) {
+        return 0 <= xy2 && xy2 < N && xy1 / WIDTH == xy2 / WIDTH;
+    }
+}
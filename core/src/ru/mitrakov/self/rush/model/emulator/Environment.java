@@ -1,105 +1,226 @@
 package ru.mitrakov.self.rush.model.emulator;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import ru.mitrakov.self.rush.PsObject;
 import ru.mitrakov.self.rush.model.*;
 
 import static ru.mitrakov.self.rush.model.Field.WIDTH;
 import static ru.mitrakov.self.rush.model.Model.Effect.Afraid;
 import static ru.mitrakov.self.rush.model.Model.Ability.VoodooMask;
+import static ru.mitrakov.self.rush.utils.SimpleLogger.*;
 
 /**
  * Analog of Server Environment class (reconstructed from Server v.1.3.6)
- * <br>This class is intended to have a single instance for all the battles
+ * <br>This class is intended to have a single instance for all the battles: just like on the Server, it keeps a map
+ * of fields keyed by session ID (see {@link BattleManager#getSid()}), and a single timer steps the wolves on all the
+ * fields. The fields are sharded across a fixed pool of worker threads, so that thousands of concurrent battles may
+ * be emulated on one box (e.g. for a local load generator); a shard that is still busy skips the next tick instead of
+ * queueing it. A field that fails to step (e.g. a bug in a wolf or a bot) is logged and removed, so that one broken
+ * battle never stops the others.
+ * <br>For deterministic runs, use 0 workers and a {@link LogicalClock}
  * @author Mitrakov
  */
 @SuppressWarnings("FieldCanBeLocal")
-class Environment {
+public class Environment {
     /** Duration between each wolf step, in ms (e.g. 250 means that a wolf performs 4 steps per second) */
     private static int TICK_DELAY = 250;
     /** Distance (in cells) that a wolf looks up for an actor wearing VooDoo Mask */
     private static int VOODOO_DISTANCE = 3;
 
-    /** Random */
-    private final Random rand = new Random(System.nanoTime());
+    /** Battlefields by session ID (on Server it's a map as well) */
+    private final ConcurrentMap<Integer, FieldEx> fields = new ConcurrentHashMap<Integer, FieldEx>();
+    /** Shards of the fields (each shard is stepped by a single worker at a time) */
+    private final Shard[] shards;
+    /** Worker pool (NULL if the shards are stepped by the timer thread itself) */
+    private final ExecutorService workers;
     /** Main Timer (it is named "stop" because in Go there is a channel "stop" to interrupt the main timer) */
-    private final Timer stop;
-    /** Battlefield (note that on the Server there is a map of different fields) */
-    private volatile FieldEx field;
+    private final PsObject.ITask stop;
+
+    /**
+     * Group of fields, stepped sequentially by a single worker
+     */
+    private final class Shard implements Runnable {
+        /** Fields of the shard (CopyOnWriteArrayList is chosen to iterate without "new" operations) */
+        private final List<FieldEx> list = new CopyOnWriteArrayList<FieldEx>();
+        /** Flag that the shard is being stepped right now */
+        private final AtomicBoolean busy = new AtomicBoolean();
+
+        @Override
+        public void run() {
+            try {
+                for (int i = 0; i < list.size(); i++) {   // don't use iterators here (GC!)
+                    FieldEx field = list.get(i);
+                    try {
+                        step(field);
+                    } catch (RuntimeException e) {
+                        if (failed(field, e))
+                            i--;
+                    } catch (AssertionError e) {
+                        if (failed(field, e))
+                            i--;
+                    }
+                }
+            } finally {
+                busy.set(false);
+            }
+        }
+
+        /**
+         * Steps the wolves (and the bot, if any) on the given field
+         * @param field battlefield
+         */
+        private void step(FieldEx field) {
+            List<WolfEx> wolves = field.getWolves();
+            for (int j = 0; j < wolves.size() && field.active; j++) { // field may be removed meanwhile
+                stepWolf(field, wolves.get(j), field.random); // random of the battle (replayable)
+            }
+            Bot bot = field.bot;
+            if (bot != null && field.active)
+                bot.step();
+        }
+
+        /**
+         * Isolates the field that failed to step: deactivates and removes it (other fields are not affected; note that
+         * with 0 workers an exception would otherwise cancel the main timer for all the battles)
+         * @param field battlefield
+         * @param e error
+         * @return true, if the field has been removed from the shard
+         */
+        private boolean failed(FieldEx field, Throwable e) {
+            log(ERROR, "Environment: field removed after error: ", e);
+            field.active = false;
+            fields.remove(field.getBattleManager().getSid(), field);
+            return list.remove(field);
+        }
+    }
 
     /**
      * Creates new Environment
      * <br>This class is intended to have a single instance for all the battles
-     * @param battleManager {@link BattleManager}
+     * @param psObject Platform Specific Object (to schedule the main timer)
+     * @param workerCount count of worker threads; 0 means that all the fields are stepped by the timer thread (it's
+     *                    the best choice for Single Player with only one field)
      */
-    Environment(final BattleManager battleManager) {
-        assert battleManager != null;
+    public Environment(PsObject psObject, int workerCount) {
+        assert psObject != null;
+        if (workerCount < 0)
+            throw new IllegalArgumentException("Incorrect worker count: " + workerCount);
+
+        shards = new Shard[Math.max(workerCount, 1)];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard();
+        }
+        workers = workerCount > 0 ? Executors.newFixedThreadPool(workerCount, new ThreadFactory() {
+            private int n = 0;
 
-        this.stop = new Timer(true);
-        this.stop.schedule(new TimerTask() {
+            @Override
+            public synchronized Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "environment-" + n++);
+                thread.setDaemon(true);
+                return thread;
+            }
+        }) : null;
+        this.stop = psObject.runDaemon(TICK_DELAY, TICK_DELAY, new Runnable() {
             @Override
             public void run() {
-                FieldEx field = getField();
-                if (field != null) {
-                    List<WolfEx> wolves = field.getWolves();
-                    for (int i = 0; i < wolves.size(); i++) {
-                        WolfEx wolf = wolves.get(i);
-                        Field possiblyAlreadyNewField = getField();
-                        if (field == possiblyAlreadyNewField) {
-                            stepWolf(field, wolf, battleManager);
-                        }
-                    }
-                }
+                tick();
             }
-        }, TICK_DELAY, TICK_DELAY);
+        });
     }
 
     /**
-     * Sets new field for the environment
-     * (note that on the Server there are a lot of fields, that's why it's named "addField" instead of "setField")
+     * Adds a new field for the given session (the previous field of the session, if any, is replaced)
+     * @param sid session ID
      * @param field battlefield
      */
-    void addField(FieldEx field) {
+    void addField(int sid, FieldEx field) {
         assert field != null;
-        this.field = field;
+        field.active = true;
+        FieldEx old = fields.put(sid, field);
+        Shard shard = getShard(sid);
+        if (old != null) {
+            old.active = false;
+            shard.list.remove(old);
+        }
+        shard.list.add(field);
     }
 
     /**
-     * Returns current field (note that on the Server it returns a field by Sid)
+     * Returns current field of the given session
+     * @param sid session ID
      * @return current field (might be NULL)
      */
-    FieldEx getField() {
-        return field;
+    FieldEx getField(int sid) {
+        return fields.get(sid);
     }
 
     /**
-     * Removes field (note that here we clear a reference, but on the Server it really removes the field from the Map)
+     * Removes the field of the given session
+     * @param sid session ID
      */
-    void removeField() {
-        field = null;
+    void removeField(int sid) {
+        FieldEx field = fields.remove(sid);
+        if (field != null) {
+            field.active = false;
+            getShard(sid).list.remove(field);
+        }
+    }
+
+    /**
+     * @return count of fields (i.e. concurrent battles)
+     */
+    public int getFieldCount() {
+        return fields.size();
     }
 
     /**
      * Shuts the environment down and releases all the acquired resources
      */
-    void close() {
+    public void close() {
         stop.cancel();
+        if (workers != null)
+            workers.shutdown();
+    }
+
+    /**
+     * Invoked by the main timer: steps the wolves (and the bots, if any) on all the fields
+     */
+    private void tick() {
+        for (int i = 0; i < shards.length; i++) {
+            Shard shard = shards[i];
+            if (shard.busy.compareAndSet(false, true)) { // if the shard is still busy, skip the tick for it
+                if (workers != null)
+                    workers.execute(shard);
+                else shard.run();
+            }
+        }
+    }
+
+    /**
+     * @param sid session ID
+     * @return shard for the given session
+     */
+    private Shard getShard(int sid) {
+        return shards[(sid & 0x7FFFFFFF) % shards.length];
     }
 
     /**
      * Performs single step for a wolf
      * @param field battlefield
      * @param wolf wolf to perform actions on
-     * @param battleManager {@link BattleManager}
+     * @param rand random
      */
-    private void stepWolf(FieldEx field, WolfEx wolf, BattleManager battleManager) {
+    private void stepWolf(FieldEx field, WolfEx wolf, Random rand) {
         assert wolf != null && field != null;
         Cell cell = wolf.getCell();
         assert cell != null;
 
         if (wolfAfraid(field, cell, wolf.curDir > 0, VOODOO_DISTANCE)) {
             wolf.curDir *= -1;
-            battleManager.effectChanged(Afraid, true, wolf.getNumber());
+            field.getBattleManager().effectChanged(Afraid, true, wolf.getNumber());
         }
         if (cell.objectExists(Cells.LadderTop.class) && rand.nextBoolean() && !wolf.justUsedLadder) {
             field.move(wolf, cell.xy + WIDTH);
@@ -119,7 +240,8 @@ class Environment {
     }
 
     /**
-     * [Recursively] checks whether a wolf is terrified of an actor wearing VooDoo mask
+     * [Recursively] checks whether a wolf is terrified of an actor wearing VooDoo mask (any of the actors, since both
+     * of them are {@link ActorEx ActorExes})
      * @param field battlefield
      * @param cell current cell
      * @param toRight wolf's direction (TRUE to check to the right, FALSE to check to the left)
@@ -129,12 +251,25 @@ class Environment {
     private boolean wolfAfraid(FieldEx field, Cell cell, boolean toRight, int n) {
         Cell nextCell = field.getCellByDirection(cell, toRight);
         if (nextCell != null) {
-            if (nextCell.objectExists(Cells.Actor1.class)) {
-                return field.actor1.hasSwagga(VoodooMask);
+            if (nextCell.objectExists(Cells.KIND_ACTOR)) {
+                return voodooMaskFound(nextCell);
             } else if (n > 0) {
                 return wolfAfraid(field, nextCell, toRight, n - 1);
             }
         }
         return false;
     }
+
+    /**
+     * @param cell cell with at least one actor
+     * @return TRUE if any of the actors found in the cell wears VooDoo mask
+     */
+    private boolean voodooMaskFound(Cell cell) {
+        for (int i = 0; i < cell.getObjectsCount(); i++) {  // do NOT use for-each to decrease GC pressure
+            Cells.CellObject obj = cell.getObject(i);
+            if (obj instanceof ActorEx && ((ActorEx) obj).hasSwagga(VoodooMask))
+                return true;
+        }
+        return false;
+    }
 }
@@ -1,6 +1,7 @@
 package ru.mitrakov.self.rush.model.emulator;
 
 import java.util.List;
+import java.util.Random;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.CopyOnWriteArrayList;
 
@@ -24,6 +25,15 @@ class FieldEx extends Field {
     private static final int DETECTION_LENGTH = 8;
     /** Default round time */
     private static final int ROUND_TIME = 90;
+    /** Bitmask of objects that allow to move up (see {@link FieldStore}) */
+    private static final long LADDER_BOTTOM_OR_ROPE =
+            FieldStore.bit(Cells.LadderBottom.ID) | FieldStore.bit(Cells.RopeLine.ID);
+    /** Kinds of objects checked on each move (see {@link Cell#objectExists(long)}) */
+    private static final long ACTOR1 = FieldStore.bit(Cells.Actor1.ID), ACTOR2 = FieldStore.bit(Cells.Actor2.ID),
+            WOLF = FieldStore.bit(Cells.Wolf.ID), WATERFALL = FieldStore.bit(Cells.Waterfall.ID),
+            UMBRELLA = FieldStore.bit(Cells.Umbrella.ID), BEAM_CHUNK = FieldStore.bit(Cells.BeamChunk.ID),
+            BLOCK_OR_WATER = FieldStore.bit(Cells.Block.ID) | FieldStore.bit(Cells.Water.ID),
+            ENTRY1 = FieldStore.bit(Cells.Entry1.ID), ENTRY2 = FieldStore.bit(Cells.Entry2.ID);
 
     /** Reference to the Battle manager */
     private final BattleManager battleManager;
@@ -39,22 +49,30 @@ class FieldEx extends Field {
 
     /** Field Actor */
     /*final*/ ActorEx actor1, actor2;
+    /** Random of the battle (wolves' decisions) */
+    final Random random;
     /** Raw binary field data */
     final IIntArray raw;
     /** Round time, in seconds */
     int timeSec = ROUND_TIME;
+    /** Flag that the field is registered in the {@link Environment} (wolves are stepped only on active fields) */
+    volatile boolean active;
+    /** Computer-controlled opponent (stepped by the {@link Environment} along with the wolves; may be NULL) */
+    volatile Bot bot;
 
     /**
      * Creates new battlefield
      * @param fieldData binary field data (just 255 bytes)
      * @param raw raw binary field data, may be more than 255 bytes
      * @param battleManager {@link BattleManager}
+     * @param random random of the battle
      */
-    FieldEx(IIntArray fieldData, IIntArray raw, BattleManager battleManager) {
-        super(fieldData);
-        assert battleManager != null;
+    FieldEx(IIntArray fieldData, IIntArray raw, BattleManager battleManager, Random random) {
+        super(fieldData, true); // objects are moved by several threads
+        assert battleManager != null && random != null;
         this.raw = raw;
         this.battleManager = battleManager;
+        this.random = random;
 
         // parse additional sections
         for (int j = fieldData.length(); j + 1 < raw.length(); j += 2) {
@@ -98,30 +116,55 @@ class FieldEx extends Field {
             cellLock.lock();
             Cells.Actor1 actor1 = cell.getFirst(Cells.Actor1.class);
             if (actor1 != null) {
-                this.actor1 = new ActorEx(actor1.getCell(), actor1.getNumber());
-                cell.objects.add(this.actor1);
-                objects.put(this.actor1.getNumber(), this.actor1);
-                actor1.getCell().objects.remove(actor1); // don't forget to remove original Actor to avoid bugs
+                this.actor1 = new ActorEx(Cells.Actor1.ID, actor1.getCell(), actor1.getNumber());
+                cell.addObject(this.actor1);
+                putObject(this.actor1);
+                actor1.getCell().removeObject(actor1); // don't forget to remove original Actor to avoid bugs
             }
             Cells.Actor2 actor2 = cell.getFirst(Cells.Actor2.class);
             if (actor2 != null) {
-                this.actor2 = new ActorEx(actor2.getCell(), actor2.getNumber());
-                cell.objects.add(this.actor2);
-                objects.put(this.actor2.getNumber(), this.actor2);
-                actor2.getCell().objects.remove(actor2); // don't forget to remove original Actor to avoid bugs
+                this.actor2 = new ActorEx(Cells.Actor2.ID, actor2.getCell(), actor2.getNumber());
+                cell.addObject(this.actor2);
+                putObject(this.actor2);
+                actor2.getCell().removeObject(actor2); // don't forget to remove original Actor to avoid bugs
             }
             Cells.Wolf wolf = cell.getFirst(Cells.Wolf.class);
             if (wolf != null) {
-                WolfEx wolfEx = new WolfEx(wolf.getCell(), wolf.getNumber());
+                WolfEx wolfEx = new WolfEx(wolf.getCell(), wolf.getNumber(), random);
                 wolfList.add(wolfEx);
-                cell.objects.add(wolfEx);
-                objects.put(wolfEx.getNumber(), wolfEx);
-                wolf.getCell().objects.remove(wolf);     // don't forget to remove original Wolf to avoid bugs
+                cell.addObject(wolfEx);
+                putObject(wolfEx);
+                wolf.getCell().removeObject(wolf);     // don't forget to remove original Wolf to avoid bugs
             }
             cellLock.unlock();
         }
     }
 
+    /**
+     * Creates Actor2 at Entry2 (Single Player levels have no Actor2, but a {@link Bot} needs one)
+     * @return new actor, or NULL if there is no Entry2 on the battlefield
+     */
+    synchronized ActorEx spawnActor2() {
+        assert actor2 == null;
+        Cells.CellObject entry = getEntryByActor(null);
+        if (entry != null) {
+            Cell cell = entry.getCell();
+            actor2 = new ActorEx(Cells.Actor2.ID, cell, getNextNum());
+            cell.addObject(actor2);
+            putObject(actor2);
+            // also fix raw field data for sending to clients (as an additional level object, see Parser.fullState)
+            raw.add(1).add(3).add(actor2.getNumber()).add(Cells.Actor2.ID).add(cell.xy);
+        }
+        return actor2;
+    }
+
+    /**
+     * @return Battle manager of the session the field belongs to
+     */
+    BattleManager getBattleManager() {
+        return battleManager;
+    }
+
     /**
      * @return next generated number for new objects on the battlefield
      */
@@ -155,7 +198,7 @@ class FieldEx extends Field {
      */
     boolean isMoveUpPossible(Cell cell) {
         assert cell != null;
-        return cell.objectExists(Cells.LadderBottom.class) || cell.objectExists(Cells.RopeLine.class);
+        return store.hasAny(cell.xy, LADDER_BOTTOM_OR_ROPE);
     }
 
     /**
@@ -166,7 +209,7 @@ class FieldEx extends Field {
      */
     boolean isMoveDownPossible(Cell cell) {
         assert cell != null;
-        return cell.objectExists(Cells.LadderTop.class);
+        return store.has(cell.xy, Cells.LadderTop.ID);
     }
 
     /**
@@ -199,9 +242,9 @@ class FieldEx extends Field {
             int h = idxTo - oldCell.xy; // increment of index
             boolean leftRight = h * h == 1;
             // face an obstacle
-            if (newCell.objectExists(Cells.Block.class)) return false;
+            if (store.has(newCell.xy, Cells.Block.ID)) return false;
             // climb a rope
-            if (h == -WIDTH && oldCell.objectExists(Cells.RopeLine.class)) {
+            if (h == -WIDTH && store.has(oldCell.xy, Cells.RopeLine.ID)) {
                 relocate(oldCell, newCell, obj, false);
                 return true;
             }
@@ -214,8 +257,8 @@ class FieldEx extends Field {
             }
             // sink through the floor
             if (oldCell.bottom != null) {
-                if (h == WIDTH && !oldCell.objectExists(Cells.LadderTop.class)) return false;
-                if (h == -WIDTH && !oldCell.objectExists(Cells.LadderBottom.class)) return false;
+                if (h == WIDTH && !store.has(oldCell.xy, Cells.LadderTop.ID)) return false;
+                if (h == -WIDTH && !store.has(oldCell.xy, Cells.LadderBottom.ID)) return false;
             }
             // left-right edges
             if ((oldCell.xy + 1) % WIDTH == 0 && (h > 0 && h < WIDTH)) return false; // if right edge
@@ -224,13 +267,57 @@ class FieldEx extends Field {
             // relocating
             relocate(oldCell, newCell, obj, false);
             // check if there is a firm ground underfoot
-            if (newCell.bottom != null || newCell.objectExists(Cells.BeamChunk.class)) return true;
+            if (newCell.bottom != null || store.has(newCell.xy, Cells.BeamChunk.ID)) return true;
             // else nothing underfoot: fall down!
             return moveSync(obj, idxTo + WIDTH);
         }
         return false; // in fact client CAN send incorrect XY (example: Move(LeftDown) at X=0; Y=0); since 2.0.0
     }
 
+    /**
+     * Calculates where the given actor would stop after a single move, without moving it (the rules are the same as
+     * in {@link #moveSync(Cells.CellObject, int)}; needed for path finding, see {@link Bot})
+     * <br>Please note that the cell checks are NOT performed (teleports, wolves, etc.), and that the method is NOT
+     * thread-safe (the result is only an estimation if the field is being changed meanwhile)
+     * @param actor actor
+     * @param xyFrom source coordinates
+     * @param h increment of index (-1, 1, -WIDTH or WIDTH)
+     * @return destination coordinates, or -1 if the move is impossible
+     */
+    int getDestination(ActorEx actor, int xyFrom, int h) {
+        assert actor != null && 0 <= xyFrom && xyFrom < WIDTH * HEIGHT;
+        assert h == -1 || h == 1 || h == -WIDTH || h == WIDTH;
+
+        int idxTo = xyFrom + h;
+        if (idxTo < 0 || idxTo >= WIDTH * HEIGHT) return -1;
+        boolean leftRight = h * h == 1;
+        int oldBottom = store.getBottom(xyFrom);
+        // face an obstacle
+        if (store.has(idxTo, Cells.Block.ID)) return -1;
+        // climb a rope
+        if (h == -WIDTH && store.has(xyFrom, Cells.RopeLine.ID)) return idxTo;
+        // scale a dias
+        if (leftRight && oldBottom != Cells.Dais.ID && store.getBottom(idxTo) == Cells.Dais.ID &&
+                !cells[xyFrom].objectExists(Cells.KIND_RAISABLE) && !actor.hasSwagga(ClimbingShoes))
+            return -1;
+        // sink through the floor
+        if (oldBottom != 0) {
+            if (h == WIDTH && !store.has(xyFrom, Cells.LadderTop.ID)) return -1;
+            if (h == -WIDTH && !store.has(xyFrom, Cells.LadderBottom.ID)) return -1;
+        }
+        // left-right edges
+        if ((xyFrom + 1) % WIDTH == 0 && h == 1) return -1; // if right edge
+        if (xyFrom % WIDTH == 0 && h == -1) return -1;      // if left edge
+
+        // fall down until there is a firm ground underfoot
+        while (store.getBottom(idxTo) == 0 && !store.has(idxTo, Cells.BeamChunk.ID)) {
+            int below = idxTo + WIDTH;
+            if (below >= WIDTH * HEIGHT || store.has(below, Cells.Block.ID)) break;
+            idxTo = below;
+        }
+        return idxTo;
+    }
+
     /**
      * Returns cell by its coordinates
      * @param xy position
@@ -268,13 +355,13 @@ class FieldEx extends Field {
 
     /**
      * Looks up entry object by the given actor
-     * <br>Please note that this method only looks up Entry1, just as on the Server both actors are considered
+     * @param actor actor (Entry1 is looked up for Actor1, and Entry2 - for any other actor)
      * @return entry object, or NULL if entry is not found
      */
-    Cells.Entry1 getEntryByActor() {
+    Cells.CellObject getEntryByActor(ActorEx actor) {
+        long kind = actor != null && actor == actor1 ? ENTRY1 : ENTRY2;
         for (int i = 0; i < cells.length; i++) { // GC!
-            Cell cell = cells[i];
-            Cells.Entry1 entry = cell.getFirst(Cells.Entry1.class);
+            Cells.CellObject entry = cells[i].getFirst(kind);
             if (entry != null) return entry;
         }
         return null;
@@ -325,7 +412,7 @@ class FieldEx extends Field {
         assert actor != null && actor.getCell() != null && thing != null;
 
         Cell cell = actor.getCell();
-        cell.objects.add(thing);
+        cell.addObject(thing);
         objChanged(thing, cell.xy, false);
     }
 
@@ -402,9 +489,9 @@ class FieldEx extends Field {
     private void checkCell(Cell cell) {
         assert cell != null;
 
-        if (cell.objectExists(Cells.CellObjectActor.class)) {
-            final ActorEx actor = cell.objectExists(Cells.Actor1.class)
-                    ? actor1 : cell.objectExists(Cells.Actor2.class) ? actor2 : null;
+        if (cell.objectExists(Cells.KIND_ACTOR)) {
+            final ActorEx actor = cell.objectExists(ACTOR1)
+                    ? actor1 : cell.objectExists(ACTOR2) ? actor2 : null;
             assert actor != null;
 
             // ==== 1. Checks that DO NOT return (e.g. items can be collected simultaneously) ===
@@ -418,17 +505,17 @@ class FieldEx extends Field {
             Cells.Mine mine = cell.getFirst(Cells.Mine.class);
 
             if (food != null && !isPoison(actor, food)) {
-                cell.objects.remove(food);
+                cell.removeObject(food);
                 objChanged(food, 0xFF, true);
-                battleManager.foodEaten();
+                battleManager.foodEaten(actor == actor1);
             }
             if (thing != null) {
-                cell.objects.remove(thing);
+                cell.removeObject(thing);
                 objChanged(thing, 0xFF, true);
-                battleManager.thingTaken(thing);
+                battleManager.thingTaken(actor == actor1, thing);
             }
             if (beam != null) {
-                cell.objects.remove(beam);
+                cell.removeObject(beam);
                 objChanged(beam, 0xFF, true);
                 createBeamChunks(cell, actor.isDirectedToRight());
             }
@@ -439,24 +526,24 @@ class FieldEx extends Field {
                         battleManager.effectChanged(Antidote, false, actor.getNumber());
                     }
                 });
-                cell.objects.remove(antidote);
+                cell.removeObject(antidote);
                 objChanged(antidote, 0xFF, true);
                 battleManager.effectChanged(Antidote, true, actor.getNumber());
             }
             if (bang != null) {
-                cell.objects.remove(bang);
+                cell.removeObject(bang);
                 objChanged(bang, 0xFF, true);
                 battleManager.setEffectOnEnemy(actor == actor1, Dazzle);
             }
             if (detector != null) {
-                cell.objects.remove(detector);
+                cell.removeObject(detector);
                 objChanged(detector, 0xFF, true);
                 detectMines(cell, actor.isDirectedToRight(), DETECTION_LENGTH);
             }
             // ==== 2. Checks that RETURN (if 2 things may hurt an actor, it loses only 1 live) ===
             // teleport case (please note, that teleport RETURNS to save from mines, water, etc.)
             if (teleport != null) {
-                cell.objects.remove(teleport);
+                cell.removeObject(teleport);
                 objChanged(teleport, 0xFF, true);
                 int newXy = getMirrorXy(cell.xy);
                 Cell newCell = getCellForTeleportation(newXy);
@@ -464,34 +551,34 @@ class FieldEx extends Field {
                 return;
             }
             if (food != null && isPoison(actor, food)) {
-                cell.objects.remove(food);
+                cell.removeObject(food);
                 objChanged(food, 0xFF, true);
                 if (actor.hasEffect(Antidote)) {
-                    battleManager.foodEaten();
+                    battleManager.foodEaten(actor == actor1);
                     // no return here (we should check mines, waterfalls and so on)
-                } else battleManager.hurt(true, Poisoned);
+                } else battleManager.hurt(actor == actor1, Poisoned);
             }
-            if (mine != null && !cell.objectExists(Cells.BeamChunk.class) && !actor.hasSwagga(SapperShoes)) {
+            if (mine != null && !cell.objectExists(BEAM_CHUNK) && !actor.hasSwagga(SapperShoes)) {
                 if (!actor.hasEffect(Attention)) {
                     // thanks to this condition the actor can ONCE step onto the mine immediately upon it burried;but in
                     // theory the condition allows the enemy to avoid explosion (if it's stepCount = mine.stepCount+1)
                     // so let's consider it as a feature
-                    cell.objects.remove(mine);
+                    cell.removeObject(mine);
                     objChanged(mine, 0xFF, true);
-                    battleManager.hurt(true, Exploded);
+                    battleManager.hurt(actor == actor1, Exploded);
                 }
             }
-            if (cell.objectExists(Cells.Wolf.class)) {
+            if (cell.objectExists(WOLF)) {
                 battleManager.eatenByWolf(actor);
                 return;
             }
-            if (cell.objectExists(Cells.Waterfall.class) && !cell.objectExists(Cells.Umbrella.class) &&
+            if (cell.objectExists(WATERFALL) && !cell.objectExists(UMBRELLA) &&
                     !actor.hasSwagga(SouthWester)) {
-                battleManager.hurt(true, Soaked);
+                battleManager.hurt(actor == actor1, Soaked);
                 return;
             }
-            if ((cell.bottom instanceof Cells.Water) && !cell.objectExists(Cells.BeamChunk.class) && !actor.hasSwagga(Snorkel)) {
-                battleManager.hurt(true, Sunk);
+            if ((cell.bottom instanceof Cells.Water) && !cell.objectExists(BEAM_CHUNK) && !actor.hasSwagga(Snorkel)) {
+                battleManager.hurt(actor == actor1, Sunk);
                 //noinspection UnnecessaryReturnStatement
                 return;
             }
@@ -538,9 +625,9 @@ class FieldEx extends Field {
                                 Cells.CellObject chunk1 = Cell.newObject(0x0F, cell1, nextNumber, 0);
                                 Cells.CellObject chunk2 = Cell.newObject(0x0F, cell2, nextNumber, 0);
                                 Cells.CellObject chunk3 = Cell.newObject(0x0F, cell3, nextNumber, 0);
-                                cell1.objects.add(chunk1);
-                                cell2.objects.add(chunk2);
-                                cell3.objects.add(chunk3);
+                                cell1.addObject(chunk1);
+                                cell2.addObject(chunk2);
+                                cell3.addObject(chunk3);
                                 objAppended(chunk1);
                                 objAppended(chunk2);
                                 objAppended(chunk3);
@@ -562,7 +649,7 @@ class FieldEx extends Field {
         if (cell != null && n >= 0) {
             Cells.Mine mine = cell.getFirst(Cells.Mine.class);
             if (mine != null) {
-                cell.objects.remove(mine);
+                cell.removeObject(mine);
                 objChanged(mine, 0xFF, true);
             }
             Cell nextCell = getCellByDirection(cell, toRight);
@@ -588,8 +675,8 @@ class FieldEx extends Field {
             Cell cell = favouriteFood.getCell();
             assert cell != null;
             Cells.CellObjectFood food = createFavouriteFood(actor, favouriteFood.getNumber(), cell);
-            cell.objects.remove(favouriteFood);
-            cell.objects.add(food);
+            cell.removeObject(favouriteFood);
+            cell.addObject(food);
 
             // also fix raw field data for sending to clients
             raw.set(cell.xy, (raw.get(cell.xy) & 0xC0) | food.getId());
@@ -631,7 +718,7 @@ class FieldEx extends Field {
         }
         // 2) avoid teleportation INSIDE the block/water (upon water surface is still allowed)
         Cell newCell = getCell(newXy);
-        if (newCell.objectExists(Cells.Block.class) || newCell.objectExists(Cells.Water.class)) {
+        if (newCell.objectExists(BLOCK_OR_WATER)) {
             int indexToSearch = newXy % WIDTH + (HEIGHT - 2) * WIDTH;
             return f(indexToSearch, newCell);
         }
@@ -647,7 +734,7 @@ class FieldEx extends Field {
     private Cell f(int xy, Cell cell) {
         if (xy > 0) {
             Cell nc = getCell(xy);
-            if (nc.objectExists(Cells.Block.class) || nc.objectExists(Cells.Water.class))
+            if (nc.objectExists(BLOCK_OR_WATER))
                 return f(xy - WIDTH, nc);
             return nc;
         }
@@ -661,7 +748,7 @@ class FieldEx extends Field {
      * @param food food
      * @return TRUE, if the given food is poison for the given actor
      */
-    private boolean isPoison(ActorEx actor, Cells.CellObjectFood food) {
+    boolean isPoison(ActorEx actor, Cells.CellObjectFood food) {
         switch (actor.getCharacter()) {
             case Rabbit:
                 return isPoisonForRabbit(food);
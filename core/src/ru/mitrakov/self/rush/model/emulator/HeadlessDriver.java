@@ -0,0 +1,145 @@
+package ru.mitrakov.self.rush.model.emulator;
+
+import java.io.*;
+import java.util.Arrays;
+
+import ru.mitrakov.self.rush.GcResistantIntArray;
+import ru.mitrakov.self.rush.model.Model;
+import ru.mitrakov.self.rush.net.IHandler;
+import ru.mitrakov.self.rush.utils.collections.IIntArray;
+
+import static ru.mitrakov.self.rush.utils.Utils.getBytes;
+
+/**
+ * Headless driver of a single session of the Server Emulator (no libGDX application needed): it reads levels from
+ * "levels" directory of the working directory (so it must be android/assets), and sends ATTACK and MOVE commands just
+ * like the client does. Timers are driven by a {@link LogicalClock}, that is stepped by the caller (normally by
+ * {@link #MOVE_PERIOD} after each move), so the battles are deterministic for a given seed.
+ * <br>Used by the desktop Simulator and by the benchmarks
+ * @author mitrakov
+ */
+public class HeadlessDriver {
+    /** Logical time between two moves of an actor, in ms (actors do 5 moves per second, see Gui) */
+    public static final int MOVE_PERIOD = 200;
+
+    /** Integer value for {@link Model.Cmd#ATTACK} command */
+    private static final int ATTACK = Arrays.binarySearch(Model.cmdValues, Model.Cmd.ATTACK);
+    /** Integer value for {@link Model.Cmd#MOVE} command */
+    private static final int MOVE = Arrays.binarySearch(Model.cmdValues, Model.Cmd.MOVE);
+
+    /** Emulator of the session */
+    private final ServerEmulator emulator;
+    /** Helper array to send messages (to avoid "new" operations and decrease GC pressure) */
+    private final IIntArray array = new GcResistantIntArray(64);
+
+    /**
+     * File reader that reads levels from the working directory (no libGDX needed)
+     */
+    private static final class DirFileReader implements Model.IFileReader {
+        @Override
+        public void write(String filename, String s) {
+        }
+
+        @Override
+        public void append(String filename, String s) {
+        }
+
+        @Override
+        public String read(String filename) {
+            return null;
+        }
+
+        @Override
+        public byte[] readAsByteArray(String filename) {
+            File file = new File(filename);
+            byte[] result = new byte[(int) file.length()];
+            DataInputStream stream = null;
+            try {
+                stream = new DataInputStream(new FileInputStream(file));
+                stream.readFully(result);
+                return result;
+            } catch (IOException e) {
+                return new byte[0]; // just like FileReader does
+            } finally {
+                if (stream != null) try {
+                    stream.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        @Override
+        public Object deserialize(String filename) {
+            return null;
+        }
+
+        @Override
+        public void serialize(String filename, Object obj) {
+        }
+    }
+
+    /**
+     * Creates a new headless session (the user plays as a Rabbit)
+     * @param clock logical clock (may be shared by several sessions)
+     * @param environment environment (may be shared by several sessions; use 0 workers to keep the runs deterministic)
+     * @param handler handler for the messages "sent" by the Emulator
+     * @param sid session ID (must be unique within the environment)
+     * @param seed seed of the session
+     */
+    public HeadlessDriver(LogicalClock clock, Environment environment, IHandler handler, int sid, long seed) {
+        assert clock != null && environment != null && handler != null;
+        Model model = new Model(clock);
+        model.character = Model.Character.Rabbit;
+        emulator = new ServerEmulator(clock, model, new DirFileReader(), handler, environment, sid);
+        emulator.setSeed(seed);
+    }
+
+    /**
+     * @return Emulator of the session (e.g. to enable the bot)
+     */
+    public ServerEmulator getEmulator() {
+        return emulator;
+    }
+
+    /**
+     * Sends ATTACK command (it starts a new battle on the given level)
+     * @param level level name (e.g. "pack_01/level_01")
+     */
+    public void attack(String level) {
+        assert level != null;
+        array.clear().add(ATTACK).add(0);
+        byte[] bytes = getBytes(level);
+        for (byte b : bytes) {
+            array.add(b & 0xFF);
+        }
+        emulator.send(array);
+    }
+
+    /**
+     * Sends MOVE command (note that the logical clock is NOT stepped)
+     * @param direction direction code (see {@link Model.MoveDirection})
+     */
+    public void move(int direction) {
+        emulator.send(array.clear().add(MOVE).add(direction));
+    }
+
+    /**
+     * Shuts the session down
+     */
+    public void close() {
+        emulator.close();
+    }
+
+    /**
+     * Reads a level from the working directory
+     * @param level level name (e.g. "pack_01/level_01")
+     * @return level binary data, as the Emulator reads it
+     * @throws IllegalArgumentException if the level cannot be read
+     */
+    public static byte[] readLevel(String level) {
+        byte[] result = new DirFileReader().readAsByteArray(String.format("levels/%s.level", level));
+        if (result.length == 0)
+            throw new IllegalArgumentException("Cannot read level " + level);
+        return result;
+    }
+}
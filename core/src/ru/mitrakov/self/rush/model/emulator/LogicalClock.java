@@ -0,0 +1,210 @@
+package ru.mitrakov.self.rush.model.emulator;
+
+import java.util.PriorityQueue;
+
+import ru.mitrakov.self.rush.PsObject;
+
+/**
+ * Platform Specific Object for headless deterministic runs of the Server Emulator: timers scheduled by
+ * {@link #runTask(int, Runnable)} and {@link #runDaemon(int, int, Runnable)} (wolf steps of the {@link Environment},
+ * countdowns of the {@link Round}) are NOT driven by a wall clock, but by a logical clock that is stepped manually
+ * (see {@link #advance(long)}). So a battle may be simulated as fast as the CPU allows and, along with a seed (see
+ * {@link ServerEmulator#setSeed(long)}), replayed bit-exactly.
+ * <br>Timers are run on the thread that steps the clock, in order of their due time (timers with the same due time
+ * are run in order of scheduling). Please use an {@link Environment} with 0 workers to keep the runs deterministic
+ * @author mitrakov
+ */
+public class LogicalClock extends PsObject {
+    /** Scheduled timers, ordered by due time */
+    private final PriorityQueue<Timer> timers = new PriorityQueue<Timer>();
+    /** Current logical time, in ms */
+    private long now = 0;
+    /** Sequence number for the next scheduled timer (to keep the order of timers with the same due time) */
+    private long seq = 0;
+
+    /**
+     * Timer of the logical clock
+     */
+    private static final class Timer implements ITask, Comparable<Timer> {
+        /** Function to run */
+        private final Runnable f;
+        /** Period, in ms (0 for single tasks) */
+        private final long period;
+        /** Due time, in ms */
+        private long due;
+        /** Sequence number */
+        private long seq;
+        /** Flag that the timer has been cancelled */
+        private volatile boolean cancelled;
+
+        /**
+         * Creates a new timer
+         * @param f function to run
+         * @param due due time, in ms
+         * @param period period, in ms (0 for single tasks)
+         * @param seq sequence number
+         */
+        private Timer(Runnable f, long due, long period, long seq) {
+            this.f = f;
+            this.due = due;
+            this.period = period;
+            this.seq = seq;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        @Override
+        public int compareTo(Timer o) {
+            if (due != o.due)
+                return due < o.due ? -1 : 1;
+            return seq < o.seq ? -1 : seq > o.seq ? 1 : 0;
+        }
+    }
+
+    /**
+     * Creates a new instance of LogicalClock (logical time starts with 0)
+     */
+    public LogicalClock() {
+        super(null);
+    }
+
+    @Override
+    public String getPlatform() {
+        return "Headless";
+    }
+
+    @Override
+    public void hide() {
+    }
+
+    @Override
+    public void setActive(boolean value) {
+    }
+
+    @Override
+    public void pushNotification(String msg, boolean force) {
+    }
+
+    @Override
+    public String getKeyboardVendor() {
+        return "";
+    }
+
+    @Override
+    public ITask runDaemon(int delayMsec, int periodMsec, Runnable f) {
+        assert f != null;
+        if (periodMsec <= 0)
+            throw new IllegalArgumentException("Incorrect period: " + periodMsec);
+        return schedule(f, delayMsec, periodMsec);
+    }
+
+    @Override
+    public ITask runTask(int delayMsec, Runnable f) {
+        assert f != null;
+        return schedule(f, delayMsec, 0);
+    }
+
+    /**
+     * @return current logical time, in ms
+     */
+    public synchronized long getTime() {
+        return now;
+    }
+
+    /**
+     * @return due time of the nearest timer, in ms, or -1 if there are no timers
+     */
+    public synchronized long getNextDue() {
+        removeCancelled();
+        Timer timer = timers.peek();
+        return timer != null ? timer.due : -1;
+    }
+
+    /**
+     * Advances the logical time and runs all the timers that are due (including the periodic timers that become due
+     * again within the given interval)
+     * @param ms interval, in ms
+     * @return count of timer runs
+     */
+    public int advance(long ms) {
+        if (ms < 0)
+            throw new IllegalArgumentException("Time cannot go backwards: " + ms);
+        long target;
+        synchronized (this) {
+            target = now + ms;
+        }
+        int count = 0;
+        Timer timer;
+        while ((timer = poll(target)) != null) {
+            timer.f.run(); // run outside the lock: the function may schedule new timers
+            count++;
+            if (timer.period > 0 && !timer.cancelled)
+                reschedule(timer);
+        }
+        synchronized (this) {
+            if (now < target)
+                now = target;
+        }
+        return count;
+    }
+
+    /**
+     * Advances the logical time up to the nearest timer and runs all the timers due at that time
+     * @return count of timer runs (0 if there are no timers)
+     */
+    public int advanceToNext() {
+        long due = getNextDue();
+        return due >= 0 ? advance(due - getTime()) : 0;
+    }
+
+    /**
+     * Schedules a new timer
+     * @param f function to run
+     * @param delayMsec delay, in ms
+     * @param periodMsec period, in ms (0 for single tasks)
+     * @return new timer
+     */
+    private synchronized Timer schedule(Runnable f, int delayMsec, int periodMsec) {
+        Timer timer = new Timer(f, now + Math.max(delayMsec, 0), periodMsec, seq++);
+        timers.add(timer);
+        return timer;
+    }
+
+    /**
+     * Schedules the periodic timer again
+     * @param timer timer
+     */
+    private synchronized void reschedule(Timer timer) {
+        timer.due += timer.period;
+        timer.seq = seq++;
+        timers.add(timer);
+    }
+
+    /**
+     * Retrieves the nearest timer that is due by the given time, and moves the logical time to its due time
+     * @param target target time, in ms
+     * @return timer, or NULL if there are no timers due by the target time
+     */
+    private synchronized Timer poll(long target) {
+        removeCancelled();
+        Timer timer = timers.peek();
+        if (timer != null && timer.due <= target) {
+            timers.poll();
+            now = timer.due;
+            return timer;
+        }
+        return null;
+    }
+
+    /**
+     * Removes cancelled timers from the head of the queue
+     */
+    private void removeCancelled() {
+        while (!timers.isEmpty() && timers.peek().cancelled) {
+            timers.poll();
+        }
+    }
+}
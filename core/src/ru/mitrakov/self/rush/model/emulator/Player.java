@@ -16,6 +16,8 @@ class Player {
     final ActorEx actor;
     /** Skills list */
     final List<Model.Ability> skills;
+    /** Skills used in the round */
+    final Set<Model.Ability> usedSkills = new LinkedHashSet<Model.Ability>();
     /** Thing that actor may or may not possess */
     private Cells.CellObjectThing thing;
     /** Score inside a round (don't mix up with Total Score) */
@@ -33,6 +35,13 @@ class Player {
         this.skills = skills;
     }
 
+    /**
+     * @return thing that the player possesses (or NULL)
+     */
+    Cells.CellObjectThing getThing() {
+        return thing;
+    }
+
     /**
      * Sets a given thing to the player
      * @param thing thing
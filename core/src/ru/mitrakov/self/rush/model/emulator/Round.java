@@ -3,6 +3,7 @@ package ru.mitrakov.self.rush.model.emulator;
 import java.util.*;
 
 import ru.mitrakov.self.rush.model.*;
+import ru.mitrakov.self.rush.PsObject;
 import ru.mitrakov.self.rush.GcResistantIntArray;
 import ru.mitrakov.self.rush.utils.collections.IIntArray;
 
@@ -20,8 +21,6 @@ public class Round {
     private final BattleManager battleManager;
     /** Helper array for 'current abilities' (in order to avoid "new" operations and decrease GC pressure) */
     private final IIntArray abilities = new GcResistantIntArray(abilityValues.length);
-    /** Helper set to store all the skills used */
-    private final Set<Model.Ability> usedSkills = new LinkedHashSet<Model.Ability>();
 
     /** Round number, starting with 0 */
     final int number;
@@ -34,7 +33,9 @@ public class Round {
     /** Level name */
     final String levelname;
     /** Round Countdown Timer (it is named "stop" because in Go there is a channel "stop" to interrupt the timer) */
-    final Timer stop;
+    final PsObject.ITask stop;
+    /** Computer-controlled opponent for Player 2 (NULL if the bot is disabled, see {@link BattleManager#setBot}) */
+    final Bot bot;
 
     /**
      * Creates new round
@@ -47,10 +48,12 @@ public class Round {
      * @param swaggas1 list of swaggas for Player 1
      * @param swaggas2 list of swaggas for Player 2
      * @param battleManager {@link BattleManager}
+     * @param random random of the battle
      */
     public Round(Model.Character character1, Model.Character character2, int number, String levelName,
                  List<Model.Ability> skills1, List<Model.Ability> skills2,
-                 List<Model.Ability> swaggas1, List<Model.Ability> swaggas2, BattleManager battleManager) {
+                 List<Model.Ability> swaggas1, List<Model.Ability> swaggas2, BattleManager battleManager,
+                 Random random) {
         assert character1 != null && character2 != null && levelName != null && battleManager != null;
         assert number >= 0;
 
@@ -71,14 +74,17 @@ public class Round {
         Environment env = battleManager.getEnvironment();
         assert env != null;
 
-        field = new FieldEx(array, raw, battleManager);
-        env.addField(field);
+        field = new FieldEx(array, raw, battleManager, random);
+        env.addField(battleManager.getSid(), field);
 
         ActorEx actor1 = field.actor1;
         ActorEx actor2 = field.actor2;
 
+        boolean botEnabled = battleManager.isBotEnabled();
+        if (actor2 == null && botEnabled)              // Single Player levels have no Actor2, so the bot enters
+            actor2 = field.spawnActor2();
         if (actor2 == null)                            // on ServerEmulator actor2 may be NULL (on Server - can't)
-            actor2 = new ActorEx(TRASH_CELL, 0);
+            actor2 = new ActorEx(Cells.Actor2.ID, TRASH_CELL, 0);
         actor1.setCharacter(character1);
         actor2.setCharacter(character2);
 
@@ -94,13 +100,13 @@ public class Round {
         field.replaceFavouriteFood(actor1, actor2);
         player1 = new Player(actor1, skills1);
         player2 = new Player(actor2, skills2);
-        this.stop = new Timer(true);
-        this.stop.schedule(new TimerTask() {
+        bot = botEnabled && actor2.getCell() != TRASH_CELL ? new Bot(this) : null;
+        this.stop = battleManager.getPsObject().runTask(field.timeSec * 1000, new Runnable() {
             @Override
             public void run() {
                 timeOut();
             }
-        }, field.timeSec * 1000);
+        });
     }
 
     /**
@@ -125,11 +131,12 @@ public class Round {
 
     /**
      * Checks whether a round should be finished (usually when all the fruit have been eaten)
+     * <br>If there is a bot, the player that has eaten more wins (without a bot the enemy's score is always 0)
      */
     synchronized void checkRoundFinished() {
         // tryMutex is not necessary here (synchronized is enough)
         if (field.getFoodCountForActor(player1.actor) == 0)
-            battleManager.roundFinished(true);
+            battleManager.roundFinished(player1.score >= player2.score);
         /* This is a Server algorithm:
         if (player1.score > foodTotal / 2)
             battleManager.roundFinished(true);
@@ -170,8 +177,17 @@ public class Round {
      * @param direction move direction
      */
     void move(Model.MoveDirection direction) {
+        move(player1, direction);
+    }
+
+    /**
+     * Performs single "move" action for the given player (Player 2 is moved by the {@link Bot})
+     * @param player player
+     * @param direction move direction
+     */
+    void move(Player player, Model.MoveDirection direction) {
         // get components
-        ActorEx actor = player1.actor;
+        ActorEx actor = player.actor;
         assert actor != null;
         Cell cell = actor.getCell();
         assert cell != null;
@@ -216,12 +232,12 @@ public class Round {
 
     /**
      * Restores the actor at its start place after being wounded
-     * <br><b>Note:</b> here we consider only Actor1, just as on the Server both actors are taken into account
+     * @param me TRUE for our Player, and FALSE - for the enemy
      */
-    void restore() {
-        ActorEx actor = player1.actor;
+    void restore(boolean me) {
+        ActorEx actor = me ? player1.actor : player2.actor;
         assert actor != null;
-        Cells.Entry1 entry = field.getEntryByActor();
+        Cells.CellObject entry = field.getEntryByActor(actor);
         if (entry != null) {
             assert actor.getCell() != null && entry.getCell() != null;
             field.relocate(actor.getCell(), entry.getCell(), actor, true);
@@ -230,25 +246,26 @@ public class Round {
 
     /**
      * Sets the given thing (e.g. {@link ru.mitrakov.self.rush.model.Cells.UmbrellaThing}) to the player
-     * <br><b>Note:</b> here we consider only Player1, just as on the Server both players are taken into account
+     * @param player player
      * @param thing thing
      */
-    void setThingToPlayer(Cells.CellObjectThing thing) {
-        assert field != null && player1 != null;
+    void setThingToPlayer(Player player, Cells.CellObjectThing thing) {
+        assert field != null && player != null;
 
-        Cells.CellObjectThing oldThing = player1.setThing(thing);
+        Cells.CellObjectThing oldThing = player.setThing(thing);
         if (oldThing != null)
-            field.dropThing(player1.actor, oldThing);
+            field.dropThing(player.actor, oldThing);
     }
 
     /**
      * Method to use a thing (has no effect if the Player has no thing)
-     * @see #useSkill(int)
+     * @param player player
+     * @see #useSkill(Player, int)
      */
-    void useThing() {
-        Cells.CellObjectThing thing = player1.setThing(null);
+    void useThing(Player player) {
+        Cells.CellObjectThing thing = player.setThing(null);
         if (thing != null)
-            field.useThing(player1.actor, thing);
+            field.useThing(player.actor, thing);
     }
 
     /**
@@ -256,17 +273,18 @@ public class Round {
      * {@link ru.mitrakov.self.rush.model.Model.Ability#Miner Miner} can produce
      * {@link ru.mitrakov.self.rush.model.Cells.MineThing MineThing}).
      * Skill will be <b>consumed</b> after success operation
+     * @param player player
      * @param skillId skill ID
      * @return new thing generated by the skill
-     * @see #useThing()
+     * @see #useThing(Player)
      */
-    Cells.CellObjectThing useSkill(int skillId) {
-        Model.Ability skill = player1.getSkill(skillId);
+    Cells.CellObjectThing useSkill(Player player, int skillId) {
+        Model.Ability skill = player.getSkill(skillId);
         if (skill != null) {
-            Cells.CellObjectThing thing = skillApply(skill, field.getNextNum());
+            Cells.CellObjectThing thing = skillApply(player, skill, field.getNextNum());
             if (thing != null) {
                 battleManager.objAppended(thing);
-                setThingToPlayer(thing);
+                setThingToPlayer(player, thing);
                 return thing;
             }
             return null; // no error here: skill may cast nothing
@@ -289,7 +307,7 @@ public class Round {
         }
         for (int i = 0; i < skills.size(); i++) {
             Model.Ability s = skills.get(i);
-            if (!usedSkills.contains(s)) {
+            if (!player1.usedSkills.contains(s)) {
                 int abilityId = Arrays.binarySearch(abilityValues, s);   // don't use "cmd.ordinal()"
                 abilities.add(abilityId);
             }
@@ -303,13 +321,14 @@ public class Round {
      * things is encapsulated inside the skills themselves; here we just reuse
      * {@link ru.mitrakov.self.rush.model.Model.Ability} enum, and in order not to rewrite that code we have to have
      * such factory methods)
+     * @param player player
      * @param skill skill to get applied
      * @param objNumber sequential number for the new object that will be generated by the skill
      * @return new object generated by the skill
      */
-    private Cells.CellObjectThing skillApply(Model.Ability skill, int objNumber) {
-        if (usedSkills.contains(skill)) return null;
-        usedSkills.add(skill);
+    private Cells.CellObjectThing skillApply(Player player, Model.Ability skill, int objNumber) {
+        if (player.usedSkills.contains(skill)) return null;
+        player.usedSkills.add(skill);
 
         // DANGER CODE: "new" may cause troubles with Garbage Collector; we should investigate its impact
         if (skill == Miner) return new Cells.MineThing(TRASH_CELL, objNumber);
@@ -3,17 +3,20 @@ package ru.mitrakov.self.rush.model.emulator;
 import java.util.*;
 
 import ru.mitrakov.self.rush.model.Model;
-import ru.mitrakov.self.rush.net.IHandler;
+import ru.mitrakov.self.rush.net.*;
+import ru.mitrakov.self.rush.net.DecoderRegistry.IDecoder;
+import ru.mitrakov.self.rush.PsObject;
 import ru.mitrakov.self.rush.GcResistantIntArray;
-import ru.mitrakov.self.rush.utils.collections.IIntArray;
+import ru.mitrakov.self.rush.utils.collections.*;
 
 import static ru.mitrakov.self.rush.model.Model.Character.*;
 import static ru.mitrakov.self.rush.model.Model.abilityValues;
+import static ru.mitrakov.self.rush.model.Model.cmdValues;
 
 /**
  * Main class of Server Emulator. It is intended for SinglePlayer and testing purposes. All the classes in the package
  * have been reconstructed from Server v.1.3.6 (taking to account questions of Garbage Collector pressure).
- * Class is intended to have a single instance.
+ * Class is intended to have a single instance per session (many sessions may share one {@link Environment}).
  * @author Mitrakov
  */
 public class ServerEmulator {
@@ -26,22 +29,89 @@ public class ServerEmulator {
 
     /** Helper array to store Player1's abilities (to avoid "new" operations and decrease GC pressure) */
     private final IIntArray abilities1 = new GcResistantIntArray(10);
-    /** Helper array to store Player2's abilities (to avoid "new" operations and decrease GC pressure); in fact empty */
-    private final IIntArray abilities2 = new GcResistantIntArray(0);
+    /** Helper array to store Player2's abilities (to avoid "new" operations and decrease GC pressure); empty unless
+     * Player2 is controlled by a {@link Bot} */
+    private final IIntArray abilities2 = new GcResistantIntArray(10);
+    /** Decoders indexed by the command byte */
+    private final DecoderRegistry registry = new DecoderRegistry();
+    /** Views over the messages (messages are sent from different threads, so each thread has its own view) */
+    private final ThreadLocal<IntArraySlice> slices = new ThreadLocal<IntArraySlice>() {
+        @Override
+        protected IntArraySlice initialValue() {
+            return new IntArraySlice();
+        }
+    };
+    /** Random of the session (it picks the enemy's character and seeds the battles, see {@link #setSeed(long)}) */
+    private final Random random = new Random(System.nanoTime());
     /** Helper array to store all possible characters (to avoid "new" operations and decrease GC pressure) */
     private final List<Model.Character> characters = new ArrayList<Model.Character>(Model.characterValues.length);
 
     /**
      * Creates new Server Emulator
+     * @param psObject Platform Specific Object (to schedule timers)
      * @param model {@link Model}
      * @param fileReader file reader
      * @param handler class to consume incoming messages from the Server Emulator
      */
-    public ServerEmulator(Model model, Model.IFileReader fileReader, IHandler handler) {
-        assert model != null && fileReader != null && handler != null;
+    public ServerEmulator(PsObject psObject, Model model, Model.IFileReader fileReader, IHandler handler) {
+        this(psObject, model, fileReader, handler, null, 0);
+    }
+
+    /**
+     * Creates new Server Emulator for a session of the shared {@link Environment} (e.g. to emulate thousands of
+     * concurrent battles on one box)
+     * @param psObject Platform Specific Object (to schedule timers)
+     * @param model {@link Model}
+     * @param fileReader file reader
+     * @param handler class to consume incoming messages from the Server Emulator
+     * @param environment shared environment (NULL to create a private one)
+     * @param sid session ID (must be unique within the environment)
+     */
+    public ServerEmulator(PsObject psObject, Model model, Model.IFileReader fileReader, IHandler handler,
+                          Environment environment, int sid) {
+        assert psObject != null && model != null && fileReader != null && handler != null;
         this.model = model;
         this.handler = handler;
-        this.battleManager = new BattleManager(this, fileReader);
+        this.battleManager = environment != null
+                ? new BattleManager(this, fileReader, psObject, environment, sid)
+                : new BattleManager(this, fileReader, psObject);
+
+        on(Model.Cmd.ATTACK, new IDecoder() {
+            @Override
+            public void decode(int code, IntArraySlice args) {
+                boolean isInviteByName = args.length() > 0 && args.get(0) == 0;
+                if (isInviteByName)
+                    attack(args.utf8(1));
+                else throw new IllegalArgumentException("ATTACK: incorrect ATTACK format");
+            }
+        });
+        on(Model.Cmd.MOVE, new IDecoder() {
+            @Override
+            public void decode(int code, IntArraySlice args) {
+                if (args.length() > 0)
+                    move(args.get(0));
+                else throw new IllegalArgumentException("MOVE: direction must be provided");
+            }
+        });
+        on(Model.Cmd.USE_THING, new IDecoder() {
+            @Override
+            public void decode(int code, IntArraySlice args) {
+                useThing();
+            }
+        });
+        on(Model.Cmd.USE_SKILL, new IDecoder() {
+            @Override
+            public void decode(int code, IntArraySlice args) {
+                if (args.length() > 0)
+                    useSkill(args.get(0));
+                else throw new IllegalArgumentException("USE_SKILL: ability must be provided");
+            }
+        });
+        on(Model.Cmd.USER_INFO, new IDecoder() {
+            @Override
+            public void decode(int code, IntArraySlice args) {
+            }
+        });
     }
 
     /**
@@ -53,33 +123,11 @@ public class ServerEmulator {
         assert data != null;
 
         if (data.length() > 0) {
-            int code = data.get(0);
-            if (0 <= code && code < Model.cmdValues.length) {
-                Model.Cmd cmd = Model.cmdValues[code];
-                switch (cmd) {
-                    case ATTACK:
-                        boolean isInviteByName = data.length() > 1 && data.get(1) == 0;
-                        if (isInviteByName)
-                            attack(data.remove(0, 2).toUTF8());
-                        else throw new IllegalArgumentException("ATTACK: incorrect ATTACK format");
-                        break;
-                    case MOVE:
-                        if (data.length() > 1)
-                            move(data.get(1));
-                        else throw new IllegalArgumentException("MOVE: direction must be provided");
-                        break;
-                    case USE_THING:
-                        useThing();
-                        break;
-                    case USE_SKILL:
-                        if (data.length() > 1)
-                            useSkill(data.get(1));
-                        else throw new IllegalArgumentException("USE_SKILL: ability must be provided");
-                        break;
-                    case USER_INFO:
-                        break;
-                    default:
-                        throw new IllegalArgumentException(String.format("Cmd %s not supported by Emulator", cmd));
+            if (!registry.dispatch(slices.get().wrap(data, 0, data.length()))) {
+                int code = data.get(0);
+                if (0 <= code && code < cmdValues.length) {
+                    String msg = String.format("Cmd %s not supported by Emulator", cmdValues[code]);
+                    throw new IllegalArgumentException(msg);
                 }
             }
         } else throw new IllegalArgumentException("Empty data");
@@ -94,6 +142,38 @@ public class ServerEmulator {
         handler.onReceived(data.prepend(data.length() % 256).prepend(data.length() / 256));
     }
 
+    /**
+     * Shuts the session down: stops the current battle and releases its resources
+     */
+    public void close() {
+        battleManager.close();
+    }
+
+    /**
+     * Sets the seed of the session: along with a {@link LogicalClock}, it makes the battles deterministic (the same
+     * seed and the same sequence of commands always give the same battle)
+     * @param seed seed
+     */
+    public void setSeed(long seed) {
+        random.setSeed(seed);
+    }
+
+    /**
+     * Enables/disables the computer-controlled opponent: Actor2 enters the battlefield at Entry2 and competes for the
+     * food with the same abilities as ours (it takes effect on the next battle; disabled by default)
+     * @param enabled TRUE to enable the bot
+     */
+    public void setBotEnabled(boolean enabled) {
+        battleManager.setBot(enabled);
+    }
+
+    /**
+     * @return seed for a new battle
+     */
+    long nextSeed() {
+        return random.nextLong();
+    }
+
     /**
      * Invoked on game over event
      * @param winner TRUE if we've won, and FALSE if we've lost
@@ -102,6 +182,15 @@ public class ServerEmulator {
         model.moveForwardSinglePlayerProgress(winner);
     }
 
+    /**
+     * Registers a decoder for the given command
+     * @param cmd command
+     * @param decoder decoder
+     */
+    private void on(Model.Cmd cmd, IDecoder decoder) {
+        registry.register(Arrays.binarySearch(cmdValues, cmd), decoder); // don't use "cmd.ordinal()" (GC pressure)
+    }
+
     /**
      * Starts the battles (sends ACCEPT command to the Battle Manager)
      * @param levelName level name
@@ -112,6 +201,9 @@ public class ServerEmulator {
             int code = Arrays.binarySearch(abilityValues, ability); // don't use "ability.ordinal()" (GC pressure)
             abilities1.add(code);
         }
+        abilities2.clear();
+        if (battleManager.isBotEnabled())
+            abilities2.copyFrom(abilities1, abilities1.length());
         Model.Character char1 = model.character;
         Model.Character char2 = getCharacterExcept(model.character);
         battleManager.accept(char1, char2, abilities1, abilities2, new String[]{levelName}, 1);
@@ -155,7 +247,7 @@ public class ServerEmulator {
                 characters.add(character);
         }
         assert characters.size() > 0;
-        Collections.shuffle(characters);
+        Collections.shuffle(characters, random);
         return characters.get(0);
     }
 }
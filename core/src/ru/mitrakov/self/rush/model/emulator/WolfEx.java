@@ -8,7 +8,6 @@ import ru.mitrakov.self.rush.model.*;
  * @author Mitrakov
  */
 class WolfEx extends Cells.Wolf {
-    private static Random rand = new Random(System.nanoTime());
     /** Current direction, expressed as an integer (1 -> right, -1 -> left) */
     int curDir = 1;
     /** Helper flag to prevent a wolf from moving up and down 1000 times; TRUE if a wolf just used a ladder this step */
@@ -18,14 +17,18 @@ class WolfEx extends Cells.Wolf {
      * Creates a new wolf
      * @param cell cell to store the wolf
      * @param number sequence number on the battlefield
+     * @param random random of the battle
      */
-    WolfEx(Cell cell, int number) {
+    WolfEx(Cell cell, int number, Random random) {
         super(cell, number);
-        setRandomDir();
+        setRandomDir(random);
     }
 
-    /** Sets the random direction to the wolf (left/right) */
-    private void setRandomDir() {
-        curDir = rand.nextInt(2) == 0 ? -1 : 1;
+    /**
+     * Sets the random direction to the wolf (left/right)
+     * @param random random of the battle
+     */
+    private void setRandomDir(Random random) {
+        curDir = random.nextInt(2) == 0 ? -1 : 1;
     }
 }
@@ -0,0 +1,75 @@
+package ru.mitrakov.self.rush.net;
+
+import ru.mitrakov.self.rush.utils.collections.IntArraySlice;
+
+/**
+ * DecoderRegistry - table of message decoders indexed directly by the wire command byte (0-255).
+ * <br>Dispatching a message is a single array load (no "switch" over the Cmd enum, that would require a synthetic
+ * $SwitchMap lookup and "ordinal()"), and new commands may be added just by registering a new decoder.
+ * <br>The registry also counts dispatched messages per command (see {@link #getCount(int)}).
+ * <br>Decoders must be registered before the first dispatch (usually in the constructor of the owner), after that the
+ * table is read-only, so messages may be dispatched from any thread (though counters are exact only if the owner
+ * dispatches messages under its own lock, like Parser does)
+ * @author mitrakov
+ */
+public final class DecoderRegistry {
+    /**
+     * Decoder for a single command
+     */
+    public interface IDecoder {
+        /**
+         * Decodes a single message
+         * @param code command byte
+         * @param args message arguments (without the command byte)
+         */
+        void decode(int code, IntArraySlice args);
+    }
+
+    /** Decoders (dense table indexed by the command byte) */
+    private final IDecoder[] decoders = new IDecoder[256];
+    /** Counters of dispatched messages (indexed by the command byte) */
+    private final int[] counters = new int[256];
+
+    /**
+     * Registers a new decoder
+     * @param code command byte (0-255)
+     * @param decoder decoder (NON-NULL)
+     * @return reference to "this"
+     * @throws IllegalArgumentException if the code is out of range or a decoder for the code already exists
+     */
+    public DecoderRegistry register(int code, IDecoder decoder) {
+        assert decoder != null;
+        if (code < 0 || code >= decoders.length)
+            throw new IllegalArgumentException("Incorrect command code: " + code);
+        if (decoders[code] != null)
+            throw new IllegalArgumentException("Decoder already registered: " + code);
+        decoders[code] = decoder;
+        return this;
+    }
+
+    /**
+     * Passes the message to the decoder registered for its first byte
+     * @param msg message (first byte is a command byte); note that the command byte will be skipped
+     * @return true, if the decoder is found, and false otherwise (the message is not changed in this case)
+     */
+    public boolean dispatch(IntArraySlice msg) {
+        if (msg.length() > 0) {
+            int code = msg.get(0);
+            IDecoder decoder = decoders[code];
+            if (decoder != null) {
+                counters[code]++;
+                decoder.decode(code, msg.skip(1));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param code command byte (0-255)
+     * @return count of messages with the given command byte dispatched so far
+     */
+    public int getCount(int code) {
+        return counters[code];
+    }
+}
@@ -29,6 +29,12 @@ public interface IProtocol {
      */
     void onReceived(IIntArray data) throws IOException;
 
+    /**
+     * Callback on timer (the transport owner must call it when requested by {@link ITransport#schedule(long)})
+     * @throws IOException if IOException occurred
+     */
+    void onTimer() throws IOException;
+
     /**
      * Callback on a new sender connected event
      * @throws IOException if IOException occurred
@@ -46,4 +52,14 @@ public interface IProtocol {
 
     /** @return true, if a connection established */
     boolean isConnected();
+
+    /** @return protocol flags to be advertised to the remote side in each outgoing header (lower 4 bits) */
+    int getFlags();
+
+    /**
+     * Callback on protocol flags received from the remote side in an incoming header
+     * @param flags flags (lower 4 bits)
+     * @throws IOException if IOException occurred (e.g. when deferred messages are transmitted on a mode change)
+     */
+    void onFlags(int flags) throws IOException;
 }
@@ -0,0 +1,26 @@
+package ru.mitrakov.self.rush.net;
+
+import java.io.IOException;
+
+/**
+ * Interface for a datagram transport (used by a transport protocol to send raw datagrams to the server and to arm
+ * its timers)
+ * @author mitrakov
+ */
+public interface ITransport {
+    /**
+     * Sends a single datagram to the server
+     * @param data data (only first <b>length</b> bytes are sent)
+     * @param length data length
+     * @throws IOException if IOException occurred
+     */
+    void sendDatagram(byte[] data, int length) throws IOException;
+
+    /**
+     * Requests the transport to call {@link IProtocol#onTimer()} after the given delay.
+     * <br>There is a single timer: if the timer is already armed for an earlier time, nothing happens; after the timer
+     * fires it is disarmed, so the protocol must request it again, if it still has pending work
+     * @param delayNanos delay, in nanoseconds
+     */
+    void schedule(long delayNanos);
+}
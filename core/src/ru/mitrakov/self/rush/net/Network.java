@@ -1,20 +1,34 @@
 package ru.mitrakov.self.rush.net;
 
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
 import java.util.Locale;
 import java.io.IOException;
 
 import ru.mitrakov.self.rush.*;
-import ru.mitrakov.self.rush.utils.collections.IIntArray;
+import ru.mitrakov.self.rush.utils.collections.*;
 
 import static ru.mitrakov.self.rush.utils.SimpleLogger.*;
 
 /**
  * Main networking class
+ * <br>There are 2 backends:
+ * <ul>
+ *     <li>blocking (default): the thread blocks in DatagramSocket.receive(), and protocol timers are fired by a
+ *     separate timer thread;
+ *     <li>NIO: a single event loop thread (DatagramChannel + Selector) receives datagrams, fires protocol timers and
+ *     sends messages (messages from other threads are passed to the loop through the outbox), so that the protocol
+ *     is never touched by 2 threads at the same time on the hot path.
+ * </ul>
+ * Protocol timers are armed on demand (see {@link #schedule(long)}), so an idle connection doesn't wake any thread up.
+ * <br>Messages may be coalesced (see {@link #post(IIntArray)}): commands issued within a single frame are packed into
+ * a single SwUDP message (as a sequence of length-prefixed messages, just like the server does), so that there are
+ * fewer datagrams, acks and retransmissions; please call {@link #flush()} at the end of each frame.
  * <br>Class is intended to have a single instance
  * @author mitrakov
  */
-public final class Network extends Thread implements IHandler {
+public final class Network extends Thread implements IHandler, ITransport {
     // @note uncomment only for debug! public static boolean TMP_NO_CONNECTION = false;
 
     /** Buffer size for SEND operations (in bytes) */
@@ -23,17 +37,50 @@ public final class Network extends Thread implements IHandler {
     private static final int BUF_SIZ_RECV = 1024;
     /** SwUDP header size (see SwUDP protocol for more details) */
     private static final int HEADER_SIZ = 7;
-    /** Standard flags for SEND operations */
+    /** Standard flags for SEND operations (lower 4 bits are reserved for the transport protocol flags) */
     private static final int FLAGS = 0;
     /** SwUDP protocol version, supported by this client (note that the versions <b>MUST</b> be equal!) */
     private static final int PROTOCOL_VERSION = 0;
+    /** Max count of messages from other threads waiting for the event loop (NIO backend only) */
+    private static final int OUTBOX_SIZ = 32;
+    /** Delay before the next attempt to resolve the server address (NIO backend only), in ms */
+    private static final int RESOLVE_DELAY = 2000;
+    /** SwUDP message header size (id + crcid), it is prepended to the coalesced messages by the protocol */
+    private static final int SWUDP_HEADER_SIZ = 5;
+    /** Max size of coalesced messages, so that the whole datagram with both headers fits BUF_SIZ_SEND, in bytes */
+    private static final int MAX_BATCH_SIZ = BUF_SIZ_SEND - HEADER_SIZ - SWUDP_HEADER_SIZ;
+    /**
+     * Max time that a posted message may wait for {@link #flush()}, in nanoseconds (a bit longer than a frame at 60 FPS,
+     * so that normally messages are flushed at the end of the frame)
+     */
+    private static final long BATCH_DELAY = 20000000;
 
     /**
-     * Datagram socket
+     * Datagram socket (blocking backend only, NULL for NIO backend)
      * <br><b>Note:</b> on Android don't forget to add "<uses-permission android:name="android.permission.INTERNET"/>"
      * to manifest otherwise new DatagramSocket() throws PermissionDeniedException
      */
-    private final DatagramSocket socket = new DatagramSocket();
+    private final DatagramSocket socket;
+    /** Datagram channel (NIO backend only, NULL for blocking backend) */
+    private final DatagramChannel channel;
+    /** Selector for the event loop (NIO backend only) */
+    private final Selector selector;
+    /** Direct buffer for outgoing datagrams (NIO backend only) */
+    private final ByteBuffer sendBuffer;
+    /** Ring of messages from other threads waiting for the event loop (NIO backend only; guarded by its monitor) */
+    private final IIntArray[] outbox;
+    /** Lock for sending datagrams (Sender, Receiver and reconnect timer may send datagrams concurrently) */
+    private final Object sendLock = new Object();
+    /** Lock for timers (guards "protocolTimer" and "batchTimer") */
+    private final Object timerLock = new Object();
+    /** Protocol timer (see {@link #schedule(long)}) */
+    private final Deadline protocolTimer = new Deadline();
+    /** Timer to flush coalesced messages, if nobody called {@link #flush()} in time */
+    private final Deadline batchTimer = new Deadline();
+    /** Lock for coalesced messages */
+    private final Object batchLock = new Object();
+    /** Coalesced messages waiting for {@link #flush()} (guarded by batchLock) */
+    private final IIntArray batch = new ByteIntArray(BUF_SIZ_SEND, batchLock);
     /** Platform Specific object */
     private final PsObject psObject;
     /** Handler for received messages */
@@ -44,12 +91,36 @@ public final class Network extends Thread implements IHandler {
     private final String host;
     /** Server UDP port */
     private final int port;
-    /** Main buffer for incoming messages */
-    private final byte[] recvBuf = new byte[BUF_SIZ_RECV];
-    /** Internal storage for the last received message (needed to empty the main buffer) */
-    private final IIntArray recvData = new GcResistantIntArray(BUF_SIZ_RECV);
-    /** Datagram packet for outgoing messages */
+    /** Last received message (datagrams are received right into its backing array, confined to the Network thread) */
+    private final ByteIntArray recvData = new ByteIntArray(BUF_SIZ_RECV);
+    /** Protocol timer callback (created only once to decrease GC pressure) */
+    private final Runnable ticker = new Runnable() {
+        @Override
+        public void run() {
+            if (protocol != null) try {
+                protocol.onTimer();
+            } catch (IOException ignored) {
+            }
+        }
+    };
+    /** Timer thread body (blocking backend only): waits for the deadlines and fires the timers */
+    private final Runnable timer = new Runnable() {
+        @Override
+        public void run() {
+            //noinspection InfiniteLoopStatement
+            while (true) {
+                try {
+                    awaitTimers();
+                    fireTimers();
+                } catch (InterruptedException ignored) {
+                }
+            }
+        }
+    };
+    /** Datagram packet for outgoing messages (blocking backend only) */
     private /*final*/ DatagramPacket packet;
+    /** Buffer for incoming datagrams that wraps the backing array of "recvData" (NIO backend only) */
+    private ByteBuffer recvBuffer;
 
     /** Session ID for this client (see SwUDP protocol for more details) */
     private int sid = 0;
@@ -57,18 +128,38 @@ public final class Network extends Thread implements IHandler {
     private long token = 0;
     /** Reference to the protocol (only SwUDP supported for now) */
     private IProtocol protocol;
+    /** Index of the first message in the outbox (NIO backend only) */
+    private int outboxHead = 0;
+    /** Count of messages in the outbox (NIO backend only) */
+    private int outboxSize = 0;
 
     /**
-     * Creates a new instance of Network
+     * Creates a new instance of Network with blocking backend
      * @param psObject Platform Specific Object (NON-NULL)
      * @param handler handler to process incoming messages
      * @param eHandler error handler
      * @param host host (IP-address or host name)
      * @param port port (0 < port < 65536)
-     * @throws SocketException if DatagramSocket cannot be created (e.g. if there are no permissions on Android)
+     * @throws IOException if DatagramSocket cannot be created (e.g. if there are no permissions on Android)
      */
     public Network(PsObject psObject, IHandler handler, UncaughtExceptionHandler eHandler, String host, int port)
-            throws SocketException {
+            throws IOException {
+        this(psObject, handler, eHandler, host, port, false);
+    }
+
+    /**
+     * Creates a new instance of Network
+     * @param psObject Platform Specific Object (NON-NULL)
+     * @param handler handler to process incoming messages
+     * @param eHandler error handler
+     * @param host host (IP-address or host name)
+     * @param port port (0 < port < 65536)
+     * @param nio TRUE to use NIO backend (single event loop), FALSE to use blocking backend
+     * @throws IOException if DatagramSocket/DatagramChannel cannot be created (e.g. if there are no permissions on
+     * Android)
+     */
+    public Network(PsObject psObject, IHandler handler, UncaughtExceptionHandler eHandler, String host, int port,
+                   boolean nio) throws IOException {
         assert psObject != null && handler != null && eHandler != null && host != null && 0 < port && port < 65536;
         this.psObject = psObject;
         this.handler = handler;
@@ -76,6 +167,25 @@ public final class Network extends Thread implements IHandler {
         this.host = host;
         this.port = port;
 
+        if (nio) {
+            socket = null;
+            channel = DatagramChannel.open();
+            channel.configureBlocking(false);
+            selector = Selector.open();
+            channel.register(selector, SelectionKey.OP_READ);
+            sendBuffer = ByteBuffer.allocateDirect(BUF_SIZ_SEND);
+            outbox = new IIntArray[OUTBOX_SIZ];
+            for (int i = 0; i < outbox.length; i++) {
+                outbox[i] = new ByteIntArray(BUF_SIZ_SEND, outbox);
+            }
+        } else {
+            socket = new DatagramSocket();
+            channel = null;
+            selector = null;
+            sendBuffer = null;
+            outbox = null;
+        }
+
         setDaemon(true);
         setName("Network thread");
         setUncaughtExceptionHandler(eHandler);
@@ -83,32 +193,9 @@ public final class Network extends Thread implements IHandler {
 
     @Override
     public void run() {
-        // connect to the server
-        if (protocol != null) try {
-            protocol.connect();
-        } catch (IOException e) {
-            errorHandler.uncaughtException(null, e);
-        }
-
-        // create DatagramPacket OUTSIDE the loop to minimize memory allocations
-        DatagramPacket datagram = new DatagramPacket(recvBuf, recvBuf.length);
-
-        // run infinite loop
-        //noinspection InfiniteLoopStatement
-        while (true) {
-            try {
-                socket.receive(datagram);
-                // @note uncomment only for debug! if (TMP_NO_CONNECTION) continue;
-                if (protocol != null) {
-                    recvData.fromByteArray(datagram.getData(), datagram.getLength());
-                    if (recvData.length() > 5)
-                        log("Recv: ", recvData);
-                    protocol.onReceived(recvData);
-                } else onReceived(recvData.fromByteArray(datagram.getData(), datagram.getLength()));
-            } catch (Exception e) {
-                errorHandler.uncaughtException(this, e);
-            }
-        }
+        if (channel != null)
+            runEventLoop();
+        else runBlocking();
     }
 
     @Override
@@ -128,9 +215,11 @@ public final class Network extends Thread implements IHandler {
                 sid = inSid;
                 token = inToken;
             }
-            if (sid == inSid && token == inToken)
+            if (sid == inSid && token == inToken) {
+                if (protocol != null)
+                    protocol.onFlags(flags & 0x0F); // only trusted datagrams may switch the protocol mode
                 handler.onReceived(data.remove(0, HEADER_SIZ));
-            else throw new IllegalAccessException("Incorrect sid/token pair");
+            } else throw new IllegalAccessException("Incorrect sid/token pair");
         } catch (Exception e) {
             errorHandler.uncaughtException(this, e); // we MUST handle all exceptions to get SwUDP working
         }
@@ -154,12 +243,68 @@ public final class Network extends Thread implements IHandler {
     }
 
     /**
-     * Sends message to the server, prepending it with sid, token, flags and msgSize fields
+     * Sends message to the server immediately, prepending it with sid, token, flags and msgSize fields.
+     * Coalesced messages (if any) are sent before, to keep the order.
+     * <br>For NIO backend, if called NOT from the event loop thread, the message is copied to the outbox and will be
+     * sent by the event loop (so exceptions of the protocol are passed to the error handler)
      * @param data data
-     * @throws IOException if the host cannot be resolved
+     * @throws IOException if the host cannot be resolved (or the outbox is full)
      */
-    @SuppressWarnings("UnnecessaryLocalVariable")
     public void send(IIntArray data) throws IOException {
+        synchronized (batchLock) {
+            flushBatch();
+            int len = data.length();
+            transmit(data.prepend(len % 256).prepend(len / 256));
+        }
+    }
+
+    /**
+     * Coalesces the message with other messages posted within the current frame (the message is copied, so the
+     * caller may reuse it). Coalesced messages are sent as a single SwUDP message by {@link #flush()}, or when there is
+     * no more space (up to {@link #BUF_SIZ_SEND} bytes), or after a short delay, if nobody calls flush()
+     * @param data data
+     * @throws IOException if the host cannot be resolved (or the outbox is full)
+     */
+    public void post(IIntArray data) throws IOException {
+        int len = data.length();
+        synchronized (batchLock) {
+            if (batch.length() + len + 2 > MAX_BATCH_SIZ)
+                flushBatch();
+            if (len + 2 > MAX_BATCH_SIZ) {
+                transmit(data.prepend(len % 256).prepend(len / 256)); // too long to be coalesced
+                return;
+            }
+            if (batch.length() == 0)
+                arm(batchTimer, BATCH_DELAY);
+            batch.add(len / 256).add(len % 256);
+            for (int i = 0; i < len; i++) {
+                batch.add(data.get(i));
+            }
+        }
+    }
+
+    /**
+     * Sends all the coalesced messages (if any) as a single SwUDP message.
+     * <br>This is a frame end hook: it should be called at the end of each frame (e.g. in {@link
+     * com.badlogic.gdx.ApplicationListener#render() render()}), so that exceptions are passed to the error handler
+     */
+    public void flush() {
+        try {
+            synchronized (batchLock) {
+                flushBatch();
+            }
+        } catch (IOException e) {
+            errorHandler.uncaughtException(Thread.currentThread(), e);
+        }
+    }
+
+    /**
+     * Prepends the message with sid, token and flags fields and sends it to the server
+     * @param data data (sequence of length-prefixed messages)
+     * @throws IOException if the host cannot be resolved (or the outbox is full)
+     */
+    @SuppressWarnings("UnnecessaryLocalVariable")
+    private void transmit(IIntArray data) throws IOException {
         // @note uncomment only for debug! if (TMP_NO_CONNECTION) return;
 
         // concatenate a header and data
@@ -169,16 +314,31 @@ public final class Network extends Thread implements IHandler {
         int h3 = (int) ((token >> 16) & 0xFF);
         int h4 = (int) ((token >> 8) & 0xFF);
         int h5 = (int) (token & 0xFF);
-        int h6 = FLAGS;
-        int h7 = data.length() / 256;
-        int h8 = data.length() % 256;
-        data.prepend(h8).prepend(h7).prepend(h6).prepend(h5).prepend(h4).prepend(h3).prepend(h2).prepend(h1)
-                .prepend(h0);
+        int h6 = protocol != null ? FLAGS | protocol.getFlags() : FLAGS;
+        data.prepend(h6).prepend(h5).prepend(h4).prepend(h3).prepend(h2).prepend(h1).prepend(h0);
 
         // sending
-        if (protocol != null)
+        if (channel != null && Thread.currentThread() != this)
+            enqueue(data);
+        else if (protocol != null)
             protocol.send(data);
-        else socket.send(getPacket(data.toByteArray(), data.length()));
+        else sendDatagram(data.toByteArray(), data.length());
+    }
+
+    @Override
+    public void sendDatagram(byte[] data, int length) throws IOException {
+        synchronized (sendLock) {
+            if (channel != null) {
+                sendBuffer.clear();
+                sendBuffer.put(data, 0, length).flip();
+                channel.write(sendBuffer); // if the socket buffer is full, the datagram is dropped (SwUDP will repeat)
+            } else socket.send(getPacket(data, length));
+        }
+    }
+
+    @Override
+    public void schedule(long delayNanos) {
+        arm(protocolTimer, delayNanos);
     }
 
     /**
@@ -191,11 +351,6 @@ public final class Network extends Thread implements IHandler {
         this.token = token;
     }
 
-    /** @return socket */
-    public DatagramSocket getSocket() {
-        return socket;
-    }
-
     /**
      * Sets a new transport protocol for the network
      * @param protocol protocol (may be NULL)
@@ -204,6 +359,243 @@ public final class Network extends Thread implements IHandler {
         this.protocol = protocol;
     }
 
+    /**
+     * Main loop for blocking backend
+     */
+    private void runBlocking() {
+        // protocol timers are fired by a separate timer thread
+        Thread timerThread = new Thread(timer, "Network timer");
+        timerThread.setDaemon(true);
+        timerThread.setUncaughtExceptionHandler(errorHandler);
+        timerThread.start();
+
+        // connect to the server
+        connect();
+
+        // create DatagramPacket OUTSIDE the loop to minimize memory allocations
+        DatagramPacket datagram = new DatagramPacket(recvData.getFillBuffer(BUF_SIZ_RECV), BUF_SIZ_RECV);
+
+        // run infinite loop
+        //noinspection InfiniteLoopStatement
+        while (true) {
+            try {
+                datagram.setData(recvData.getFillBuffer(BUF_SIZ_RECV)); // the array may be reallocated by handlers
+                socket.receive(datagram);
+                process(datagram.getLength());
+            } catch (Exception e) {
+                errorHandler.uncaughtException(this, e);
+            }
+        }
+    }
+
+    /**
+     * Main loop for NIO backend: receives datagrams, sends messages from the outbox and fires protocol timers
+     */
+    private void runEventLoop() {
+        // bind the channel to the server (it may take time to resolve the host, so it's done in the loop thread)
+        while (!channel.isConnected()) {
+            try {
+                channel.connect(new InetSocketAddress(host, port));
+            } catch (Exception e) {
+                errorHandler.uncaughtException(this, e);
+                try {
+                    Thread.sleep(RESOLVE_DELAY);
+                } catch (InterruptedException ignored) {
+                }
+            }
+        }
+
+        // connect to the server
+        connect();
+
+        // run infinite loop
+        //noinspection InfiniteLoopStatement
+        while (true) {
+            try {
+                long timeout = getTimeout();
+                if (timeout > 0)
+                    selector.select(timeout);
+                else if (timeout == 0)
+                    selector.selectNow();
+                else selector.select(); // no timers armed: sleep until a datagram or a message from other threads
+                selector.selectedKeys().clear();
+
+                receive();
+                flushOutbox();
+
+                fireTimers();
+            } catch (Exception e) {
+                errorHandler.uncaughtException(this, e);
+            }
+        }
+    }
+
+    /**
+     * Connects to the server, if the protocol is specified
+     */
+    private void connect() {
+        if (protocol != null) try {
+            protocol.connect();
+        } catch (IOException e) {
+            errorHandler.uncaughtException(null, e);
+        }
+    }
+
+    /**
+     * Sends all the coalesced messages (if any); the caller must hold batchLock
+     * @throws IOException if the host cannot be resolved (or the outbox is full)
+     */
+    private void flushBatch() throws IOException {
+        if (batch.length() > 0) {
+            synchronized (timerLock) {
+                batchTimer.armed = false;
+            }
+            try {
+                transmit(batch);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Arms the given timer (if it is already armed for an earlier time, nothing happens) and wakes up the thread that
+     * waits for the timers
+     * @param timer timer
+     * @param delayNanos delay, in nanoseconds
+     */
+    private void arm(Deadline timer, long delayNanos) {
+        long at = System.nanoTime() + delayNanos;
+        synchronized (timerLock) {
+            if (timer.armed && at - timer.at >= 0)
+                return;
+            timer.armed = true;
+            timer.at = at;
+            timerLock.notify(); // blocking backend: wake the timer thread up
+        }
+        if (channel != null && Thread.currentThread() != this)
+            selector.wakeup();
+    }
+
+    /**
+     * Fires all expired timers (called by the timer thread for blocking backend, or by the event loop for NIO backend)
+     */
+    private void fireTimers() {
+        boolean protocolExpired, batchExpired;
+        synchronized (timerLock) {
+            long now = System.nanoTime();
+            protocolExpired = protocolTimer.expire(now);
+            batchExpired = batchTimer.expire(now);
+        }
+        if (protocolExpired)
+            ticker.run();
+        if (batchExpired)
+            flush();
+    }
+
+    /**
+     * Waits until any of the timers expires (blocking backend only, called by the timer thread)
+     * @throws InterruptedException if the thread is interrupted
+     */
+    private void awaitTimers() throws InterruptedException {
+        synchronized (timerLock) {
+            long delay;
+            while ((delay = getDelay()) != 0) {
+                if (delay > 0)
+                    timerLock.wait(delay / 1000000, (int) (delay % 1000000));
+                else timerLock.wait();
+            }
+        }
+    }
+
+    /**
+     * @return timeout for the selector (NIO backend only), in ms: positive - wait at most this time, 0 - a timer is
+     * already expired, -1 - no timers armed
+     */
+    private long getTimeout() {
+        synchronized (timerLock) {
+            long delay = getDelay();
+            return delay > 0 ? (delay + 999999) / 1000000 : delay; // round up, otherwise we wake up too early
+        }
+    }
+
+    /**
+     * @return delay before the nearest timer expires, in nanoseconds: 0 - a timer is already expired, -1 - no timers
+     * armed; the caller must hold timerLock
+     */
+    private long getDelay() {
+        long now = System.nanoTime();
+        long delay = protocolTimer.getDelay(now);
+        long batchDelay = batchTimer.getDelay(now);
+        return delay < 0 || (batchDelay >= 0 && batchDelay < delay) ? batchDelay : delay;
+    }
+
+    /**
+     * Reads all available datagrams from the channel (NIO backend only)
+     * @throws IOException if IOException occurred
+     */
+    private void receive() throws IOException {
+        while (true) {
+            byte[] data = recvData.getFillBuffer(BUF_SIZ_RECV);
+            if (recvBuffer == null || recvBuffer.array() != data) // the array may be reallocated by handlers
+                recvBuffer = ByteBuffer.wrap(data);
+            recvBuffer.clear();
+            if (channel.read(recvBuffer) <= 0)
+                break;
+            try {
+                process(recvBuffer.position());
+            } catch (Exception e) {
+                errorHandler.uncaughtException(this, e);
+            }
+        }
+    }
+
+    /**
+     * Processes a single received datagram (it is already in the backing array of "recvData")
+     * @param length datagram length
+     * @throws IOException if IOException occurred
+     */
+    private void process(int length) throws IOException {
+        // @note uncomment only for debug! if (TMP_NO_CONNECTION) return;
+        recvData.setFilled(length);
+        if (protocol != null) {
+            if (recvData.length() > 5)
+                log(TRACE, "Recv: ", recvData);
+            protocol.onReceived(recvData);
+        } else onReceived(recvData);
+    }
+
+    /**
+     * Puts a copy of the message to the outbox and wakes the event loop up (NIO backend only)
+     * @param data message
+     * @throws IOException if the outbox is full
+     */
+    private void enqueue(IIntArray data) throws IOException {
+        synchronized (outbox) {
+            if (outboxSize == outbox.length)
+                throw new IOException("Network outbox overflow");
+            outbox[(outboxHead + outboxSize++) % outbox.length].copyFrom(data, data.length());
+        }
+        selector.wakeup();
+    }
+
+    /**
+     * Sends all the messages from the outbox (NIO backend only, called by the event loop)
+     * @throws IOException if IOException occurred
+     */
+    private void flushOutbox() throws IOException {
+        synchronized (outbox) {
+            while (outboxSize > 0) {
+                IIntArray msg = outbox[outboxHead];
+                outboxHead = (outboxHead + 1) % outbox.length;
+                outboxSize--;
+                if (protocol != null)
+                    protocol.send(msg);
+                else sendDatagram(msg.toByteArray(), msg.length());
+            }
+        }
+    }
+
     /**
      * Packs given data to a datagram packet and returns this packet.
      * Method is designed to reduce GC pressure by avoiding "new DatagramPacket" operations
@@ -218,4 +610,35 @@ public final class Network extends Thread implements IHandler {
         else packet.setData(data, 0, length);
         return packet;
     }
+
+    /**
+     * Simple one-shot timer deadline (all the fields are guarded by timerLock)
+     */
+    private static final class Deadline {
+        /** Flag that the timer is armed */
+        boolean armed = false;
+        /** Time when the timer fires, in nanoseconds (valid only if armed) */
+        long at = 0;
+
+        /**
+         * @param now current time, in nanoseconds
+         * @return delay before the timer expires, in nanoseconds (0 - expired, -1 - not armed)
+         */
+        long getDelay(long now) {
+            return armed ? Math.max(at - now, 0) : -1;
+        }
+
+        /**
+         * Disarms the timer, if it has expired
+         * @param now current time, in nanoseconds
+         * @return true, if the timer has expired
+         */
+        boolean expire(long now) {
+            if (armed && now - at >= 0) {
+                armed = false;
+                return true;
+            }
+            return false;
+        }
+    }
 }
@@ -1,27 +1,23 @@
 package ru.mitrakov.self.rush.net;
 
-import java.net.*;
 import java.io.IOException;
 
-import ru.mitrakov.self.rush.GcResistantIntArray;
-import ru.mitrakov.self.rush.utils.collections.IIntArray;
+import ru.mitrakov.self.rush.utils.collections.*;
 
 import static ru.mitrakov.self.rush.net.SwUDP.*;
 
 /**
  * Receiver is the part of SwUDP class (it was extracted to reduce the source file size).
  * This class should have a single instance for each SwUDP instance
+ * <br>If cumulative acks are negotiated (see {@link SwUDP#setCumulativeAck(boolean)}), data messages are not acked one
+ * by one: instead a single Cumulative Ack is sent a tick after the first unacked message (see {@link #flushAck()})
  * <br>Please see SwUDP Protocol (v1.2) for more details
  * @author mitrakov
  */
 @SuppressWarnings("ForLoopReplaceableByForEach")
 class Receiver {
-    /** Datagram Socket */
-    private final DatagramSocket socket;
-    /** Server host (IP address or DNS name) */
-    private final String host;
-    /** Server UDP port */
-    private final int port;
+    /** Datagram transport */
+    private final ITransport transport;
     /** Handler for received messages */
     private final IHandler handler;
     /** Reference to the protocol (only SwUDP supported for now) */
@@ -29,9 +25,7 @@ class Receiver {
     /** Main SwUDP Receive Buffer */
     private final Item[] buffer = new Item[N];
     /** SwUDP Ack message (we're gonna reuse the same message to avoid "new" operations and decrease GC pressure) */
-    private final IIntArray ack = new GcResistantIntArray(5);
-    /** Datagram packet for outgoing messages */
-    private /*final*/ DatagramPacket packet;
+    private final IIntArray ack = new ByteIntArray(CUMULATIVE_ACK_SIZ, this);
 
     // === SwUDP parameters ===
 
@@ -41,28 +35,32 @@ class Receiver {
     boolean connected = false;
     /** SwUDP Pending counter */
     private int pending = 0;
+    /** SwUDP Cumulative acks flag (negotiated with the remote side) */
+    private boolean cumulativeAck = false;
+    /** SwUDP Flag that a Cumulative Ack should be sent */
+    private boolean ackDue = false;
+    /** SwUDP Time when the Cumulative Ack should be sent, in nanoseconds */
+    private long ackDueAt = 0;
+    /** SwUDP crcID for the Cumulative Ack */
+    private int ackCrcid = 0;
 
     // ========================
 
     /**
      * Creates a new instance of Receiver
-     * @param socket UDP-socket
-     * @param host host (IP-address or host name)
-     * @param port port
+     * @param transport datagram transport
      * @param handler handler to process incoming messages
      * @param protocol transport protocol (in our case, SwUDP)
      */
-    Receiver(DatagramSocket socket, String host, int port, IHandler handler, IProtocol protocol) {
-        assert socket != null && host != null && 0 < port && port < 65536 && handler != null && protocol != null;
-        this.socket = socket;
-        this.host = host;
-        this.port = port;
+    Receiver(ITransport transport, IHandler handler, IProtocol protocol) {
+        assert transport != null && handler != null && protocol != null;
+        this.transport = transport;
         this.handler = handler;
         this.protocol = protocol;
 
         // create all 256 items RIGHT AWAY (to avoid dynamic memory allocations)
         for (int i = 0; i < N; i++) {
-            buffer[i] = new Item();
+            buffer[i] = new Item(null); // items are confined to the Network thread
         }
     }
 
@@ -74,67 +72,107 @@ class Receiver {
      * @throws IOException if IOException occurred
      */
     void onMsg(int id, int crcid, IIntArray msg) throws IOException {
-        ack.clear();
-        ack.add(id).add((crcid >> 24) & 0xFF).add((crcid >> 16) & 0xFF).add((crcid >> 8) & 0xFF).add(crcid & 0xFF);
-        if (id == SYN) {
-            socket.send(getPacket(ack.toByteArray(), ack.length()));
-            for (int j = 0; j < buffer.length; j++) {
-                buffer[j].clear();
-            }
-            expected = next(id);
-            connected = true;
-            pending = 0;
-            protocol.onReceiverConnected();
-        } else if (connected) {
-            socket.send(getPacket(ack.toByteArray(), ack.length()));
-            if (id == expected) {
-                handler.onReceived(msg);
+        // messages are delivered to the handler outside the lock, so that the handler can't block timers and senders
+        boolean deliver = false;
+        int from = 0, to = 0;
+        synchronized (this) {
+            ack.clear();
+            ack.add(id).add((crcid >> 24) & 0xFF).add((crcid >> 16) & 0xFF).add((crcid >> 8) & 0xFF).add(crcid & 0xFF);
+            if (id == SYN) {
+                transport.sendDatagram(ack.toByteArray(), ack.length());
+                for (int j = 0; j < buffer.length; j++) {
+                    buffer[j].clear();
+                }
                 expected = next(id);
+                connected = true;
                 pending = 0;
-                accept();
-            } else if (after(id, expected)) {
-                if (++pending < MAX_PENDING) {
-                    buffer[id].exists = true;
-                    buffer[id].msg.copyFrom(msg, msg.length());
-                } else {
-                    connected = false;
-                    for (int j = 0; j < buffer.length; j++) {
-                        buffer[j].clear();
+                protocol.onReceiverConnected();
+            } else if (connected) {
+                if (cumulativeAck) {
+                    if (!ackDue) {
+                        ackDue = true;
+                        ackDueAt = System.nanoTime() + PERIOD_NS;
+                        transport.schedule(PERIOD_NS);
+                    }
+                    ackCrcid = crcid;
+                } else transport.sendDatagram(ack.toByteArray(), ack.length());
+                if (id == expected) {
+                    deliver = true;
+                    from = next(id);
+                    to = from;
+                    while (buffer[to].exists) { // buffered messages that are now in order
+                        to = next(to);
                     }
-                    protocol.connectionFailed();
+                    expected = to;
+                    pending = 0;
+                } else if (after(id, expected) && !buffer[id].exists) { // skip duplicates (e.g. selective retransmits)
+                    if (++pending < MAX_PENDING) {
+                        buffer[id].exists = true;
+                        buffer[id].msg.copyFrom(msg, msg.length());
+                    } else {
+                        connected = false;
+                        for (int j = 0; j < buffer.length; j++) {
+                            buffer[j].clear();
+                        }
+                        protocol.connectionFailed();
+                    }
+                }
+            } else {
+                ack.clear().add(ERRACK);
+                ack.add((crcid >> 24) & 0xFF).add((crcid >> 16) & 0xFF).add((crcid >> 8) & 0xFF).add(crcid & 0xFF);
+                transport.sendDatagram(ack.toByteArray(), ack.length());
+            }
+        }
+
+        if (deliver) {
+            // buffered items are touched only by the Network thread, so they may be delivered without the lock
+            try {
+                handler.onReceived(msg);
+                for (; from != to; from = next(from)) {
+                    handler.onReceived(buffer[from].msg);
+                    buffer[from].clear();
+                }
+            } finally {
+                for (; from != to; from = next(from)) { // if the handler failed, drop the rest (they are accepted)
+                    buffer[from].clear();
                 }
             }
-        } else {
-            ack.clear().add(ERRACK);
-            ack.add((crcid >> 24) & 0xFF).add((crcid >> 16) & 0xFF).add((crcid >> 8) & 0xFF).add(crcid & 0xFF);
-            socket.send(getPacket(ack.toByteArray(), ack.length()));
         }
     }
 
     /**
-     * Transmits the successful packet to the handler and removes it from the buffer
+     * Sends a single Cumulative Ack for all the messages received since the previous Cumulative Ack (if any).
+     * Cumulative Ack consists of: frame type ({@link SwUDP#CUMULATIVE_ACK}), crcID, ID of the last message received in
+     * order and a bitmap, where bit K is set, if the (K+1)-th message after that ID is received out of order
+     * (MAX_PENDING < 8, so a single byte is enough).
+     * Called by timer procedure; if the Cumulative Ack is not due yet, the timer is re-armed
+     * @throws IOException if IOException occurred
      */
-    private void accept() {
-        if (buffer[expected].exists) {
-            handler.onReceived(buffer[expected].msg);
-            buffer[expected].clear();
-            expected = next(expected);
-            accept();
+    synchronized void flushAck() throws IOException {
+        if (ackDue && connected) {
+            long delay = ackDueAt - System.nanoTime();
+            if (delay > 0) {
+                transport.schedule(delay);
+                return;
+            }
+            int cumAck = prev(expected);
+            int bitmap = 0;
+            for (int k = 0, i = expected; k < 8; k++, i = next(i)) {
+                if (buffer[i].exists)
+                    bitmap |= 1 << k;
+            }
+            ack.clear().add(CUMULATIVE_ACK).add((ackCrcid >> 24) & 0xFF).add((ackCrcid >> 16) & 0xFF)
+                    .add((ackCrcid >> 8) & 0xFF).add(ackCrcid & 0xFF).add(cumAck).add(bitmap);
+            transport.sendDatagram(ack.toByteArray(), ack.length());
         }
+        ackDue = false;
     }
 
     /**
-     * Packs given data to a datagram packet and returns this packet.
-     * Method is designed to reduce GC pressure by avoiding "new DatagramPacket" operations
-     * @param data data
-     * @param length data length
-     * @return ready to send datagram packet
-     * @throws UnknownHostException if the host cannot be resolved
+     * Switches cumulative acks on/off
+     * @param value true to use cumulative acks (the remote side must support them)
      */
-    private DatagramPacket getPacket(byte[] data, int length) throws UnknownHostException {
-        if (packet == null)
-            packet = new DatagramPacket(data, length, InetAddress.getByName(host), port);
-        else packet.setData(data, 0, length);
-        return packet;
+    synchronized void setCumulativeAck(boolean value) {
+        cumulativeAck = value;
     }
 }
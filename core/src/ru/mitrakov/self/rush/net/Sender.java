@@ -1,10 +1,9 @@
 package ru.mitrakov.self.rush.net;
 
-import java.net.*;
+import java.net.ConnectException;
 import java.io.IOException;
 
-import ru.mitrakov.self.rush.*;
-import ru.mitrakov.self.rush.utils.collections.IIntArray;
+import ru.mitrakov.self.rush.utils.collections.*;
 
 import static java.lang.Math.*;
 import static ru.mitrakov.self.rush.net.SwUDP.*;
@@ -13,25 +12,27 @@ import static ru.mitrakov.self.rush.utils.SimpleLogger.*;
 /**
  * Sender is the part of SwUDP class (it was extracted to reduce the source file size).
  * This class should have a single instance for each SwUDP instance
+ * <br>Sender works in one of 2 modes:
+ * <ul>
+ *     <li>classic mode: only the first unacked message is retransmitted (and used for RTT measurement);
+ *     <li>windowed mode (negotiated, see {@link SwUDP#setWindow(int)}): up to <i>window</i> messages may be unacked,
+ *     and each of them has its own retransmission timer (selective retransmit); other messages wait in the buffer.
+ * </ul>
+ * Retransmission timers are armed through {@link ITransport#schedule(long)} only while there are unacked messages, at
+ * their exact due time; RTT is measured in nanoseconds (though SRTT, RTTVAR and RTO are expressed in ticks)
  * <br>Please see SwUDP Protocol (v1.2) for more details
  * @author mitrakov
  */
 @SuppressWarnings("ForLoopReplaceableByForEach")
 class Sender {
-    /** Datagram Socket */
-    private final DatagramSocket socket;
-    /** Server host (IP address or DNS name) */
-    private final String host;
-    /** Server UDP port */
-    private final int port;
+    /** Datagram transport */
+    private final ITransport transport;
     /** Reference to the protocol (only SwUDP supported for now) */
     private final IProtocol protocol;
     /** Main SwUDP Send Buffer */
     private final Item[] buffer = new Item[N];
     /** Start message for SwUDP (created only once to decrease GC pressure) */
-    private final IIntArray startMsg = new GcResistantIntArray(6);
-    /** Datagram packet for outgoing messages */
-    private /*final*/ DatagramPacket packet;
+    private final IIntArray startMsg = new ByteIntArray(6, this);
 
     // === SwUDP parameters ===
 
@@ -39,12 +40,20 @@ class Sender {
     private int id = 0;
     /** SwUDP Expected Ack */
     private int expectedAck = 0;
-    /** SwUDP Total ticks counter */
-    private int totalTicks = 0;
     /** SwUDP Crypto Random Connection ID */
     private int crcid = 0;
+    /** SwUDP Window size (1 means classic mode, see {@link SwUDP#setWindow(int)}) */
+    private int window = 1;
     /** SwUDP Smoothed Round Trip Time, in ticks (see SwUDP protocol for more details) */
-    float srtt = .0f;
+    volatile float srtt = .0f;
+    /** SwUDP Round Trip Time variation, in ticks */
+    volatile float rttvar = .0f;
+    /** SwUDP Retransmission Timeout (before backoff), in ticks */
+    volatile float rto = .0f;
+    /** SwUDP Retransmission Timeout estimation policy */
+    volatile RtoPolicy rtoPolicy = RtoPolicy.CLASSIC;
+    /** SwUDP Flag that at least one RTT sample has been taken since the connection established */
+    private boolean rttSampled = false;
     /** SwUDP Connection flag */
     volatile boolean connected = false; // volatile needed (by FindBugs)
 
@@ -52,33 +61,18 @@ class Sender {
 
     /**
      * Creates a new instance of Sender
-     * @param psObject Platform Specific Object
-     * @param socket UDP-socket
-     * @param host host (IP-address or host name)
-     * @param port port
+     * @param transport datagram transport
      * @param protocol transport protocol (in our case, SwUDP)
      */
-    Sender(PsObject psObject, DatagramSocket socket, String host, int port, IProtocol protocol) {
-        assert psObject != null && socket != null && host != null && 0 < port && port < 65536 && protocol != null;
-        this.socket = socket;
-        this.host = host;
-        this.port = port;
+    Sender(ITransport transport, IProtocol protocol) {
+        assert transport != null && protocol != null;
+        this.transport = transport;
         this.protocol = protocol;
 
         // create all 256 items RIGHT AWAY (to avoid dynamic memory allocations)
         for (int i = 0; i < N; i++) {
-            buffer[i] = new Item();
+            buffer[i] = new Item(this); // items are accessed by both the caller and timer threads under "this" lock
         }
-
-        psObject.runDaemon(PERIOD, PERIOD, new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    trigger();
-                } catch (IOException ignored) {
-                }
-            }
-        });
     }
 
     /**
@@ -90,7 +84,10 @@ class Sender {
         crcid = crc_id;
         id = expectedAck = SYN;
         srtt = DEFAULT_SRTT;
-        totalTicks = 0;
+        rttvar = DEFAULT_SRTT / 2;
+        rto = rtoPolicy == RtoPolicy.CLASSIC ? AC * srtt : srtt + RTO_K * rttvar;
+        rttSampled = false;
+        window = 1; // the remote side may change, so wait for its flags again
         connected = false;
 
         for (int j = 0; j < buffer.length; j++) {
@@ -100,28 +97,46 @@ class Sender {
                 .add(crcid & 0xFF).add(0xFD); // FD = fake data
         buffer[id].exists = true;
         buffer[id].msg = startMsg;
-        log("Send: ", startMsg);
-        socket.send(getPacket(startMsg.toByteArray(), startMsg.length()));
+        transmit(buffer[id], System.nanoTime());
     }
 
     /**
      * Sends the given message to the remote SwUDP receiver
      * @param msg message
-     * @throws IOException if IOException occurred
+     * @throws IOException if IOException occurred (or if there are too many unacked messages)
      */
     synchronized void send(IIntArray msg) throws IOException {
         if (connected) {
+            if (buffer[next(id)].exists) // all IDs are in use: don't overwrite unacked messages
+                throw new IOException("SwUDP send buffer overflow");
             id = next(id);
             msg.prepend(crcid & 0xFF).prepend((crcid >> 8) & 0xFF).prepend((crcid >> 16) & 0xFF)
                     .prepend((crcid >> 24) & 0xFF).prepend(id);
             buffer[id].exists = true;
-            buffer[id].startRtt = totalTicks;
             buffer[id].msg.copyFrom(msg, msg.length());
-            log("Send: ", msg);
-            socket.send(getPacket(msg.toByteArray(), msg.length()));
+            if (window == 1 || inWindow(id))
+                transmit(buffer[id], System.nanoTime());
+            // else the message will be transmitted as soon as the window slides (see acknowledge() and onTimer())
         } else throw new ConnectException("Not connected");
     }
 
+    /**
+     * Sets the window size (1 means classic mode)
+     * <br>Messages deferred by the old window are transmitted right away, if the new mode allows it (e.g. if the
+     * window shrinks to 1, classic mode would never transmit them, because it only repeats the messages already sent)
+     * @param window window size
+     * @throws IOException if IOException occurred
+     */
+    synchronized void setWindow(int window) throws IOException {
+        assert 0 < window && window <= MAX_PENDING;
+        if (this.window != window) {
+            log("SwUDP window = ", window);
+            this.window = window;
+            if (connected)
+                transmitDeferred(System.nanoTime());
+        }
+    }
+
     /**
      * Callback on Ack packet received
      * @param ack Ack packet from the remote SwUDP receiver
@@ -129,15 +144,7 @@ class Sender {
      */
     synchronized void onAck(int ack) throws IOException {
         log("SRTT = ", srtt);
-        if (buffer[ack].exists) {
-            buffer[ack].ack = true;
-            if (ack == expectedAck) {
-                int rtt = totalTicks - buffer[ack].startRtt + 1;
-                float newSrtt = RC * srtt + (1 - RC) * rtt;
-                srtt = min(max(newSrtt, MIN_SRTT), MAX_SRTT);
-                accept();
-            }
-        }
+        acknowledge(ack);
         if (ack == SYN) {
             connected = true;
             protocol.onSenderConnected();
@@ -150,6 +157,95 @@ class Sender {
         }
     }
 
+    /**
+     * Callback on Cumulative Ack packet received (see {@link Receiver#flushAck()})
+     * @param cumAck ID of the last message received in order (all the messages up to this one are acked)
+     * @param bitmap bit K is set, if the (K+1)-th message after cumAck is received out of order
+     * @throws IOException if IOException occurred
+     */
+    synchronized void onAck(int cumAck, int bitmap) throws IOException {
+        log("SRTT = ", srtt);
+        // IDs wrap around, so a late ack may refer to a reused slot: only IDs from expectedAck to id are acked
+        if (isInFlight(cumAck)) { // otherwise all the messages up to cumAck are already accepted (stale ack)
+            for (int i = expectedAck; i != cumAck; i = next(i)) {
+                acknowledge(i);
+            }
+            acknowledge(cumAck);
+        }
+        for (int k = 0, i = next(cumAck); k < 8; k++, i = next(i)) {
+            if ((bitmap & (1 << k)) != 0 && isInFlight(i))
+                acknowledge(i);
+        }
+    }
+
+    /**
+     * @param n SwUDP ID
+     * @return true, if the message with the given ID is sent and not accepted yet, i.e. it is within the range from
+     * the expected Ack to the last ID
+     */
+    private boolean isInFlight(int n) {
+        if (n == SYN || n == ERRACK)
+            return false;
+        int i = expectedAck;
+        for (int k = 0; k < N && buffer[i].exists; k++, i = next(i)) {
+            if (i == n)
+                return true;
+            if (i == id)
+                break;
+        }
+        return false;
+    }
+
+    /**
+     * Marks the message with the given ID as acked, and accepts it, if it is the expected one
+     * @param ack SwUDP ID
+     * @throws IOException if IOException occurred
+     */
+    private void acknowledge(int ack) throws IOException {
+        if (buffer[ack].exists && !buffer[ack].ack) {
+            long now = System.nanoTime();
+            float rtt = (float) (now - buffer[ack].sentAt) / PERIOD_NS;
+            buffer[ack].ack = true;
+            if (rtoPolicy == RtoPolicy.CLASSIC) {
+                if (ack == expectedAck || window > 1)
+                    onRtt(rtt);
+            } else if (buffer[ack].attempt <= 1) // Karn's rule: don't take samples from repeated messages
+                onRtt(rtt);
+            if (ack == expectedAck) {
+                accept();
+                if (window > 1)
+                    transmitWindow(now);
+                else if (buffer[expectedAck].exists && buffer[expectedAck].sent) {
+                    // classic mode: the retransmission timer of the new head starts right now
+                    buffer[expectedAck].repeatAt = now + getRepeatDelay(buffer[expectedAck].attempt);
+                    arm(buffer[expectedAck], now);
+                }
+            }
+        }
+    }
+
+    /**
+     * Updates SRTT, RTTVAR and RTO with a new RTT sample according to the current RTO policy
+     * @param rtt Round Trip Time sample, in ticks (fractional)
+     */
+    private void onRtt(float rtt) {
+        if (rtoPolicy == RtoPolicy.CLASSIC) {
+            rttvar = (1 - RTT_BETA) * rttvar + RTT_BETA * abs(srtt - rtt); // informational only
+            srtt = min(max(RC * srtt + (1 - RC) * rtt, MIN_SRTT), MAX_SRTT);
+            rto = AC * srtt;
+        } else {
+            if (rttSampled) {
+                rttvar = (1 - RTT_BETA) * rttvar + RTT_BETA * abs(srtt - rtt);
+                srtt = (1 - RTT_ALPHA) * srtt + RTT_ALPHA * rtt;
+            } else {
+                srtt = rtt;
+                rttvar = rtt / 2f;
+            }
+            rto = min(max(srtt + max(1, RTO_K * rttvar), MIN_RTO), MAX_RTO);
+        }
+        rttSampled = true;
+    }
+
     /**
      * Accepts expected Ack and removes the corresponding message from the buffer
      */
@@ -164,46 +260,132 @@ class Sender {
     }
 
     /**
-     * Called by timer procedure, that tries to retransmit non-Acked packets to the remote SwUDP receiver
+     * Called by the transport timer (see {@link ITransport#schedule(long)}), retransmits non-Acked packets, whose
+     * retransmission timers expired, to the remote SwUDP receiver, and re-arms the timer for the others
      * @throws IOException if IOException occurred
      */
-    private synchronized void trigger() throws IOException {
-        totalTicks++;
-        int i = expectedAck;
-        if (buffer[i].exists && !buffer[i].ack) {
-            if (buffer[i].attempt > MAX_ATTEMPTS) {
-                connected = false;
-                for (int j = 0; j < buffer.length; j++) {
-                    buffer[j].clear();
-                }
-                protocol.connectionFailed();
-                return;
-            } else if (buffer[i].ticks == buffer[i].nextRepeat) {
-                buffer[i].attempt++;
-                buffer[i].nextRepeat += AC * srtt * buffer[i].attempt;
-                if (buffer[i].attempt > 1) {
-                    log("REPEAT ", buffer[i].attempt);
-                    IIntArray msg = buffer[i].msg; // already contains "crcid" and "id"
-                    buffer[i].startRtt = totalTicks;
-                    socket.send(getPacket(msg.toByteArray(), msg.length()));
+    synchronized void onTimer() throws IOException {
+        long now = System.nanoTime();
+        if (window > 1) {
+            // windowed mode: each message in the window has its own retransmission timer
+            int i = expectedAck;
+            for (int k = 0; k < window && buffer[i].exists; k++, i = next(i)) {
+                if (!buffer[i].sent)
+                    transmit(buffer[i], now);
+                if (!check(buffer[i], now))
+                    return;
+            }
+        } else check(buffer[expectedAck], now);
+    }
+
+    /**
+     * Checks the retransmission timer of the given item: retransmits the item, if the timer expired, and re-arms it
+     * @param item item
+     * @param now current time, in nanoseconds
+     * @return false, if the item exceeded MAX_ATTEMPTS and the connection has been closed
+     * @throws IOException if IOException occurred
+     */
+    private boolean check(Item item, long now) throws IOException {
+        if (item.exists && item.sent && !item.ack) {
+            if (now - item.repeatAt >= 0) {
+                if (item.attempt > MAX_ATTEMPTS) {
+                    connected = false;
+                    for (int j = 0; j < buffer.length; j++) {
+                        buffer[j].clear();
+                    }
+                    protocol.connectionFailed();
+                    return false;
                 }
+                item.attempt++;
+                item.sentAt = now;
+                item.repeatAt = now + getRepeatDelay(item.attempt);
+                log(TRACE, "REPEAT ", item.attempt);
+                IIntArray msg = item.msg; // already contains "crcid" and "id"
+                transport.sendDatagram(msg.toByteArray(), msg.length());
             }
-            buffer[i].ticks++;
+            arm(item, now);
+        }
+        return true;
+    }
+
+    /**
+     * Transmits the given item for the first time and arms its retransmission timer
+     * @param item item (must contain "crcid" and "id")
+     * @param now current time, in nanoseconds
+     * @throws IOException if IOException occurred
+     */
+    private void transmit(Item item, long now) throws IOException {
+        IIntArray msg = item.msg; // send the buffered copy: it starts at index 0, so no copy is needed
+        item.sent = true;
+        item.attempt = 1;
+        item.sentAt = now;
+        item.repeatAt = now + getRepeatDelay(1);
+        log(TRACE, "Send: ", msg);
+        transport.sendDatagram(msg.toByteArray(), msg.length());
+        arm(item, now);
+    }
+
+    /**
+     * Transmits deferred items that got into the window after it slid (used only in windowed mode)
+     * @param now current time, in nanoseconds
+     * @throws IOException if IOException occurred
+     */
+    private void transmitWindow(long now) throws IOException {
+        int i = expectedAck;
+        for (int k = 0; k < window && buffer[i].exists; k++, i = next(i)) {
+            if (!buffer[i].sent)
+                transmit(buffer[i], now);
+        }
+    }
+
+    /**
+     * Transmits deferred items after the window size has changed: in windowed mode only the items within the window
+     * are transmitted, and in classic mode all of them (classic mode doesn't defer messages)
+     * @param now current time, in nanoseconds
+     * @throws IOException if IOException occurred
+     */
+    private void transmitDeferred(long now) throws IOException {
+        if (window > 1) {
+            transmitWindow(now);
+            return;
+        }
+        int i = expectedAck;
+        for (int k = 0; k < N && buffer[i].exists; k++, i = next(i)) {
+            if (!buffer[i].sent)
+                transmit(buffer[i], now);
         }
     }
 
     /**
-     * Packs given data to a datagram packet and returns this packet.
-     * Method is designed to reduce GC pressure by avoiding "new DatagramPacket" operations
-     * @param data data
-     * @param length data length
-     * @return ready to send datagram packet
-     * @throws UnknownHostException if the host cannot be resolved
+     * Arms the transport timer for the retransmission timer of the given item
+     * @param item item
+     * @param now current time, in nanoseconds
      */
-    private DatagramPacket getPacket(byte[] data, int length) throws UnknownHostException {
-        if (packet == null)
-            packet = new DatagramPacket(data, length, InetAddress.getByName(host), port);
-        else packet.setData(data, 0, length);
-        return packet;
+    private void arm(Item item, long now) {
+        transport.schedule(max(item.repeatAt - now, 0));
+    }
+
+    /**
+     * @param attempt number of the attempt that has just been made (1 for the first transmission)
+     * @return delay before the next attempt according to the current RTO policy, in nanoseconds
+     */
+    private long getRepeatDelay(int attempt) {
+        float ticks = rtoPolicy == RtoPolicy.CLASSIC
+                ? AC * srtt * attempt
+                : min(rto * (1 << min(attempt - 1, 16)), MAX_RTO); // exponential backoff
+        return (long) (ticks * PERIOD_NS);
+    }
+
+    /**
+     * @param n SwUDP ID
+     * @return true, if the message with the given ID is within the window (counting from the expected Ack)
+     */
+    private boolean inWindow(int n) {
+        int i = expectedAck;
+        for (int k = 0; k < window; k++, i = next(i)) {
+            if (i == n)
+                return true;
+        }
+        return false;
     }
 }
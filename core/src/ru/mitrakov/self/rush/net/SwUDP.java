@@ -1,11 +1,9 @@
 package ru.mitrakov.self.rush.net;
 
-import java.net.*;
 import java.util.UUID;
 import java.io.IOException;
 
-import ru.mitrakov.self.rush.*;
-import ru.mitrakov.self.rush.utils.collections.IIntArray;
+import ru.mitrakov.self.rush.utils.collections.*;
 
 import static ru.mitrakov.self.rush.utils.SimpleLogger.*;
 import static ru.mitrakov.self.rush.net.Network.BUF_SIZ_SEND;
@@ -22,10 +20,19 @@ public class SwUDP implements IProtocol {
     final static int SYN = 0;
     /** SwUDP Error Ack */
     final static int ERRACK = 1;
+    /**
+     * SwUDP Cumulative Ack frame type: ERRACK ID is never used for data messages, so a datagram with ERRACK ID and a
+     * payload is a Cumulative Ack (ERRACK + crcid + cumAck + bitmap, see {@link Receiver#flushAck()})
+     */
+    final static int CUMULATIVE_ACK = ERRACK;
+    /** SwUDP Cumulative Ack frame length */
+    final static int CUMULATIVE_ACK_SIZ = 7;
     /** SwUDP Maximum send attempts count */
     final static int MAX_ATTEMPTS = 9;
-    /** SwUDP Tick duration, in ms */
+    /** SwUDP Tick duration, in ms (it is used as a unit for RTT values and as a period to coalesce acks) */
     final static int PERIOD = 10;
+    /** SwUDP Tick duration, in nanoseconds */
+    final static long PERIOD_NS = PERIOD * 1000000L;
     /** SwUDP Maximum of pending messages to store in receiver buffer in case of packet loss */
     final static int MAX_PENDING = 5;
     /** SwUDP Minimum threshold for Smoothed Round Trip Time, in ticks */
@@ -38,6 +45,39 @@ public class SwUDP implements IProtocol {
     final static float RC = .8f;
     /** SwUDP Assurance coefficient */
     final static float AC = 2.2f;
+    /** SwUDP Jacobson/Karels SRTT gain (alpha) */
+    final static float RTT_ALPHA = .125f;
+    /** SwUDP Jacobson/Karels RTTVAR gain (beta) */
+    final static float RTT_BETA = .25f;
+    /** SwUDP Jacobson/Karels RTTVAR multiplier (K) */
+    final static float RTO_K = 4f;
+    /** SwUDP Minimum Retransmission Timeout for Jacobson/Karels policy, in ticks */
+    final static float MIN_RTO = 2f;
+    /** SwUDP Maximum Retransmission Timeout for Jacobson/Karels policy (after exponential backoff), in ticks */
+    final static float MAX_RTO = 100f;
+    /** SwUDP Default window size for windowed mode (it must not exceed the remote receiver's MAX_PENDING) */
+    final static int DEFAULT_WINDOW = MAX_PENDING;
+    /** SwUDP Flag "windowed mode supported" (advertised in the Network header flags, see {@link #getFlags()}) */
+    final static int FLAG_WINDOW = 0x01;
+    /** SwUDP Flag "cumulative acks supported" (advertised in the Network header flags, see {@link #getFlags()}) */
+    final static int FLAG_CUMULATIVE_ACK = 0x02;
+
+    /**
+     * Retransmission Timeout (RTO) estimation policy
+     * @author mitrakov
+     */
+    public enum RtoPolicy {
+        /**
+         * Classic SwUDP policy: clamped EWMA of RTT (see {@link #RC}, {@link #MIN_SRTT}, {@link #MAX_SRTT}), the
+         * message is repeated in <i>AC * SRTT * attempt</i> ticks
+         */
+        CLASSIC,
+        /**
+         * Jacobson/Karels policy (RFC 6298): RTO = SRTT + K * RTTVAR, with Karn's rule (RTT samples from repeated
+         * messages are ignored) and exponential backoff on each repeat
+         */
+        JACOBSON_KARELS
+    }
 
     /**
      * Single message item.
@@ -49,21 +89,29 @@ public class SwUDP implements IProtocol {
         boolean exists = false;
         /** SwUDP Ack flag */
         boolean ack = false;
-        /** SwUDP Start Round Trip Time, in global ticks */
-        int startRtt = 0;
-        /** SwUDP Ticks counter for this item */
-        int ticks = 0;
+        /** SwUDP Time of the last transmission (to measure Round Trip Time), in nanoseconds */
+        long sentAt = 0;
         /** SwUDP Attempt to send */
         int attempt = 0;
-        /** SwUDP Next repeat time, in ticks */
-        int nextRepeat = 0;
+        /** SwUDP Next repeat time, in nanoseconds */
+        long repeatAt = 0;
+        /** SwUDP Transmission flag (used only in windowed mode, where messages beyond the window are deferred) */
+        boolean sent = false;
         /** SwUDP Message body */
-        IIntArray msg = new GcResistantIntArray(BUF_SIZ_SEND);
+        IIntArray msg;
+
+        /**
+         * Creates a new Item
+         * @param guard object whose monitor guards the message body (NULL, if the item is confined to a single thread)
+         */
+        Item(Object guard) {
+            msg = new ByteIntArray(BUF_SIZ_SEND, guard);
+        }
 
         /** Resets the internal state (designed specially to get it reusable and reduce GC pressure) */
         void clear() {
-            exists = ack = false;
-            startRtt = ticks = attempt = nextRepeat = 0;
+            exists = ack = sent = false;
+            sentAt = repeatAt = attempt = 0;
             msg.clear();
         }
     }
@@ -78,6 +126,16 @@ public class SwUDP implements IProtocol {
         return ok ? result : next(result);
     }
 
+    /**
+     * @param n current SwUDP ID
+     * @return previous SwUDP ID (number in range 2-255)
+     */
+    static int prev(int n) {
+        int result = (n - 1 + N) % N;
+        boolean ok = result != SYN && result != ERRACK;
+        return ok ? result : prev(result);
+    }
+
     /**
      * @param x SwUDP ID1
      * @param y SwUDP ID2
@@ -93,26 +151,32 @@ public class SwUDP implements IProtocol {
     private final Receiver receiver;
     /** Handler to process received messages */
     private final IHandler handler;
+    /** Window size for windowed mode (1 means that windowed mode is switched off) */
+    private volatile int window = DEFAULT_WINDOW;
+    /** Cumulative acks flag (FALSE means that each message is acked by a separate datagram) */
+    private volatile boolean cumulativeAck = true;
+    /** Flags of the remote side applied last time (-1 means that they should be applied again) */
+    private volatile int remoteFlags = -1;
 
     /**
-     * Creates a new SwUDP protocol implementation
-     * @param psObject Platform Specific Object
-     * @param socket UDP-socket
-     * @param host Server host (IP-address or host name)
-     * @param port Server UDP port
+     * Creates a new SwUDP protocol implementation.
+     * <br>Please note that the transport owner must call {@link #onTimer()} when requested by
+     * {@link ITransport#schedule(long)}
+     * @param transport datagram transport
      * @param handler handler to process incoming messages
      */
-    public SwUDP(PsObject psObject, DatagramSocket socket, String host, int port, IHandler handler) {
-        assert psObject != null && socket != null && host != null && handler != null && 0 < port && port < 65536;
+    public SwUDP(ITransport transport, IHandler handler) {
+        assert transport != null && handler != null;
         this.handler = handler;
-        sender = new Sender(psObject, socket, host, port, this);
-        receiver = new Receiver(socket, host, port, handler, this);
+        sender = new Sender(transport, this);
+        receiver = new Receiver(transport, handler, this);
     }
 
     @Override
     public void connect() throws IOException {
         UUID uuid = UUID.randomUUID(); // don't use usual Random! Only SecureRandom
         int crcid = (int) (uuid.getLeastSignificantBits() + uuid.getMostSignificantBits());
+        remoteFlags = -1; // Sender switches to classic mode on connecting, so wait for the remote flags again
         sender.connect(crcid);
     }
 
@@ -128,11 +192,24 @@ public class SwUDP implements IProtocol {
         int crcid = (data.get(1) << 24) | (data.get(2) << 16) | (data.get(3) << 8) | (data.get(4));
         if (data.length() == 5) // Ack (id + crcid)
             sender.onAck(id);
-        else if (data.length() > 5)
+        else if (id == CUMULATIVE_ACK) { // Cumulative Ack (frame type + crcid + cumAck + bitmap)
+            if (data.length() != CUMULATIVE_ACK_SIZ)
+                throw new IOException("Incorrect cumulative ack length");
+            sender.onAck(data.get(5), data.get(6));
+        } else if (data.length() > 5)
             receiver.onMsg(id, crcid, data.remove(0, 5));
         else throw new IOException("Incorrect message length");
     }
 
+    @Override
+    public void onTimer() throws IOException {
+        try {
+            sender.onTimer();
+        } finally {
+            receiver.flushAck();
+        }
+    }
+
     @Override
     public void onSenderConnected() {
         log("", "Sender connected!");
@@ -146,7 +223,7 @@ public class SwUDP implements IProtocol {
 
     @Override
     public void connectionFailed() {
-        log("", "Connection failed!");
+        log(ERROR, "", "Connection failed!");
         handler.onChanged(false);
     }
 
@@ -155,8 +232,73 @@ public class SwUDP implements IProtocol {
         return sender.connected && receiver.connected;
     }
 
+    @Override
+    public int getFlags() {
+        return (window > 1 ? FLAG_WINDOW : 0) | (cumulativeAck ? FLAG_CUMULATIVE_ACK : 0);
+    }
+
+    @Override
+    public void onFlags(int flags) throws IOException {
+        // flags come with each message, but they are applied only if changed (or if local settings changed)
+        if (flags != remoteFlags) {
+            remoteFlags = flags;
+            // windowed mode and cumulative acks are used only if both sides support them (old servers never set flags)
+            sender.setWindow((flags & FLAG_WINDOW) != 0 ? window : 1);
+            receiver.setCumulativeAck(cumulativeAck && (flags & FLAG_CUMULATIVE_ACK) != 0);
+        }
+    }
+
+    /**
+     * Switches cumulative acks on/off. If on, the receiver doesn't ack each message by a separate datagram; instead it
+     * sends a single Cumulative Ack per tick: ID of the last message received in order + a bitmap of messages received
+     * out of order. Cumulative acks are used only if the remote side supports them too
+     * @param value true to use cumulative acks
+     */
+    public void setCumulativeAck(boolean value) {
+        cumulativeAck = value;
+        remoteFlags = -1; // apply on the next message
+        if (!value)
+            receiver.setCumulativeAck(false);
+    }
+
+    /**
+     * Sets the window size for windowed mode: up to <b>window</b> messages may be unacked at the same time, and each
+     * of them is retransmitted by its own timer. Windowed mode is used only if the remote side supports it too;
+     * otherwise the old mode (retransmission of the first unacked message only) is used
+     * @param window window size (1 to switch windowed mode off; must not exceed MAX_PENDING of the remote receiver)
+     * @throws IOException if IOException occurred (deferred messages are transmitted, if the window shrinks to 1)
+     */
+    public void setWindow(int window) throws IOException {
+        if (window < 1 || window > MAX_PENDING)
+            throw new IllegalArgumentException("Incorrect window size: " + window);
+        this.window = window;
+        remoteFlags = -1; // apply on the next message
+        if (window == 1)
+            sender.setWindow(1);
+    }
+
+    /**
+     * Sets the Retransmission Timeout estimation policy (default is CLASSIC)
+     * @param policy policy (NON-NULL)
+     */
+    public void setRtoPolicy(RtoPolicy policy) {
+        if (policy == null)
+            throw new IllegalArgumentException("RTO policy is NULL");
+        sender.rtoPolicy = policy;
+    }
+
     /** @return current Smoothed Round-Trip-Time in ticks (1 tick is 10 msec) */
     public float getSrtt() {
         return sender.srtt;
     }
+
+    /** @return current Round-Trip-Time variation in ticks (1 tick is 10 msec) */
+    public float getRttvar() {
+        return sender.rttvar;
+    }
+
+    /** @return current Retransmission Timeout (before backoff) in ticks (1 tick is 10 msec) */
+    public float getRto() {
+        return sender.rto;
+    }
 }
@@ -47,6 +47,20 @@ public abstract class LocalizableScreen extends ScreenAdapter implements Localiz
     /** Connection flag (reflected to Model's connection flag) */
     private boolean connected;
 
+    /**
+     * Event Bus listener (subscribed only to the event types handled by this screen, see {@link #subscribe(Class[])});
+     * it's called on the render thread, see note#8 below
+     */
+    private final EventBus.Listener busListener = new EventBus.Listener() {
+        @Override
+        public void OnEvent(EventBus.Event event) {
+            if (game.getScreen() == LocalizableScreen.this)
+                handleEvent(event);
+            handleEventBackground(event);
+            handleImportantEvents(event); // handle the most important events right here (for ALL screens)
+        }
+    };
+
     /**
      * Constructor
      * @param game instance of Winesaps (NON-NULL)
@@ -78,22 +92,9 @@ public abstract class LocalizableScreen extends ScreenAdapter implements Localiz
             }
         });
 
-        // adding event bus listener (subclasses must implement handleEvent() method)
-        final Screen self = this;
-        model.bus.addListener(new EventBus.Listener() {
-            @Override
-            public void OnEvent(final EventBus.Event event) {
-                Gdx.app.postRunnable(new Runnable() { // see note#8 below
-                    @Override
-                    public void run() {
-                        if (game.getScreen() == self)
-                            handleEvent(event);
-                        handleEventBackground(event);
-                        handleImportantEvents(event); // handle the most important events right here (for ALL screens)
-                    }
-                });
-            }
-        });
+        // adding event bus listener (subclasses must implement handleEvent() method and subscribe to the event types
+        // they handle, see subscribe())
+        subscribe(EventBus.VersionNotAllowedEvent.class, EventBus.UnsupportedProtocolEvent.class);
     }
 
     @Override
@@ -160,6 +161,16 @@ public abstract class LocalizableScreen extends ScreenAdapter implements Localiz
         }
     }
 
+    /**
+     * Subscribes this screen to the given event types (subclasses must call it in their constructors with all the
+     * types they check in {@link #handleEvent(EventBus.Event)} and {@link #handleEventBackground(EventBus.Event)}; the
+     * other events never reach this screen)
+     * @param types event classes
+     */
+    protected final void subscribe(Class<?>... types) {
+        model.bus.addDeferredListener(busListener, types);
+    }
+
     /**
      * Handles new events if and only if the current screen is active
      * @param event model's event from Event Bus
@@ -177,3 +188,5 @@ public abstract class LocalizableScreen extends ScreenAdapter implements Localiz
 // substitute a new value of EventBus.Event each time an event appears (that would be very good for GC!).
 // Gdx.app.postRunnable() stores different (!) Runnable instances inside itself, and calls all of them one-by-one
 // when OpenGL cycle is ready to render
+// update: screens are now subscribed to the Event Bus with deferred delivery, so events are put to a preallocated
+// lock-free queue and delivered on the render thread by Winesaps.render() => postRunnable() is not needed anymore
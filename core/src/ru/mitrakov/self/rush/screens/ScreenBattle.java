@@ -72,6 +72,12 @@ public class ScreenBattle extends LocalizableScreen {
     public ScreenBattle(final Winesaps game, final Model model, PsObject psObject, AssetManager assetManager,
                         final AudioManager audioManager) {
         super(game, model, psObject, assetManager, audioManager);
+        subscribe(EventBus.NewFieldEvent.class, EventBus.ActorResetEvent.class, EventBus.MoveResponseEvent.class,
+                EventBus.ConnectedChangeEvent.class, EventBus.RoundStartedEvent.class,
+                EventBus.RoundFinishedEvent.class, EventBus.GameFinishedEvent.class, EventBus.BattleNotFoundEvent.class,
+                EventBus.ScoreChangedEvent.class, EventBus.LivesChangedEvent.class, EventBus.PlayerWoundedEvent.class,
+                EventBus.EffectAddedEvent.class, EventBus.ObjectRemovedEvent.class, EventBus.ThingChangedEvent.class,
+                EventBus.StyleChangedEvent.class, EventBus.AbilitiesChangedEvent.class);
 
         loadTextures();
         gui = new Gui(model, assetManager); // do NOT share this GUI with ScreenTutorial (because it's an Actor)
@@ -71,6 +71,10 @@ public class ScreenLogin extends LocalizableScreen {
     public ScreenLogin(final Winesaps game, final Model model, PsObject psObject, final AssetManager assetManager,
                        AudioManager audioManager) {
         super(game, model, psObject, assetManager, audioManager);
+        subscribe(EventBus.AuthorizedChangedEvent.class, EventBus.IncorrectCredentialsEvent.class,
+                EventBus.IncorrectNameEvent.class, EventBus.IncorrectEmailEvent.class,
+                EventBus.DuplicateNameEvent.class, EventBus.SignUpErrorEvent.class,
+                EventBus.PromocodeValidChangedEvent.class);
 
         TextureAtlas atlasMenu = assetManager.get("pack/menu.pack");
         textureValid = new TextureRegionDrawable(atlasMenu.findRegion("valid"));
@@ -205,6 +205,18 @@ public class ScreenMain extends LocalizableScreen {
     public ScreenMain(final Winesaps game, final Model model, PsObject psObject, AssetManager assetManager,
                       AudioManager audioManager) {
         super(game, model, psObject, assetManager, audioManager);
+        subscribe(EventBus.AuthorizedChangedEvent.class, EventBus.RoundStartedEvent.class, EventBus.DialUpEvent.class,
+                EventBus.InviteEvent.class, EventBus.AddFriendErrorEvent.class, EventBus.NoGemsEvent.class,
+                EventBus.AggressorBusyEvent.class, EventBus.DefenderBusyEvent.class, EventBus.EnemyNotFoundEvent.class,
+                EventBus.WaitingForEnemyEvent.class, EventBus.AttackedYourselfEvent.class,
+                EventBus.ServerGonnaStopEvent.class, EventBus.NameChangedEvent.class, EventBus.GemsChangedEvent.class,
+                EventBus.CharacterChangedEvent.class, EventBus.RatingUpdatedEvent.class,
+                EventBus.FriendListUpdatedEvent.class, EventBus.FriendAddedEvent.class,
+                EventBus.FriendRemovedEvent.class, EventBus.AbilitiesExpireUpdatedEvent.class,
+                EventBus.PromocodeDoneEvent.class, EventBus.StopCallRejectedEvent.class,
+                EventBus.StopCallMissedEvent.class, EventBus.StopCallExpiredEvent.class,
+                EventBus.SkuGemsUpdatedEvent.class, EventBus.PaymentDoneEvent.class,
+                EventBus.NewVersionAvailableEvent.class, EventBus.WeakPasswordEvent.class);
 
         TextureAtlas atlasMenu = assetManager.get("pack/menu.pack");
         TextureRegionDrawable valid = new TextureRegionDrawable(atlasMenu.findRegion("valid"));
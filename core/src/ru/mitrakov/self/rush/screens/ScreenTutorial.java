@@ -46,6 +46,10 @@ public class ScreenTutorial extends LocalizableScreen {
     public ScreenTutorial(final Winesaps game, final Model model, PsObject psObject, AssetManager assetManager,
                           AudioManager manager) {
         super(game, model, psObject, assetManager, manager);
+        subscribe(EventBus.MoveResponseEvent.class, EventBus.ConnectedChangeEvent.class,
+                EventBus.RoundStartedEvent.class, EventBus.RoundFinishedEvent.class, EventBus.BattleNotFoundEvent.class,
+                EventBus.GameFinishedEvent.class, EventBus.ScoreChangedEvent.class, EventBus.ThingChangedEvent.class,
+                EventBus.ServerGonnaStopEvent.class);
 
         loadTextures();
         gui = new Gui(model, assetManager); // do NOT share this GUI with ScreenBattle (because it's an Actor)
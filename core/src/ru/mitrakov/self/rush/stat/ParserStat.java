@@ -1,11 +1,11 @@
 package ru.mitrakov.self.rush.stat;
 
 import java.util.Locale;
-import ru.mitrakov.self.rush.net.IHandler;
-import ru.mitrakov.self.rush.GcResistantIntArray;
-import ru.mitrakov.self.rush.utils.collections.IIntArray;
+import ru.mitrakov.self.rush.net.*;
+import ru.mitrakov.self.rush.net.DecoderRegistry.IDecoder;
+import ru.mitrakov.self.rush.utils.collections.*;
 
-import static ru.mitrakov.self.rush.utils.SimpleLogger.log;
+import static ru.mitrakov.self.rush.utils.SimpleLogger.*;
 
 /**
  * StatParser is used to parse statistic messages.
@@ -14,17 +14,48 @@ import static ru.mitrakov.self.rush.utils.SimpleLogger.log;
  * @see Stat
  */
 class ParserStat implements IHandler {
-    /** Helper array to avoid "new" operations and decrease GC pressure */
-    private final IIntArray array = new GcResistantIntArray(256);
+    /** View over a single message in the received data (data is decoded in place, without copies and shifts) */
+    private final IntArraySlice msg = new IntArraySlice();
+    /** Decoders indexed by the command byte */
+    private final DecoderRegistry registry = new DecoderRegistry();
     /** Statistics Screen */
     private /*final*/ ScreenStat screen;
 
+    /**
+     * Creates a new instance of ParserStat
+     */
+    ParserStat() {
+        registry.register(0xF0, new IDecoder() {
+            @Override
+            public void decode(int code, IntArraySlice args) {
+                int error = args.get(0);
+                if (error == 0) {
+                    for (int i = 1; i + 2 < args.length(); i += 3) {
+                        int category = args.get(i);
+                        int value = args.getU16(i + 1);
+                        screen.setValue(category, value);
+                    }
+                } else throw new RuntimeException("Statistics error: " + error);
+            }
+        });
+        registry.register(0xF1, new IDecoder() {
+            @Override
+            public void decode(int code, IntArraySlice args) {
+                int error = args.get(0);
+                String str = args.utf8(1);
+                String msg = String.format(Locale.getDefault(), "Server response: code=%d; data=%s", error, str);
+                screen.showMessage(msg);
+            }
+        });
+    }
+
     @Override
     public synchronized void onReceived(IIntArray data) {
-        while (data.length() > 2) {
-            int len = data.get(0) * 256 + data.get(1);
-            processMsg(array.copyFrom(data.remove(0, 2), len));
-            data.remove(0, len);
+        for (int i = 0; data.length() - i > 2; ) {
+            int len = data.get(i) * 256 + data.get(i + 1);
+            i += 2;
+            processMsg(msg.wrap(data, i, Math.min(len, data.length() - i)));
+            i += len;
         }
     }
 
@@ -45,24 +76,10 @@ class ParserStat implements IHandler {
      * Parses a single message (note that the incoming byte array may consist of several single messages)
      * @param data single message byte array
      */
-    private void processMsg(IIntArray data) {
-        log("Precessing:", data);
+    private void processMsg(IntArraySlice data) {
+        log(TRACE, "Precessing:", data);
         if (data.length() > 1) {
-            int code = data.get(0);
-            int error = data.get(1);
-            if (code == 0xF0) {
-                if (error == 0) {
-                    for (int i = 2; i + 2 < data.length(); i += 3) {
-                        int category = data.get(i);
-                        int value = data.get(i + 1) * 256 + data.get(i + 2);
-                        screen.setValue(category, value);
-                    }
-                } else throw new RuntimeException("Statistics error: " + error);
-            } else if (code == 0xF1) {
-                String str = data.remove(0, 2).toUTF8();
-                String msg = String.format(Locale.getDefault(), "Server response: code=%d; data=%s", error, str);
-                screen.showMessage(msg);
-            }
+            registry.dispatch(data); // unknown codes are ignored
         } else throw new IllegalArgumentException("Data too short");
     }
 }
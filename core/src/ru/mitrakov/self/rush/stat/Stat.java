@@ -1,13 +1,12 @@
 package ru.mitrakov.self.rush.stat;
 
 import java.io.IOException;
-import java.net.SocketException;
 
 import com.badlogic.gdx.*;
 
 import ru.mitrakov.self.rush.*;
 import ru.mitrakov.self.rush.net.*;
-import ru.mitrakov.self.rush.utils.collections.IIntArray;
+import ru.mitrakov.self.rush.utils.collections.*;
 
 import static ru.mitrakov.self.rush.Winesaps.*;
 import static ru.mitrakov.self.rush.utils.Utils.*;
@@ -38,7 +37,7 @@ public class Stat extends Game {
     /** Incoming message handler */
     private final ParserStat parser = new ParserStat();
     /** Helper array to avoid "new" operations and decrease GC pressure */
-    private final IIntArray array = new GcResistantIntArray(32);
+    private final IIntArray array = new ByteIntArray(32);
     /** Simple error handler */
     private final Thread.UncaughtExceptionHandler errorHandler = new Thread.UncaughtExceptionHandler() {
         @Override
@@ -63,11 +62,11 @@ public class Stat extends Game {
         assert psObject != null;
         this.psObject = psObject;
         try {
-            network = new Network(psObject, parser, errorHandler, HOST, PORT);
-            protocol = new SwUDP(psObject, network.getSocket(), HOST, PORT, network);
+            network = new Network(psObject, parser, errorHandler, HOST, PORT, true); // NIO: single thread for all
+            protocol = new SwUDP(network, network);
             network.setProtocol(protocol);
             network.reset(0, 0x00000000);
-        } catch (SocketException e) {
+        } catch (IOException e) {
             e.printStackTrace();
         }
     }
@@ -80,12 +79,16 @@ public class Stat extends Game {
         Gdx.input.setCatchMenuKey(true);
 
         network.start();
-        final IIntArray query = new GcResistantIntArray(1).add(0xF0);
+        // the daemon may run on any thread of the scheduler pool, so the query is guarded by its own lock
+        final Object queryLock = new Object();
+        final IIntArray query = new ByteIntArray(1, queryLock);
         psObject.runDaemon(2000, 2000, new Runnable() {
             @Override
             public void run() {
                 try {
-                    network.send(query);
+                    synchronized (queryLock) {
+                        network.send(query.clear().add(0xF0)); // network prepends headers, so rebuild the query
+                    }
                     screen.setSrtt(protocol.getSrtt());
                 } catch (IOException e) {
                     errorHandler.uncaughtException(Thread.currentThread(), e);
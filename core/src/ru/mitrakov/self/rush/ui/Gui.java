@@ -99,6 +99,8 @@ public class Gui extends Actor {
     private static final int FRAMES_PER_MOVE = 60 / MOVES_PER_SEC; // FPS / MOVES_PER_SEC
     /** Some big value for animation time that means "Animation is off" */
     private static final int BIG_VALUE = 99;
+    /** Bitmask of Block and Stair objects (see {@link Field.Snapshot#masks}) */
+    private static final long BLOCK_OR_STAIR = FieldStore.bit(Block.ID) | FieldStore.bit(Stair.ID);
 
     /** Reference to the model */
     private final Model model;
@@ -371,38 +373,43 @@ public class Gui extends Actor {
 
         Field field = model.field; // model.field may suddenly become NULL at any moment, so a local var being used
         if (field != null) {
-            // draw 1-st layer (restrictive walls, with one of 4 styles)
-            drawEdgeWalls(field, batch);
-            // draw 2-st layer (bottom (block/water/dias) with one of 4 styles)
-            drawBottom(field, batch);
-            // draw 3-nd layer (static objects)
-            drawObjects(field, batch);
-            // draw 4-rd layer (dynamic decorations)
-            drawDynamicDecorations(field, batch);
-            // draw 5-rd layer (LadderBottom objects)
-            drawLadderBottom(field, batch);
-            // draw 6-th layer (waterfalls)
-            drawWaterfalls(field, batch);
-            // draw 7-th layer (collectible objects)
-            drawObjects(field, batch, texturesCollectible);
-            // draw 8-th layer (antidotes, teleports)
-            drawAnim(field, batch, Antidote.class, animAntidote);
-            drawAnim(field, batch, Teleport.class, animTeleport);
-            drawAnim(field, batch, Flashbang.class, animFlashbang);
-            drawAnim(field, batch, Detector.class, animDetector);
-            // draw 9-th layer (animated characters)
-            drawAnimatedObjects(field, batch, dt);
-            // draw 10-th layer (water, and also redraw walls near the water ONCE AGAIN, see note#11)
-            drawWater(field, batch);
-            drawWallsNearWater(field, batch);
-            // draw 10-th layer (all overlaying objects like Umbrella)
-            drawObjects(field, batch, texturesOverlay);
-            // draw 11-th layer (smokes, explosions, aura)
-            drawSingleAnim(animExplosion, batch, dt);
-            drawSingleAnim(animSmoke, batch, dt);
-            drawSingleAnim(animAura, batch, dt);
-            // draw last layer (flare)
-            drawFlare(batch, dt);
+            Field.Snapshot snapshot = field.acquire(); // immutable state, so no locks needed (see Model.applyDelta)
+            try {
+                // draw 1-st layer (restrictive walls, with one of 4 styles)
+                drawEdgeWalls(snapshot, batch);
+                // draw 2-st layer (bottom (block/water/dias) with one of 4 styles)
+                drawBottom(snapshot, batch);
+                // draw 3-nd layer (static objects)
+                drawObjects(snapshot, batch);
+                // draw 4-rd layer (dynamic decorations)
+                drawDynamicDecorations(snapshot, batch);
+                // draw 5-rd layer (LadderBottom objects)
+                drawLadderBottom(snapshot, batch);
+                // draw 6-th layer (waterfalls)
+                drawWaterfalls(snapshot, batch);
+                // draw 7-th layer (collectible objects)
+                drawObjects(snapshot, batch, texturesCollectible);
+                // draw 8-th layer (antidotes, teleports)
+                drawAnim(snapshot, batch, Antidote.class, animAntidote);
+                drawAnim(snapshot, batch, Teleport.class, animTeleport);
+                drawAnim(snapshot, batch, Flashbang.class, animFlashbang);
+                drawAnim(snapshot, batch, Detector.class, animDetector);
+                // draw 9-th layer (animated characters)
+                drawAnimatedObjects(snapshot, batch, dt);
+                // draw 10-th layer (water, and also redraw walls near the water ONCE AGAIN, see note#11)
+                drawWater(snapshot, batch);
+                drawWallsNearWater(snapshot, batch);
+                // draw 10-th layer (all overlaying objects like Umbrella)
+                drawObjects(snapshot, batch, texturesOverlay);
+                // draw 11-th layer (smokes, explosions, aura)
+                drawSingleAnim(animExplosion, batch, dt);
+                drawSingleAnim(animSmoke, batch, dt);
+                drawSingleAnim(animAura, batch, dt);
+                // draw last layer (flare)
+                drawFlare(batch, dt);
+            } finally {
+                field.release();
+            }
         }
     }
 
@@ -520,10 +527,10 @@ public class Gui extends Actor {
      * @param cell cell to check (NON-NULL)
      * @return true, if the cell below has a rope line
      */
-    private boolean isRopeBelow(Field field, Cell cell) {
+    private boolean isRopeBelow(Field.Snapshot field, Cell cell) {
         // field != NULL, cell != NULL
         Cell cellBelow = cell.xy + Field.WIDTH < Field.WIDTH * Field.HEIGHT ? field.cells[cell.xy + Field.WIDTH] : null;
-        return cellBelow != null && cellBelow.objectExists(RopeLine.class);
+        return cellBelow != null && field.has(cellBelow.xy, RopeLine.ID);
     }
 
     /**
@@ -531,10 +538,10 @@ public class Gui extends Actor {
      * @param cell cell to check (NON-NULL)
      * @return true, if the cell has a LadderBottom object
      */
-    private boolean ladderBottomExists(Field field, Cell cell) {
+    private boolean ladderBottomExists(Field.Snapshot field, Cell cell) {
         // field != NULL, cell != NULL
         Cell cellBelow = cell.xy + Field.WIDTH < Field.WIDTH * Field.HEIGHT ? field.cells[cell.xy + Field.WIDTH] : null;
-        return cellBelow != null && cell.objectExists(LadderTop.class) && cellBelow.objectExists(LadderBottom.class);
+        return cellBelow != null && field.has(cell.xy, LadderTop.ID) && field.has(cellBelow.xy, LadderBottom.ID);
     }
 
     /**
@@ -542,10 +549,10 @@ public class Gui extends Actor {
      * @param cell cell to check (NON-NULL)
      * @return true, if the cell has a LadderTop object
      */
-    private boolean ladderTopExists(Field field, Cell cell) {
+    private boolean ladderTopExists(Field.Snapshot field, Cell cell) {
         // field != NULL, cell != NULL
         Cell cellAbove = cell.xy - Field.WIDTH >= 0 ? field.cells[cell.xy - Field.WIDTH] : null;
-        return cellAbove != null && cellAbove.objectExists(LadderTop.class) && cell.objectExists(LadderBottom.class);
+        return cellAbove != null && field.has(cellAbove.xy, LadderTop.ID) && field.has(cell.xy, LadderBottom.ID);
     }
 
     /**
@@ -553,7 +560,7 @@ public class Gui extends Actor {
      * @param cell cell to check (NON-NULL)
      * @return true, if the animated object (Actor1, Actor2 or Wolf) uses a ladder (moves up or down)
      */
-    private boolean animatedUsesLadder(Field field, Cell cell) {
+    private boolean animatedUsesLadder(Field.Snapshot field, Cell cell) {
         // field != null (assert omitted)
         CellObject animated = cell.getFirst(CellObjectAnimated.class);
         if (animated == null) { // maybe animatedObject is above?
@@ -576,13 +583,12 @@ public class Gui extends Actor {
      * @param field battle field (NON-NULL)
      * @param y Y-coordinate
      * @return TRUE, if and only if the given row contains any object
-     * @see #anythingExistsOnRowBottom(Field, int, boolean)
+     * @see #anythingExistsOnRowBottom(Field.Snapshot, int, boolean)
      */
-    private boolean anythingExistsOnRow(Field field, int y, boolean leftSide) {
+    private boolean anythingExistsOnRow(Field.Snapshot field, int y, boolean leftSide) {
         int start = leftSide ? 0 : Field.WIDTH / 2, end = leftSide ? Field.WIDTH / 2 : Field.WIDTH;
         for (int i = start; i < end; i++) {
-            Cell cell = field.cells[y * Field.WIDTH + i]; // cell != NULL (assert omitted)
-            if (cell.getObjectsCount() > 0)
+            if (field.masks[y * Field.WIDTH + i] != 0) // no need to touch the lists of objects
                 return true;
         }
         return false;
@@ -593,9 +599,9 @@ public class Gui extends Actor {
      * @param field battle field (NON-NULL)
      * @param y Y-coordinate
      * @return TRUE, if and only if the given row contains at least one non-empty bottom
-     * @see #anythingExistsOnRow(Field, int, boolean)
+     * @see #anythingExistsOnRow(Field.Snapshot, int, boolean)
      */
-    private boolean anythingExistsOnRowBottom(Field field, int y, boolean leftSide) {
+    private boolean anythingExistsOnRowBottom(Field.Snapshot field, int y, boolean leftSide) {
         int start = leftSide ? 0 : Field.WIDTH / 2, end = leftSide ? Field.WIDTH / 2 : Field.WIDTH;
         for (int i = start; i < end; i++) {
             Cell cell = field.cells[y * Field.WIDTH + i]; // cell != NULL (assert omitted)
@@ -617,7 +623,7 @@ public class Gui extends Actor {
      * @param batch OpenGL sprite batch (NON-NULL)
      * @param map map that matches object classes to their textures
      */
-    private void drawObjects(Field field, Batch batch, ObjectMap<Class, TextureRegion> map) {
+    private void drawObjects(Field.Snapshot field, Batch batch, ObjectMap<Class, TextureRegion> map) {
         // field != null (assert omitted)
         for (int j = 0; j < Field.HEIGHT; j++) {
             for (int i = 0; i < Field.WIDTH; i++) {
@@ -646,13 +652,13 @@ public class Gui extends Actor {
      * @param field battle field (NON-NULL)
      * @param batch OpenGL sprite batch (NON-NULL)
      */
-    private void drawBottom(Field field, Batch batch) {
+    private void drawBottom(Field.Snapshot field, Batch batch) {
         // field != null && batch != null (assert omitted)
         for (int j = 0; j < Field.HEIGHT; j++) {
             for (int i = 0; i < Field.WIDTH; i++) {
                 Cell cell = field.cells[j * Field.WIDTH + i]; // cell != NULL (assert omitted)
                 TextureRegion texture = null;
-                if (cell.bottom instanceof Block && (cell.objectExists(Block.class) || cell.objectExists(Stair.class)))
+                if (cell.bottom instanceof Block && (field.masks[cell.xy] & BLOCK_OR_STAIR) != 0)
                     texture = texturesDownSolid.get(model.stylePack); // to avoid "grass-on-grass" artifacts
                 else {
                     Class key = null;
@@ -660,7 +666,7 @@ public class Gui extends Actor {
                         key = cell.bottom.getClass();
                     else { // case: long RopeLine
                         Cell below = (j + 1 < Field.HEIGHT) ? field.cells[(j + 1) * Field.WIDTH + i] : null;
-                        if (below != null && cell.objectExists(RopeLine.class) && below.objectExists(RopeLine.class))
+                        if (below != null && field.has(cell.xy, RopeLine.ID) && field.has(below.xy, RopeLine.ID))
                             key = Block.class;
                     }
                     if (key != null && texturesDown.containsKey(key))
@@ -681,7 +687,7 @@ public class Gui extends Actor {
      * @param batch OpenGL sprite batch (NON-NULL)
      * @since 2.0.0
      */
-    private void drawEdgeWalls(Field field, Batch batch) {
+    private void drawEdgeWalls(Field.Snapshot field, Batch batch) {
         // field != null && batch != null (assert omitted)
         for (int j = 0; j < Field.HEIGHT; j++) {
             boolean needDrawUpLeft = anythingExistsOnRow(field, j, true);
@@ -719,7 +725,7 @@ public class Gui extends Actor {
      * @param field battle field (NON-NULL)
      * @param batch OpenGL sprite batch (NON-NULL)
      */
-    private void drawObjects(Field field, Batch batch) {
+    private void drawObjects(Field.Snapshot field, Batch batch) {
         // field != null && batch != null (assert omitted)
         for (int j = 0; j < Field.HEIGHT; j++) {
             for (int i = 0; i < Field.WIDTH; i++) {
@@ -749,7 +755,7 @@ public class Gui extends Actor {
      * @param batch OpenGL sprite batch (NON-NULL)
      * @since 2.0.0
      */
-    private void drawWater(Field field, Batch batch) {
+    private void drawWater(Field.Snapshot field, Batch batch) {
         // field != null && batch != null (assert omitted)
         for (int j = 0; j < Field.HEIGHT; j++) {
             for (int i = 0; i < Field.WIDTH; i++) {
@@ -762,7 +768,7 @@ public class Gui extends Actor {
                         batch.draw(texture, x, y);
                     }
                 }
-                if (cell.objectExists(Water.class)) {
+                if (field.has(cell.xy, Water.ID)) {
                     TextureRegion texture = texturesWaterUp.get(model.stylePack);
                     if (texture != null) {
                         float bottomWidth = getBottomWidth(cell), bottomHeight = getBottomHeight(cell);
@@ -781,7 +787,7 @@ public class Gui extends Actor {
      * @param batch OpenGL sprite batch (NON-NULL)
      * @since 2.0.0
      */
-    private void drawWallsNearWater(Field field, Batch batch) {
+    private void drawWallsNearWater(Field.Snapshot field, Batch batch) {
         // field != null (assert omitted)
         for (int j = 0; j < Field.HEIGHT; j++) {
             for (int i = 1; i < Field.WIDTH - 1; i++) {
@@ -789,8 +795,8 @@ public class Gui extends Actor {
                 Cell cellR = field.cells[j * Field.WIDTH + i + 1]; // cell != NULL (assert omitted)
                 Cell cellL = field.cells[j * Field.WIDTH + i - 1]; // cell != NULL (assert omitted)
                 float bottomWidth = getBottomWidth(cell), bottomHeight = getBottomHeight(cell);
-                boolean nearWater = cellL.objectExists(Water.class) || cellR.objectExists(Water.class);
-                if (cell.objectExists(Block.class) && nearWater) {
+                boolean nearWater = field.has(cellL.xy, Water.ID) || field.has(cellR.xy, Water.ID);
+                if (field.has(cell.xy, Block.ID) && nearWater) {
                     IntMap<TextureRegion> m = texturesStat.get(Block.class);
                     if (m != null) {
                         TextureRegion texture = m.get(model.stylePack);
@@ -810,13 +816,13 @@ public class Gui extends Actor {
      * @param field battle field (NON-NULL)
      * @param batch OpenGL sprite batch (NON-NULL)
      */
-    private void drawWaterfalls(Field field, Batch batch) {
+    private void drawWaterfalls(Field.Snapshot field, Batch batch) {
         // field != null (assert omitted)
         for (int j = 0; j < Field.HEIGHT; j++) {
             for (int i = 0; i < Field.WIDTH; i++) {
                 Cell cell = field.cells[j * Field.WIDTH + i]; // cell != NULL (assert omitted)
                 float bottomWidth = getBottomWidth(cell), bottomHeight = getBottomHeight(cell);
-                boolean hasUmbrella = cell.objectExists(Umbrella.class);
+                boolean hasUmbrella = field.has(cell.xy, Umbrella.ID);
                 CellObject obj = cell.getFirst(Waterfall.class);
                 if (obj != null) {
                     Animation<TextureRegion> animation = hasUmbrella ? animWaterfallSmall : animWaterfall;
@@ -836,7 +842,7 @@ public class Gui extends Actor {
      * @param field battle field (NON-NULL)
      * @param batch OpenGL sprite batch (NON-NULL)
      */
-    private void drawDynamicDecorations(Field field, Batch batch) {
+    private void drawDynamicDecorations(Field.Snapshot field, Batch batch) {
         // field != null (assert omitted)
         for (int j = 0; j < Field.HEIGHT; j++) {
             for (int i = 0; i < Field.WIDTH; i++) {
@@ -865,12 +871,13 @@ public class Gui extends Actor {
      * @param clazz CellObject class
      * @param anim animation
      */
-    private void drawAnim(Field field, Batch batch, Class<? extends CellObject> clazz, Animation<TextureRegion> anim) {
+    private void drawAnim(Field.Snapshot field, Batch batch, Class<? extends CellObject> clazz, Animation<TextureRegion> anim) {
         // field != null && batch != null (assert omitted)
+        long kind = Cells.kindOf(clazz); // resolve the class once, and then just test bits for each cell
         for (int j = 0; j < Field.HEIGHT; j++) {
             for (int i = 0; i < Field.WIDTH; i++) {
                 Cell cell = field.cells[j * Field.WIDTH + i]; // cell != NULL (assert omitted)
-                if (cell.objectExists(clazz)) {
+                if (kind != 0 ? cell.objectExists(kind) : cell.objectExists(clazz)) {
                     float bottomWidth = getBottomWidth(cell), bottomHeight = getBottomHeight(cell);
                     TextureRegion texture = anim.getKeyFrame(time);
                     if (texture != null) {
@@ -888,7 +895,7 @@ public class Gui extends Actor {
      * @param field battle field (NON-NULL)
      * @param batch OpenGL sprite batch (NON-NULL)
      */
-    private void drawLadderBottom(Field field, Batch batch) {
+    private void drawLadderBottom(Field.Snapshot field, Batch batch) {
         // field != null (assert omitted)
         for (int j = 0; j < Field.HEIGHT; j++) {
             for (int i = 0; i < Field.WIDTH; i++) {
@@ -928,17 +935,17 @@ public class Gui extends Actor {
      * @param dt current delta time
      */
     @SuppressWarnings("ConstantConditions")
-    private void drawAnimatedObjects(Field field, Batch batch, float dt) {
+    private void drawAnimatedObjects(Field.Snapshot field, Batch batch, float dt) {
         // field != null (assert omitted)
         for (int j = 0; j < Field.HEIGHT; j++) {
             for (int i = 0; i < Field.WIDTH; i++) {
                 Cell cell = field.cells[j * Field.WIDTH + i]; // cell != NULL (assert omitted)
                 float bottomWidth = getBottomWidth(cell), bottomHeight = getBottomHeight(cell);
-                if (cell.objectExists(CellObjectRaisable.class)) {
+                if (cell.objectExists(Cells.KIND_RAISABLE)) {
                     if (texturesOverlay.containsKey(Box.class))
                         bottomHeight += texturesOverlay.get(Box.class).getRegionHeight();
-                } else if (cell.bottom instanceof Water && !cell.objectExists(BeamChunk.class)) {
-                    float coeff = cell.objectExists(Wolf.class) ? 1.8f : 1; // because wolves are taller
+                } else if (cell.bottom instanceof Water && !field.has(cell.xy, BeamChunk.ID)) {
+                    float coeff = field.has(cell.xy, Wolf.ID) ? 1.8f : 1; // because wolves are taller
                     bottomHeight *= -coeff; // animated objects go deep in water up to the head (since 2.0.0)
                 }
                 for (int k = 0; k < cell.getObjectsCount(); k++) { //  // .... GC!
@@ -4,38 +4,384 @@ import java.text.Format;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
+import java.util.concurrent.atomic.*;
 
 import ru.mitrakov.self.rush.FileReader;
 import ru.mitrakov.self.rush.model.Model;
+import ru.mitrakov.self.rush.utils.collections.IIntArray;
 
 /**
- * Logger to log to StdOut and external storage. Please turn off this logger in production to avoid excessive GC!
- * THIS IS A STUB! USE NORMAL LOGGERS IN THE FUTURE
+ * Leveled logger to log to StdOut and external storage.
+ * <br>It is designed to be called on hot paths (e.g. protocol tracing), so:
+ * <ul>
+ *     <li>it is lock-free: if the level is disabled, a call costs a single volatile read (see {@link #isEnabled(int)});
+ *     <li>there are primitive overloads (no autoboxing), and ints/floats are formatted later by the appender thread;
+ *     <li>messages are put to a ring buffer of preallocated entries and written by a single daemon thread (the
+ *     asynchronous appender), so the caller never waits for I/O; if the buffer is full, messages are dropped.
+ * </ul>
+ * By default the logger is turned off (see {@link #configure(int, boolean, boolean)}); launchers turn it on by the
+ * {@link #PROPERTY} system property, e.g. <i>-Dwinesaps.log=TRACE,sout,file</i> (see {@link #configureFromProperty()})
+ * @author mitrakov
  */
 public class SimpleLogger {
-    /** File reader */
-    private final static Model.IFileReader fileReader = new FileReader();
-    /** Date format */
-    private final static Format sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.getDefault());
-    /** Flag to log to a file (<b>MUST BE TURNED OFF IN PRODUCTION</b>) */
-    private final static boolean LOG_TO_FILE = false; // don't forget about WRITE_EXTERNAL_STORAGE permission
-    /** Flag to log to stdout (<b>MUST BE TURNED OFF IN PRODUCTION</b>) */
-    private final static boolean LOG_TO_SOUT = false;
+    /** Level: protocol tracing (every datagram, every message) */
+    public static final int TRACE = 0;
+    /** Level: debug messages */
+    public static final int DEBUG = 1;
+    /** Level: important events */
+    public static final int INFO = 2;
+    /** Level: errors */
+    public static final int ERROR = 3;
+    /** Level: logger is turned off */
+    public static final int OFF = 4;
+    /** System property to configure the logger: level name, optionally followed by ",sout" and/or ",file" */
+    public static final String PROPERTY = "winesaps.log";
+
+    /** Capacity of the ring buffer (must be a power of 2) */
+    private static final int CAPACITY = 1024;
+    /** Period of the appender thread to check for new messages, in ms */
+    private static final int APPENDER_PERIOD = 100;
+    /** Log file name */
+    private static final String FILENAME = "logger.txt";
+    /** Level names */
+    private static final String[] LEVELS = {"TRACE", "DEBUG", "INFO", "ERROR"};
+    /** Entry type: text (already formatted) */
+    private static final int TYPE_TEXT = 0;
+    /** Entry type: int value */
+    private static final int TYPE_INT = 1;
+    /** Entry type: float value */
+    private static final int TYPE_FLOAT = 2;
+
+    /** Ring buffer of preallocated entries */
+    private static final Entry[] entries = new Entry[CAPACITY];
+    /** Position of the next entry to write (producers) */
+    private static final AtomicLong tail = new AtomicLong();
+    /** Count of messages dropped because the ring buffer was full */
+    private static final AtomicInteger dropped = new AtomicInteger();
+    /** Flag that the appender thread has been started */
+    private static final AtomicBoolean started = new AtomicBoolean();
+
+    /** Current level (messages with lower levels are discarded) */
+    private static volatile int level = OFF;
+    /** Flag to log to a file (don't forget about WRITE_EXTERNAL_STORAGE permission) */
+    private static volatile boolean toFile = false;
+    /** Flag to log to stdout */
+    private static volatile boolean toSout = false;
+
+    static {
+        for (int i = 0; i < CAPACITY; i++) {
+            entries[i] = new Entry(i);
+        }
+    }
+
+    /**
+     * Single entry of the ring buffer
+     */
+    private static final class Entry {
+        /** Sequence number: equals to the position when the entry is free, position + 1 when it is published */
+        volatile long seq;
+        /** Level */
+        int level;
+        /** Type of the value (TYPE_TEXT, TYPE_INT or TYPE_FLOAT) */
+        int type;
+        /** Timestamp, in ms */
+        long time;
+        /** Prefix */
+        String prefix;
+        /** Int value (for TYPE_INT) */
+        int intValue;
+        /** Float value (for TYPE_FLOAT) */
+        float floatValue;
+        /** Text value (for TYPE_TEXT); reused to avoid "new" operations and decrease GC pressure */
+        final StringBuilder text = new StringBuilder(64);
+
+        /**
+         * Creates a new entry
+         * @param seq initial sequence number
+         */
+        Entry(long seq) {
+            this.seq = seq;
+        }
+    }
+
+    /**
+     * Configures the logger (may be called at any time, e.g. to turn on protocol tracing in production)
+     * @param level minimum level of messages to log ({@link #TRACE}, {@link #DEBUG}, {@link #INFO}, {@link #ERROR} or
+     *              {@link #OFF})
+     * @param sout TRUE to log to stdout
+     * @param file TRUE to log to a file in the external storage
+     */
+    public static void configure(int level, boolean sout, boolean file) {
+        if (level < TRACE || level > OFF)
+            throw new IllegalArgumentException("Incorrect level: " + level);
+        toSout = sout;
+        toFile = file;
+        SimpleLogger.level = sout || file ? level : OFF;
+        if (SimpleLogger.level < OFF && started.compareAndSet(false, true))
+            startAppender();
+    }
+
+    /**
+     * Configures the logger by the {@link #PROPERTY} system property (does nothing, if the property is not set)
+     */
+    public static void configureFromProperty() {
+        String spec = System.getProperty(PROPERTY);
+        if (spec != null)
+            configure(spec);
+    }
+
+    /**
+     * Configures the logger by a string specification: level name (TRACE, DEBUG, INFO, ERROR or OFF), optionally
+     * followed by comma-separated targets "sout" and/or "file" (if no targets given, stdout is used), e.g. "TRACE,file"
+     * @param spec specification (NON-NULL)
+     */
+    public static void configure(String spec) {
+        if (spec == null)
+            throw new IllegalArgumentException("Logger specification is NULL");
+        String[] tokens = spec.split(",");
+        String name = tokens[0].trim().toUpperCase(Locale.ENGLISH);
+        int lvl = name.equals("OFF") ? OFF : -1;
+        for (int i = 0; i < LEVELS.length; i++) {
+            if (LEVELS[i].equals(name))
+                lvl = i;
+        }
+        if (lvl < 0)
+            throw new IllegalArgumentException("Incorrect level: " + tokens[0]);
+        boolean sout = tokens.length == 1, file = false;
+        for (int i = 1; i < tokens.length; i++) {
+            String target = tokens[i].trim();
+            if (target.equalsIgnoreCase("sout"))
+                sout = true;
+            else if (target.equalsIgnoreCase("file"))
+                file = true;
+            else throw new IllegalArgumentException("Incorrect target: " + target);
+        }
+        configure(lvl, sout, file);
+    }
+
+    /**
+     * @param level level
+     * @return true, if messages with the given level are logged (use it to guard expensive arguments)
+     */
+    public static boolean isEnabled(int level) {
+        return level >= SimpleLogger.level;
+    }
+
+    /**
+     * Puts the message given by the object "s" to the log (level DEBUG), prepending it with the "prefix"
+     * If the level is disabled, it does nothing (and does not generate garbage for GC)
+     * @param prefix prefix
+     * @param s any object (may be NULL)
+     */
+    public static void log(String prefix, Object s) {
+        log(DEBUG, prefix, s);
+    }
+
+    /**
+     * Puts the int value to the log (level DEBUG), prepending it with the "prefix"
+     * @param prefix prefix
+     * @param value value
+     */
+    public static void log(String prefix, int value) {
+        log(DEBUG, prefix, value);
+    }
+
+    /**
+     * Puts the float value to the log (level DEBUG), prepending it with the "prefix"
+     * @param prefix prefix
+     * @param value value
+     */
+    public static void log(String prefix, float value) {
+        log(DEBUG, prefix, value);
+    }
+
+    /**
+     * Puts the array to the log (level DEBUG), prepending it with the "prefix"
+     * @param prefix prefix
+     * @param array array (may be NULL)
+     */
+    public static void log(String prefix, IIntArray array) {
+        log(DEBUG, prefix, array);
+    }
 
     /**
      * Puts the message given by the object "s" to the log, prepending it with the "prefix"
-     * If the logger is turned off, it does nothing (and does not generate garbage for GC)
+     * @param level level
      * @param prefix prefix
      * @param s any object (may be NULL)
      */
-    public static synchronized void log(String prefix, Object s) {
-        if (LOG_TO_FILE) {
-            String w = String.format("%s: %s%s", sdf.format(new Date()), prefix, s);
-            fileReader.append("logger.txt", w);
+    public static void log(int level, String prefix, Object s) {
+        if (isEnabled(level)) {
+            Entry entry = claim();
+            if (entry != null) {
+                entry.text.append(s);
+                publish(entry, level, TYPE_TEXT, prefix);
+            }
+        }
+    }
+
+    /**
+     * Puts the int value to the log, prepending it with the "prefix" (the value is formatted by the appender thread)
+     * @param level level
+     * @param prefix prefix
+     * @param value value
+     */
+    public static void log(int level, String prefix, int value) {
+        if (isEnabled(level)) {
+            Entry entry = claim();
+            if (entry != null) {
+                entry.intValue = value;
+                publish(entry, level, TYPE_INT, prefix);
+            }
+        }
+    }
+
+    /**
+     * Puts the float value to the log, prepending it with the "prefix" (the value is formatted by the appender thread)
+     * @param level level
+     * @param prefix prefix
+     * @param value value
+     */
+    public static void log(int level, String prefix, float value) {
+        if (isEnabled(level)) {
+            Entry entry = claim();
+            if (entry != null) {
+                entry.floatValue = value;
+                publish(entry, level, TYPE_FLOAT, prefix);
+            }
         }
-        if (LOG_TO_SOUT) {
-            System.out.print(prefix);
-            System.out.println(s);
+    }
+
+    /**
+     * Puts the array to the log, prepending it with the "prefix" (the array is copied to the preallocated entry right
+     * away, because it may be changed after the call)
+     * @param level level
+     * @param prefix prefix
+     * @param array array (may be NULL)
+     */
+    public static void log(int level, String prefix, IIntArray array) {
+        if (isEnabled(level)) {
+            Entry entry = claim();
+            if (entry != null) {
+                StringBuilder text = entry.text;
+                if (array != null) {
+                    text.append('[');
+                    for (int i = 0; i < array.length(); i++) {
+                        if (i > 0)
+                            text.append(", ");
+                        text.append(array.get(i));
+                    }
+                    text.append(']');
+                } else text.append("null");
+                publish(entry, level, TYPE_TEXT, prefix);
+            }
         }
     }
+
+    /**
+     * Claims a free entry of the ring buffer (lock-free, multiple producers are allowed)
+     * @return free entry, or NULL if the ring buffer is full (the message is dropped)
+     */
+    private static Entry claim() {
+        while (true) {
+            long pos = tail.get();
+            Entry entry = entries[(int) (pos & (CAPACITY - 1))];
+            long diff = entry.seq - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    entry.text.setLength(0);
+                    return entry;
+                }
+            } else if (diff < 0) {
+                dropped.incrementAndGet();
+                return null;
+            } // else another producer has claimed this entry, try again
+        }
+    }
+
+    /**
+     * Fills the claimed entry and makes it visible for the appender thread
+     * @param entry claimed entry
+     * @param level level
+     * @param type type of the value
+     * @param prefix prefix
+     */
+    private static void publish(Entry entry, int level, int type, String prefix) {
+        entry.level = level;
+        entry.type = type;
+        entry.time = System.currentTimeMillis();
+        entry.prefix = prefix;
+        entry.seq = entry.seq + 1; // volatile write publishes all the fields above
+    }
+
+    /**
+     * Starts the appender thread that drains the ring buffer to stdout and/or the file
+     */
+    private static void startAppender() {
+        Thread thread = new Thread(new Runnable() {
+            /** File reader (to append lines to the file) */
+            private final Model.IFileReader fileReader = new FileReader();
+            /** Date format */
+            private final Format sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.getDefault());
+            /** Date object (reused to avoid "new" operations) */
+            private final Date date = new Date();
+            /** Buffer for a batch of lines */
+            private final StringBuilder batch = new StringBuilder(4096);
+            /** Position of the next entry to read */
+            private long head = 0;
+
+            @Override
+            public void run() {
+                //noinspection InfiniteLoopStatement
+                while (true) {
+                    drain();
+                    try {
+                        Thread.sleep(APPENDER_PERIOD);
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+            }
+
+            /**
+             * Writes all the published entries as a single batch
+             */
+            private void drain() {
+                batch.setLength(0);
+                Entry entry = entries[(int) (head & (CAPACITY - 1))];
+                while (entry.seq == head + 1) {
+                    if (toFile) {
+                        date.setTime(entry.time);
+                        batch.append(sdf.format(date)).append(' ').append(LEVELS[entry.level]).append(": ");
+                    }
+                    batch.append(entry.prefix);
+                    if (entry.type == TYPE_INT)
+                        batch.append(entry.intValue);
+                    else if (entry.type == TYPE_FLOAT)
+                        batch.append(entry.floatValue);
+                    else batch.append(entry.text);
+                    batch.append('\n');
+                    entry.prefix = null;
+                    entry.seq = head + CAPACITY; // free the entry for producers
+                    head++;
+                    entry = entries[(int) (head & (CAPACITY - 1))];
+                }
+                int lost = dropped.getAndSet(0);
+                if (lost > 0)
+                    batch.append("... ").append(lost).append(" messages dropped\n");
+                if (batch.length() > 0) {
+                    batch.setLength(batch.length() - 1); // FileReader.append() adds a line break
+                    String s = batch.toString();
+                    if (toSout)
+                        System.out.println(s);
+                    if (toFile) try {
+                        fileReader.append(FILENAME, s);
+                    } catch (Exception e) {
+                        toFile = false; // e.g. no external storage or permission
+                    }
+                }
+            }
+        }, "Logger");
+        thread.setDaemon(true);
+        thread.start();
+    }
 }
@@ -0,0 +1,42 @@
+package ru.mitrakov.self.rush.utils.collections;
+
+/**
+ * ConfinedIntArray - base class for unsynchronized IIntArray implementations.
+ * <br>Such implementations are NOT thread-safe, so they follow the <b>ownership contract</b>:
+ * <ul>
+ *     <li>an array without a guard is confined to the first thread that touches it (creating is not touching);
+ *     <li>an array with a guard may be touched by any thread, but ONLY while holding the guard's monitor.
+ * </ul>
+ * The contract is checked by {@link #isOwned()} in debug mode only (assertions enabled, e.g. on Desktop), so in release
+ * mode each access costs no more than a plain array access (no monitor enter/exit per byte).
+ * <br>If an array is really shared between threads without a common lock, please use
+ * {@link ru.mitrakov.self.rush.GcResistantIntArray GcResistantIntArray}
+ * @author mitrakov
+ */
+abstract class ConfinedIntArray implements IIntArray {
+    /** Object whose monitor guards this array (may be NULL, if the array is confined to a single thread) */
+    private final Object guard;
+    /** Thread that owns this array (used only in debug mode and only if guard is NULL) */
+    private volatile Thread owner;
+
+    /**
+     * Creates a new ConfinedIntArray
+     * @param guard object whose monitor guards this array (NULL, if the array is confined to a single thread)
+     */
+    ConfinedIntArray(Object guard) {
+        this.guard = guard;
+    }
+
+    /**
+     * Checks the ownership contract. Please call this method only in "assert" statements!
+     * @return true, if the current thread is allowed to access the array
+     */
+    final boolean isOwned() {
+        if (guard != null)
+            return Thread.holdsLock(guard);
+        Thread current = Thread.currentThread();
+        if (owner == null)
+            owner = current;
+        return owner == current;
+    }
+}
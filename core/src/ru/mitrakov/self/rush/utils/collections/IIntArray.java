@@ -3,7 +3,9 @@ package ru.mitrakov.self.rush.utils.collections;
 /**
  * Byte array interface.
  * Implementations may use own format of storing internal data
- * It is designed as an abstraction for {@link ru.mitrakov.self.rush.GcResistantIntArray GcResistantIntArray}.
+ * It is designed as an abstraction for {@link ru.mitrakov.self.rush.GcResistantIntArray GcResistantIntArray} and
+ * {@link ByteIntArray} (the latter is preferred for the network path: O(1) prepend and removal from the head, and
+ * zero-copy toByteArray).
  * Please see javadoc for further details.
  * @author mitrakov
  */
@@ -0,0 +1,183 @@
+package ru.mitrakov.self.rush.utils.collections;
+
+import java.io.UnsupportedEncodingException;
+
+/**
+ * IntArraySlice - read-only view over a range of another IIntArray (offset + length).
+ * <br>It is designed for the receive path: a parser may split a received datagram into messages and messages into
+ * arguments just by moving offsets (see {@link #wrap(IIntArray, int, int)} and {@link #skip(int)}), so the data is
+ * never copied or shifted before it is read.
+ * <br>The view is reusable (to avoid "new" operations and decrease GC pressure), it is valid until the underlying
+ * array is changed. All modifying operations throw UnsupportedOperationException.
+ * <br>Like the underlying array, it is NOT synchronized: it must be used by the thread that owns the underlying array
+ * @author mitrakov
+ */
+public final class IntArraySlice implements IIntArray {
+    /** Underlying array */
+    private IIntArray source;
+    /** Index of the first element in the underlying array */
+    private int offset = 0;
+    /** Count of elements */
+    private int size = 0;
+    /** Additional buffer for {@link #toByteArray()} and {@link #utf8(int)} (to avoid creating new objects) */
+    private byte[] bytes = new byte[0];
+
+    /**
+     * Makes this slice a view over the given range of the array (if the array is a slice itself, the view is made
+     * directly over its underlying array)
+     * @param source underlying array (NON-NULL)
+     * @param offset index of the first element
+     * @param length count of elements
+     * @return reference to "this"
+     */
+    public IntArraySlice wrap(IIntArray source, int offset, int length) {
+        assert source != null && source != this;
+        if (offset < 0 || length < 0 || offset + length > source.length())
+            throw new IndexOutOfBoundsException("incorrect range: [" + offset + ", " + (offset + length) + ")");
+        if (source instanceof IntArraySlice) {
+            IntArraySlice slice = (IntArraySlice) source;
+            this.source = slice.source;
+            this.offset = slice.offset + offset;
+        } else {
+            this.source = source;
+            this.offset = offset;
+        }
+        this.size = length;
+        return this;
+    }
+
+    /**
+     * Moves the start of the view forward (the underlying array is not changed)
+     * @param n count of elements to skip
+     * @return reference to "this"
+     */
+    public IntArraySlice skip(int n) {
+        if (n < 0 || n > size)
+            throw new IndexOutOfBoundsException("cannot skip " + n + " elements, size " + size);
+        offset += n;
+        size -= n;
+        return this;
+    }
+
+    /**
+     * @param idx index
+     * @return unsigned byte at the given index
+     */
+    public int getU8(int idx) {
+        return get(idx);
+    }
+
+    /**
+     * @param idx index
+     * @return unsigned big-endian 16-bit integer starting at the given index
+     */
+    public int getU16(int idx) {
+        return (get(idx) << 8) | get(idx + 1);
+    }
+
+    /**
+     * @param idx index
+     * @return big-endian 32-bit integer starting at the given index (note that it may be negative, like in the Server)
+     */
+    public int getU32(int idx) {
+        return (get(idx) << 24) | (get(idx + 1) << 16) | (get(idx + 2) << 8) | get(idx + 3);
+    }
+
+    /**
+     * @param idx index
+     * @return UTF-8 string from the given index to the end of the view
+     */
+    public String utf8(int idx) {
+        if (idx < 0 || idx > size)
+            throw new IndexOutOfBoundsException("index can't be > size: " + idx + " > " + size);
+        int n = size - idx;
+        fill(idx, n);
+        try {
+            return new String(bytes, 0, n, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            return "";
+        }
+    }
+
+    @Override
+    public int get(int idx) {
+        if (idx < 0 || idx >= size)
+            throw new IndexOutOfBoundsException("index can't be >= size: " + idx + " >= " + size);
+        return source.get(offset + idx);
+    }
+
+    @Override
+    public void set(int idx, int value) {
+        throw new UnsupportedOperationException("Read-only slice");
+    }
+
+    @Override
+    public IIntArray add(int item) {
+        throw new UnsupportedOperationException("Read-only slice");
+    }
+
+    @Override
+    public IIntArray prepend(int item) {
+        throw new UnsupportedOperationException("Read-only slice");
+    }
+
+    @Override
+    public IIntArray remove(int startPos, int endPos) {
+        throw new UnsupportedOperationException("Read-only slice");
+    }
+
+    @Override
+    public IIntArray clear() {
+        throw new UnsupportedOperationException("Read-only slice");
+    }
+
+    @Override
+    public int length() {
+        return size;
+    }
+
+    @Override
+    public IIntArray copyFrom(IIntArray data, int length) {
+        throw new UnsupportedOperationException("Read-only slice");
+    }
+
+    @Override
+    public IIntArray fromByteArray(byte[] data, int length) {
+        throw new UnsupportedOperationException("Read-only slice");
+    }
+
+    @Override
+    public byte[] toByteArray() {
+        fill(0, size);
+        return bytes; // it's OK (please add an exception for FindBugs and DO NOT create a copy as it suggests)
+    }
+
+    @Override
+    public String toUTF8() {
+        return utf8(0);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(size * 4 + 2).append('[');
+        for (int i = 0; i < size; i++) {
+            if (i > 0)
+                builder.append(", ");
+            builder.append(source.get(offset + i));
+        }
+        return builder.append(']').toString();
+    }
+
+    /**
+     * Copies the given range of the view to the additional byte buffer (growing it if necessary)
+     * @param idx index of the first element
+     * @param n count of elements
+     */
+    private void fill(int idx, int n) {
+        if (bytes.length < n)
+            bytes = new byte[n];
+        for (int i = 0; i < n; i++) {
+            bytes[i] = (byte) source.get(offset + idx + i);
+        }
+    }
+}
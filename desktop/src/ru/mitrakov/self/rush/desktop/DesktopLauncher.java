@@ -11,6 +11,7 @@ import com.badlogic.gdx.backends.lwjgl.*;
 
 import ru.mitrakov.self.rush.*;
 import ru.mitrakov.self.rush.stat.Stat;
+import ru.mitrakov.self.rush.utils.SimpleLogger;
 
 /**
  * Winesaps Launcher for Desktop platform (Windows/Linux)
@@ -22,6 +23,7 @@ public class DesktopLauncher extends JFrame {
      */
     public static void main(String[] arg) {
         ClassLoader.getSystemClassLoader().setDefaultAssertionStatus(true); // turn the asserts on (Desktop only)
+        SimpleLogger.configureFromProperty(); // e.g. "-Dwinesaps.log=TRACE,sout" to trace the protocol
         SwingUtilities.invokeLater(new Runnable() {
             @Override
             public void run() {
@@ -0,0 +1,238 @@
+package ru.mitrakov.self.rush.desktop;
+
+import java.io.*;
+import java.util.*;
+import java.lang.management.*;
+
+import ru.mitrakov.self.rush.model.Model;
+import ru.mitrakov.self.rush.net.IHandler;
+import ru.mitrakov.self.rush.model.emulator.*;
+import ru.mitrakov.self.rush.utils.collections.IIntArray;
+
+/**
+ * Headless fast-forward battle simulator (and throughput benchmark) for the Server Emulator.
+ * <br>It loads levels from "levels" directory (android/assets/levels), plays random or scripted moves through
+ * {@link ServerEmulator#send(IIntArray)}, and steps the world by a {@link LogicalClock} as fast as possible (no
+ * libGDX application, no real time passing), so that all the battles are deterministic for a given seed.
+ * At the end it reports battles/sec, moves/sec and allocation rate of the simulation thread.
+ * <br>Usage (working directory must be android/assets, see "simulate" task in build.gradle):
+ * <pre>
+ * Simulator [--battles N] [--sessions N] [--seed N] [--moves 4,4,2,...] [--levels pack_01/level_01,...]
+ *           [--bot true]
+ * </pre>
+ * <ul>
+ *     <li>battles - count of battles to play (default 1000);
+ *     <li>sessions - count of concurrent sessions sharing one {@link Environment} (default 1);
+ *     <li>seed - seed for the emulator and for random moves (default 1);
+ *     <li>moves - script of moves, repeated cyclically (see {@link Model.MoveDirection} for the codes); if omitted,
+ *     moves are random;
+ *     <li>levels - level names (default: all the levels in levels/pack_*), each battle takes the next one;
+ *     <li>bot - whether Actor2 is controlled by a bot (default false).
+ * </ul>
+ * @author mitrakov
+ */
+public class Simulator {
+    /** Max count of moves per battle (just a safety net: normally a round is finished by its countdown) */
+    private static final int MAX_MOVES = 100000;
+
+    /** Integer value for {@link Model.Cmd#FINISHED} command */
+    private static final int FINISHED = Arrays.binarySearch(Model.cmdValues, Model.Cmd.FINISHED);
+
+    /**
+     * Single emulated session (a "user" that plays battles one by one)
+     */
+    private static final class Session implements IHandler {
+        /** Driver of the session */
+        private HeadlessDriver driver;
+        /** Flag that a battle is going on */
+        private boolean inBattle;
+        /** Count of moves in the current battle */
+        private int moves;
+        /** Count of finished battles */
+        private int battles;
+        /** Count of won battles */
+        private int wins;
+
+        @Override
+        public void onReceived(IIntArray data) {
+            // data: 2 bytes of length, command, arguments; FINISHED: [isGameOver, winner, ...]
+            if (data.length() > 4 && data.get(2) == FINISHED && data.get(3) == 1) {
+                inBattle = false;
+                battles++;
+                if (data.get(4) == 1)
+                    wins++;
+            }
+        }
+
+        @Override
+        public void onChanged(boolean connected) {
+        }
+    }
+
+    /**
+     * Entry point of the simulator
+     * @param args command line arguments (see the class description)
+     */
+    public static void main(String[] args) {
+        int battles = 1000, sessionCount = 1;
+        long seed = 1;
+        int[] script = null;
+        String[] levels = null;
+        boolean bot = false;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if ("--battles".equals(args[i]))
+                battles = Integer.parseInt(args[i + 1]);
+            else if ("--sessions".equals(args[i]))
+                sessionCount = Integer.parseInt(args[i + 1]);
+            else if ("--seed".equals(args[i]))
+                seed = Long.parseLong(args[i + 1]);
+            else if ("--moves".equals(args[i]))
+                script = parseMoves(args[i + 1]);
+            else if ("--levels".equals(args[i]))
+                levels = args[i + 1].split(",");
+            else if ("--bot".equals(args[i]))
+                bot = Boolean.parseBoolean(args[i + 1]);
+            else throw new IllegalArgumentException("Unknown argument: " + args[i]);
+        }
+        if (levels == null)
+            levels = findLevels(new File("levels"));
+        if (levels.length == 0 || battles <= 0 || sessionCount <= 0)
+            throw new IllegalArgumentException("Nothing to simulate (no levels found in ./levels?)");
+
+        System.out.printf("Simulating %d battles (%d sessions, %d levels, seed %d%s)...%n", battles, sessionCount,
+                levels.length, seed, bot ? ", bot" : "");
+        run(battles, sessionCount, seed, script, levels, bot);
+    }
+
+    /**
+     * Runs the simulation and prints the report
+     * @param battles count of battles to play
+     * @param sessionCount count of concurrent sessions
+     * @param seed seed
+     * @param script script of moves (NULL for random moves)
+     * @param levels level names
+     * @param bot TRUE to control Actor2 by a bot
+     */
+    private static void run(int battles, int sessionCount, long seed, int[] script, String[] levels, boolean bot) {
+        LogicalClock clock = new LogicalClock();
+        Environment environment = new Environment(clock, 0); // 0 workers: everything runs on this thread
+        Random random = new Random(seed);
+        Session[] sessions = new Session[sessionCount];
+        for (int i = 0; i < sessionCount; i++) {
+            Session session = new Session();
+            session.driver = new HeadlessDriver(clock, environment, session, i, seed + i);
+            session.driver.getEmulator().setBotEnabled(bot);
+            sessions[i] = session;
+        }
+
+        long started = 0, finished = 0, moves = 0, step = 0, wins = 0;
+        long allocated0 = getAllocatedBytes(), time0 = System.nanoTime();
+        while (finished < battles) {
+            for (int i = 0; i < sessionCount; i++) {
+                Session session = sessions[i];
+                int before = session.battles;
+                if (!session.inBattle) {
+                    if (started < battles) {
+                        attack(session, levels[(int) (started++ % levels.length)]);
+                    }
+                } else if (session.moves++ < MAX_MOVES) {
+                    int direction = script != null ? script[(int) (moves % script.length)]
+                            : random.nextInt(Model.moveDirectionValues.length);
+                    session.driver.move(direction);
+                    moves++;
+                } else throw new IllegalStateException("Battle is not finished in " + MAX_MOVES + " moves");
+                finished += session.battles - before;
+            }
+            int before = countBattles(sessions);
+            clock.advance(HeadlessDriver.MOVE_PERIOD); // wolves and countdowns may finish the battles as well
+            finished += countBattles(sessions) - before;
+            step++;
+        }
+        long time = System.nanoTime() - time0, allocated = getAllocatedBytes() - allocated0;
+        for (int i = 0; i < sessionCount; i++) {
+            wins += sessions[i].wins;
+            sessions[i].driver.close();
+        }
+        environment.close();
+
+        double sec = time / 1e9;
+        System.out.printf("Battles: %d (won %d), moves: %d, logical time: %d sec, wall time: %.3f sec%n", finished,
+                wins, moves, step * HeadlessDriver.MOVE_PERIOD / 1000, sec);
+        System.out.printf("Throughput: %.1f battles/sec, %.1f moves/sec%n", finished / sec, moves / sec);
+        if (allocated >= 0)
+            System.out.printf("Allocation: %.1f MB/sec, %.1f bytes/move%n", allocated / sec / (1 << 20),
+                    moves > 0 ? (double) allocated / moves : 0);
+        else System.out.println("Allocation: n/a (not supported by the JVM)");
+    }
+
+    /**
+     * @param sessions sessions
+     * @return total count of finished battles
+     */
+    private static int countBattles(Session[] sessions) {
+        int result = 0;
+        for (Session session : sessions) {
+            result += session.battles;
+        }
+        return result;
+    }
+
+    /**
+     * Sends ATTACK command (it starts a new battle on the given level)
+     * @param session session
+     * @param level level name
+     */
+    private static void attack(Session session, String level) {
+        session.inBattle = true;
+        session.moves = 0;
+        session.driver.attack(level);
+    }
+
+    /**
+     * @param s comma-separated move codes
+     * @return array of move codes
+     */
+    private static int[] parseMoves(String s) {
+        String[] items = s.split(",");
+        int[] result = new int[items.length];
+        for (int i = 0; i < items.length; i++) {
+            result[i] = Integer.parseInt(items[i].trim());
+            if (result[i] < 0 || result[i] >= Model.moveDirectionValues.length)
+                throw new IllegalArgumentException("Incorrect move: " + items[i]);
+        }
+        return result;
+    }
+
+    /**
+     * @param dir "levels" directory
+     * @return names of all the levels in the packs (e.g. "pack_01/level_01"), sorted
+     */
+    private static String[] findLevels(File dir) {
+        List<String> result = new ArrayList<String>();
+        File[] packs = dir.listFiles();
+        if (packs != null) {
+            for (File pack : packs) {
+                File[] files = pack.isDirectory() && pack.getName().startsWith("pack_") ? pack.listFiles() : null;
+                if (files != null) {
+                    for (File file : files) {
+                        String name = file.getName();
+                        if (name.endsWith(".level"))
+                            result.add(pack.getName() + "/" + name.substring(0, name.length() - ".level".length()));
+                    }
+                }
+            }
+        }
+        Collections.sort(result);
+        return result.toArray(new String[result.size()]);
+    }
+
+    /**
+     * @return count of bytes allocated by the current thread, or -1 if the JVM doesn't support it
+     */
+    private static long getAllocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) // HotSpot only
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        return -1;
+    }
+}